@@ -14,6 +14,7 @@ public final class Config {
 	private int heartBeatQuantity = 5;
 	private int heartBeatRate = 5 * 1000;// 5s
 	private int heartBeatExpireInterval = 60 * 1000; // 60s
+	private boolean heartbeatOnIdle = true;//连接空闲heartBeatRate后才发送心跳,有业务流量时由请求代替心跳;断线后心跳线程超时醒来探测并重连
 	private boolean ssl = false;
 	private boolean tcpNoDelay = true;
 	private boolean reuseAddress = true;
@@ -21,15 +22,23 @@ public final class Config {
 	private int receiveBufferSize = 65535;
 	private boolean useEpoll = false;
 	private int childNioEventThreads = 6; //cpu+1
+	private int acceptorThreads = 1;//监听线程数,大于1时epoll下用SO_REUSEPORT绑定多个监听socket
 	private int payload = 8 * 1024 * 1024;
 	private InetSocketAddress remoteAddress = new InetSocketAddress(
 			"0.0.0.0", 8099);
-	private int businessPoolSize = 200;//业务处理线程
+	private String domainSocketPath;//unix domain socket路径,非空时走epoll domain socket
+	private int businessPoolSize = 200;//业务处理线程,virtual模式下为最大并发数
 	private String businessPoolType = Constants.THREADPOOL_TYPE_CACHED;//线程池类型
 	private String businessPoolQueueType = Constants.QUEUE_TYPE_NORMAL;  // 队列类型
 	private int businessPoolQueueSize = 0; // 队列大小
+	private String businessPoolLaneWeights = "8,4,1";// 优先级队列高,普通,低三个通道的出队权重
 	private LiveExpired liveExpired;//掉线监控
 	private int connectAccepts;
+	private boolean localShortCircuit = true;//同JVM内直接调用服务
+	private boolean localCopyOnCall = true;//直接调用时复制可变参数和返回值
+	private int resultCacheSize = 10000;//@Idempotent方法结果缓存的条目上限,0关闭
+	private String registryAddress;//ZooKeeper连接串,非空时服务端启动后登记自己
+	private String registryPath = Constants.DEFAULT_REGISTRY_PATH;//登记实例的ZooKeeper路径
 
 	public Config(){
 		this(8099);
@@ -47,6 +56,58 @@ public final class Config {
 		remoteAddress = new InetSocketAddress(hostname,port);
 	}
 
+	/**
+	 * 按地址协议选择传输方式
+	 * tcp://host:port 或 host:port 走TCP, unix:///path/to/socket 走unix domain socket
+	 *
+	 * @param address
+	 */
+	public Config(String address){
+		setAddress(address);
+	}
+
+	public void setAddress(String address) {
+		if (address == null)
+			throw new RuntimeException("address is null");
+		if (address.startsWith(Constants.ADDRESS_SCHEME_UNIX)) {
+			String path = address.substring(Constants.ADDRESS_SCHEME_UNIX.length());
+			if (path.isEmpty())
+				throw new RuntimeException("address:" + address + " is Invalid");
+			domainSocketPath = path;
+			return;
+		}
+		if (address.startsWith(Constants.ADDRESS_SCHEME_TCP))
+			address = address.substring(Constants.ADDRESS_SCHEME_TCP.length());
+		int idx = address.lastIndexOf(':');
+		if (idx <= 0)
+			throw new RuntimeException("address:" + address + " is Invalid");
+		String hostname = address.substring(0, idx);
+		int port;
+		try {
+			port = Integer.parseInt(address.substring(idx + 1));
+		} catch (NumberFormatException e) {
+			throw new RuntimeException("address:" + address + " is Invalid");
+		}
+		if(NetUtils.isInvalidPort(port) || NetUtils.isInvalidHost(hostname))
+		{
+			throw new RuntimeException("hostname:" + hostname + " or port:"+port+" is Invalid");
+		}
+		remoteAddress = new InetSocketAddress(hostname,port);
+		domainSocketPath = null;
+	}
+
+	public String getAddress() {
+		return isDomainSocket() ? Constants.ADDRESS_SCHEME_UNIX + domainSocketPath : String.valueOf(remoteAddress);
+	}
+
+	public boolean isDomainSocket() {
+		return domainSocketPath != null;
+	}
+
+	public String getDomainSocketPath() {
+		return domainSocketPath;
+	}
+
 	public void setSsl(boolean ssl) {
 		this.ssl = ssl;
 	}
@@ -151,6 +212,14 @@ public final class Config {
 		return remoteAddress!=null ? remoteAddress.getPort() : -1;
 	}
 
+	public boolean isHeartbeatOnIdle() {
+		return heartbeatOnIdle;
+	}
+
+	public void setHeartbeatOnIdle(boolean heartbeatOnIdle) {
+		this.heartbeatOnIdle = heartbeatOnIdle;
+	}
+
 	public boolean isUseEpoll() {
 		return useEpoll;
 	}
@@ -167,6 +236,14 @@ public final class Config {
 		this.childNioEventThreads = childNioEventThreads;
 	}
 
+	public int getAcceptorThreads() {
+		return acceptorThreads;
+	}
+
+	public void setAcceptorThreads(int acceptorThreads) {
+		this.acceptorThreads = acceptorThreads;
+	}
+
 	public int getSendTimeout() {
 		return sendTimeout;
 	}
@@ -215,6 +292,14 @@ public final class Config {
 		this.businessPoolQueueSize = businessPoolQueueSize;
 	}
 
+	public String getBusinessPoolLaneWeights() {
+		return businessPoolLaneWeights;
+	}
+
+	public void setBusinessPoolLaneWeights(String businessPoolLaneWeights) {
+		this.businessPoolLaneWeights = businessPoolLaneWeights;
+	}
+
 	public LiveExpired getLiveExpired() {
 		return liveExpired;
 	}
@@ -247,6 +332,46 @@ public final class Config {
 		this.connectAccepts = connectAccepts;
 	}
 
+	public boolean isLocalShortCircuit() {
+		return localShortCircuit;
+	}
+
+	public void setLocalShortCircuit(boolean localShortCircuit) {
+		this.localShortCircuit = localShortCircuit;
+	}
+
+	public boolean isLocalCopyOnCall() {
+		return localCopyOnCall;
+	}
+
+	public void setLocalCopyOnCall(boolean localCopyOnCall) {
+		this.localCopyOnCall = localCopyOnCall;
+	}
+
+	public int getResultCacheSize() {
+		return resultCacheSize;
+	}
+
+	public void setResultCacheSize(int resultCacheSize) {
+		this.resultCacheSize = resultCacheSize;
+	}
+
+	public String getRegistryAddress() {
+		return registryAddress;
+	}
+
+	public void setRegistryAddress(String registryAddress) {
+		this.registryAddress = registryAddress;
+	}
+
+	public String getRegistryPath() {
+		return registryPath;
+	}
+
+	public void setRegistryPath(String registryPath) {
+		this.registryPath = registryPath;
+	}
+
 	@Override
 	public String toString() {
 		return "Config{" +
@@ -259,6 +384,7 @@ public final class Config {
 				", heartBeatQuantity=" + heartBeatQuantity +
 				", heartBeatRate=" + heartBeatRate +
 				", heartBeatExpireInterval=" + heartBeatExpireInterval +
+				", heartbeatOnIdle=" + heartbeatOnIdle +
 				", ssl=" + ssl +
 				", tcpNoDelay=" + tcpNoDelay +
 				", reuseAddress=" + reuseAddress +
@@ -266,14 +392,22 @@ public final class Config {
 				", receiveBufferSize=" + receiveBufferSize +
 				", useEpoll=" + useEpoll +
 				", childNioEventThreads=" + childNioEventThreads +
+				", acceptorThreads=" + acceptorThreads +
 				", payload=" + payload +
 				", remoteAddress=" + remoteAddress +
+				", domainSocketPath='" + domainSocketPath + '\'' +
 				", businessPoolSize=" + businessPoolSize +
 				", businessPoolType='" + businessPoolType + '\'' +
 				", businessPoolQueueType='" + businessPoolQueueType + '\'' +
 				", businessPoolQueueSize=" + businessPoolQueueSize +
+				", businessPoolLaneWeights='" + businessPoolLaneWeights + '\'' +
 				", liveExpired=" + liveExpired +
 				", connectAccepts=" + connectAccepts +
+				", localShortCircuit=" + localShortCircuit +
+				", localCopyOnCall=" + localCopyOnCall +
+				", resultCacheSize=" + resultCacheSize +
+				", registryAddress='" + registryAddress + '\'' +
+				", registryPath='" + registryPath + '\'' +
 				'}';
 	}
 }
\ No newline at end of file
@@ -13,6 +13,23 @@ public final class Constants {
 
     public final static String THREADPOOL_TYPE_FIXED = "fixed";
     public final static String THREADPOOL_TYPE_CACHED = "cached";
+    public final static String THREADPOOL_TYPE_VIRTUAL = "virtual";
+
+    /**
+     * request priority
+     */
+    public static final byte PRIORITY_LOW = -1; // 批量/后台调用
+    public static final byte PRIORITY_NORMAL = 0; // 默认
+    public static final byte PRIORITY_HIGH = 1; // 延迟敏感调用
+
+    /**
+     * address scheme
+     */
+    public final static String ADDRESS_SCHEME_TCP = "tcp://";
+    public final static String ADDRESS_SCHEME_UNIX = "unix://";
+
+    //ZooKeeper上登记服务端实例的默认路径
+    public final static String DEFAULT_REGISTRY_PATH = "/via/servers";
 
     /**
      * packet state
@@ -35,6 +35,8 @@ public final class Packet implements BeanMessage
 
 	private String exception;
 
+	private byte priority = Constants.PRIORITY_NORMAL;
+
 	public Packet()
 	{
 	}
@@ -163,6 +165,14 @@ public final class Packet implements BeanMessage
 		this.heartbeat = heartbeat;
 	}
 
+	public byte getPriority() {
+		return priority;
+	}
+
+	public void setPriority(byte priority) {
+		this.priority = priority;
+	}
+
 	@Override
 	public String toString() {
 		return "Packet{" +
@@ -176,6 +186,7 @@ public final class Packet implements BeanMessage
 				", returnType=" + returnType +
 				", heartbeat=" + heartbeat +
 				", exception='" + exception + '\'' +
+				", priority=" + priority +
 				'}';
 	}
 
@@ -0,0 +1,23 @@
+package com.stereo.study.ipc;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 接口方法的调用优先级
+ * 服务端业务线程池使用优先级队列时,按优先级分通道加权出队
+ * Created by stereo on 17-3-9.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Priority {
+
+    /**
+     * Constants.PRIORITY_HIGH / PRIORITY_NORMAL / PRIORITY_LOW
+     */
+    byte value() default Constants.PRIORITY_NORMAL;
+}
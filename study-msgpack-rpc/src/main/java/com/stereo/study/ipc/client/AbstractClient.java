@@ -15,14 +15,16 @@ import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
 import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.epoll.EpollSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.handler.timeout.IdleStateHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import javax.net.ssl.SSLException;
@@ -30,6 +32,7 @@ import java.net.InetSocketAddress;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by stereo on 17-1-19.
@@ -61,12 +64,15 @@ public abstract class AbstractClient extends AbstractService implements Client,
     @Override
     protected void serviceStart() throws Exception {
         doConnect();
-        heartbeatReport.start();
+        //同JVM直接调用没有连接,不需要心跳
+        if (!isLocal())
+            heartbeatReport.start();
     }
 
     @Override
     protected void serviceStop() throws Exception {
-        heartbeatReport.stop();
+        if (heartbeatReport.isInState(STATE.STARTED))
+            heartbeatReport.stop();
         doDisConnect();
         doClose();
     }
@@ -74,6 +80,13 @@ public abstract class AbstractClient extends AbstractService implements Client,
     protected abstract void doConnect() throws ViaRuntimeException;
     protected abstract void doDisConnect() throws ViaRuntimeException;
 
+    /**
+     * 是否走同JVM直接调用
+     */
+    protected boolean isLocal() {
+        return false;
+    }
+
     @Override
     public void doOpen() throws ViaRuntimeException {
         //心跳初始化
@@ -94,7 +107,15 @@ public abstract class AbstractClient extends AbstractService implements Client,
         }
 
         Class clazz;
-        if(config.isUseEpoll())
+        if(config.isDomainSocket())
+        {
+            //unix domain socket只有epoll实现
+            if (!Epoll.isAvailable())
+                throw new ViaRuntimeException("Unix domain socket requires epoll", Epoll.unavailabilityCause());
+            group = new EpollEventLoopGroup(config.getChildNioEventThreads());
+            clazz = EpollDomainSocketChannel.class;
+        }
+        else if(config.isUseEpoll())
         {
             group = new EpollEventLoopGroup(config.getChildNioEventThreads());
             clazz = EpollSocketChannel.class;
@@ -107,22 +128,21 @@ public abstract class AbstractClient extends AbstractService implements Client,
 
         bootstrap = new Bootstrap().group(group)
                 .channel(clazz)
-                .option(ChannelOption.SO_KEEPALIVE, false)
-                .option(ChannelOption.TCP_NODELAY, config.isTcpNoDelay())
                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, config.getConnectTimeout())
                 .option(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, 32 * 1024)
                 .option(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, 8 * 1024)
-                .option(ChannelOption.SO_LINGER ,config.getSoLinger())
-                .option(ChannelOption.SO_SNDBUF, config.getSendBufferSize())
-                .option(ChannelOption.SO_RCVBUF, config.getReceiveBufferSize())
-                .handler(new ChannelInitializer<SocketChannel>()
+                .handler(new ChannelInitializer<io.netty.channel.Channel>()
                 {
                     @Override
-                    public void initChannel(SocketChannel ch) throws Exception {
+                    public void initChannel(io.netty.channel.Channel ch) throws Exception {
                         ChannelPipeline p = ch.pipeline();
                         if (sslCtx != null) {
                             p.addLast(sslCtx.newHandler(ch.alloc(), config.getHost(), config.getPort()));
                         }
+                        //读写都空闲时触发心跳
+                        if (config.isHeartbeatOnIdle()) {
+                            p.addLast(new IdleStateHandler(0, 0, config.getHeartBeatRate(), TimeUnit.MILLISECONDS));
+                        }
                         p.addLast(
                                 new MsgPackEncoder(),
                                 new MsgPackDecoder(config.getPayload()),
@@ -130,6 +150,15 @@ public abstract class AbstractClient extends AbstractService implements Client,
                         );
                     }
                 });
+        //TCP专有参数,domain socket不支持
+        if (!config.isDomainSocket())
+        {
+            bootstrap.option(ChannelOption.SO_KEEPALIVE, false)
+                    .option(ChannelOption.SO_SNDBUF, config.getSendBufferSize())
+                    .option(ChannelOption.SO_RCVBUF, config.getReceiveBufferSize())
+                    .option(ChannelOption.TCP_NODELAY, config.isTcpNoDelay())
+                    .option(ChannelOption.SO_LINGER ,config.getSoLinger());
+        }
     }
 
     @Override
@@ -157,7 +186,11 @@ public abstract class AbstractClient extends AbstractService implements Client,
     public void closeChannel() {
         io.netty.channel.Channel c = channel;
         Channel channel = IpcChannel.getChannel(c);
-        channel.closeChannel();
+        //重连失败后通道已移除或从未建立
+        if (channel != null)
+            channel.closeChannel();
+        else if (c != null)
+            c.close();
     }
 
     @Override
@@ -293,10 +326,20 @@ public abstract class AbstractClient extends AbstractService implements Client,
             throw new ViaRuntimeException("client >>> packet error : " + packet);
     }
 
+    /**
+     * 连接空闲
+     */
+    void idle()
+    {
+        heartbeatReport.idle();
+    }
+
     //event
     public void connected(Channel channel) throws ViaRuntimeException
     {
         LOG.info("client channel ["+channel+"] connected");
+        //新连接先报一次心跳,让服务端登记并关联到该连接
+        heartbeatReport.idle();
     }
 
     /**
@@ -307,6 +350,7 @@ public abstract class AbstractClient extends AbstractService implements Client,
     public void disconnected(Channel channel) throws ViaRuntimeException
     {
         LOG.info("client channel ["+channel+"] disconnected");
+        heartbeatReport.inactive();
     }
 
     /**
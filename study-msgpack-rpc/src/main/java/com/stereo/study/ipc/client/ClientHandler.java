@@ -4,6 +4,7 @@ import com.stereo.study.ipc.Config;
 import com.stereo.study.ipc.remoting.IpcChannel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.timeout.IdleStateEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -60,6 +61,15 @@ public class ClientHandler extends ChannelInboundHandlerAdapter{
             LOG.warn("ClientHandler channelRead channel is null");
     }
 
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception
+    {
+        if (evt instanceof IdleStateEvent)
+            client.idle();
+        else
+            super.userEventTriggered(ctx, evt);
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception
     {
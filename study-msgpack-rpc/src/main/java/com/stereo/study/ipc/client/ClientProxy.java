@@ -4,8 +4,13 @@ import com.stereo.study.ipc.Config;
 import com.stereo.study.ipc.exc.ClientConnectException;
 import com.stereo.study.ipc.exc.ClientTimeoutException;
 import com.stereo.study.ipc.exc.ViaRuntimeException;
+import com.stereo.study.ipc.server.IpcServer;
+import com.stereo.study.ipc.server.LocalServerRegistry;
 import com.stereo.study.ipc.util.NetUtils;
 import io.netty.channel.*;
+import io.netty.channel.unix.DomainSocketAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
 import java.net.InetSocketAddress;
@@ -18,7 +23,10 @@ import java.util.concurrent.TimeUnit;
  */
 public class ClientProxy extends AbstractClient {
 
+    private static Logger LOG = LoggerFactory.getLogger(ClientProxy.class);
+
     private final ClassLoader loader;
+    private volatile LocalInvoker localInvoker;
 
     public ClientProxy(Config config){
         this(config, Thread.currentThread().getContextClassLoader());
@@ -26,7 +34,7 @@ public class ClientProxy extends AbstractClient {
 
     public ClientProxy(Config config , ClassLoader  loader)
     {
-        super("ClientProxy"+":"+config.getRemoteAddress().toString(),config);
+        super("ClientProxy"+":"+config.getAddress(),config);
         this.loader = loader;
     }
 
@@ -41,16 +49,39 @@ public class ClientProxy extends AbstractClient {
 
     @Override
     protected void doConnect() throws ViaRuntimeException
+    {
+        if (config.isLocalShortCircuit())
+        {
+            IpcServer server = LocalServerRegistry.lookup(config);
+            if (server != null)
+            {
+                localInvoker = new LocalInvoker(server, config);
+                closed = false;
+                LOG.info(getName() + " short-circuit to local server " + server.getName());
+                return;
+            }
+        }
+        connectChannel();
+    }
+
+    /**
+     * 建立网络连接
+     */
+    private void connectChannel() throws ViaRuntimeException
     {
         try
         {
-            ChannelFuture channelFuture = bootstrap.connect(config.getHost(),config.getPort()).syncUninterruptibly();
+            ChannelFuture channelFuture;
+            if (config.isDomainSocket())
+                channelFuture = bootstrap.connect(new DomainSocketAddress(config.getDomainSocketPath())).syncUninterruptibly();
+            else
+                channelFuture = bootstrap.connect(config.getHost(),config.getPort()).syncUninterruptibly();
             boolean ret = channelFuture.awaitUninterruptibly(config.getConnectTimeout(), TimeUnit.MILLISECONDS);
             if (ret && channelFuture.isSuccess())
             {
                 channel = channelFuture.channel();
                 closed = false;
-                if (NetUtils.toAddressString((InetSocketAddress) channel.remoteAddress())
+                if (!config.isDomainSocket() && NetUtils.toAddressString((InetSocketAddress) channel.remoteAddress())
                         .equals(NetUtils.toAddressString((InetSocketAddress) channel.localAddress()))) {
                     closeChannel();
                     throw new ClientConnectException("Failed to connect " + config.getHost() + ":" + config.getPort()
@@ -65,9 +96,41 @@ public class ClientProxy extends AbstractClient {
         }
     }
 
+    @Override
+    protected boolean isLocal() {
+        return localInvoker != null;
+    }
+
+    /**
+     * 同JVM直接调用器,本进程内的服务已停止时改走网络连接并返回null
+     */
+    LocalInvoker getLocalInvoker() {
+        LocalInvoker invoker = localInvoker;
+        if (invoker == null || invoker.isAvailable())
+            return invoker;
+        synchronized (this)
+        {
+            if (localInvoker == invoker)
+            {
+                LOG.info(getName() + " local server " + invoker.getServer().getName() + " is not started, fall back to network");
+                localInvoker = null;
+                //直接调用时没有启动心跳,改走网络后由心跳负责断线重连
+                if (heartbeatReport.isInState(STATE.INITED))
+                    heartbeatReport.start();
+                connectChannel();
+            }
+        }
+        return null;
+    }
+
     @Override
     protected void doDisConnect() throws ViaRuntimeException {
         closed = true;
+        if (localInvoker != null)
+        {
+            localInvoker = null;
+            return;
+        }
         closeChannel();
         //group.shutdownGracefully().syncUninterruptibly();
     }
@@ -7,6 +7,7 @@ import com.stereo.study.ipc.util.Daemon;
 import com.stereo.study.service.AbstractService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -26,6 +27,9 @@ public class HeartbeatReport extends AbstractService implements Runnable
     private AbstractClient client;
     final int heartBeatRate;
     final int heartbeatQuantity;
+    final boolean heartbeatOnIdle;
+    //空闲信号,只在连接空闲或新建时发心跳
+    private final Semaphore idleSignal = new Semaphore(0);
     volatile boolean running;
     volatile Heartbeat heartbeat;
     volatile int wrapFailed;
@@ -38,6 +42,7 @@ public class HeartbeatReport extends AbstractService implements Runnable
         heartbeat = new Heartbeat(_client.getClientId());
         heartBeatRate = _client.getConfig().getHeartBeatRate();
         heartbeatQuantity = _client.getConfig().getHeartBeatQuantity();
+        heartbeatOnIdle = _client.getConfig().isHeartbeatOnIdle();
     }
 
     @Override
@@ -47,6 +52,13 @@ public class HeartbeatReport extends AbstractService implements Runnable
         {
             while (running)
             {
+                if (heartbeatOnIdle)
+                {
+                    //信号丢失时也不会一直阻塞,超时后连接已断开就照常发心跳,由失败计数触发重连
+                    if (!idleSignal.tryAcquire(heartBeatRate, TimeUnit.MILLISECONDS) && client.getChannel() != null)
+                        continue;
+                    idleSignal.drainPermits();
+                }
                 try
                 {
                     heatbeat();
@@ -55,7 +67,8 @@ public class HeartbeatReport extends AbstractService implements Runnable
                     LOG.error(getName() + " heatbeat fail" );
                     ex.printStackTrace();
                 }
-                Thread.sleep(heartBeatRate);
+                if (!heartbeatOnIdle)
+                    Thread.sleep(heartBeatRate);
             }
         }catch (InterruptedException ex)
         {
@@ -87,8 +100,29 @@ public class HeartbeatReport extends AbstractService implements Runnable
         reportHeartBeat(Constants.TYPE_HEARTBEAT_REQUEST_UNREGISTER);
     }
 
+    /**
+     * 连接空闲时由IdleStateHandler事件触发
+     */
+    void idle()
+    {
+        if (heartbeatOnIdle)
+            idleSignal.release();
+    }
+
+    /**
+     * 连接断开后IdleStateHandler随pipeline移除,不会再有空闲事件,立即唤醒心跳线程检测
+     */
+    void inactive()
+    {
+        if (heartbeatOnIdle)
+            idleSignal.release();
+    }
+
     void heatbeat()
     {
+        //重连时又找到了本进程内的服务,直接调用不需要心跳
+        if (client.isLocal())
+            return;
         LOG.info(getName() + " heatbeat");
         heartbeat.now();
         reportHeartBeat(Constants.TYPE_HEARTBEAT);
@@ -116,7 +150,19 @@ public class HeartbeatReport extends AbstractService implements Runnable
             {
                 LOG.error(getName() + " reportHeartBeat fail",ex);
                 state = HeartBeatState.RECOVERY;
-                client.reconnect();
+                try
+                {
+                    client.reconnect();
+                    wrapFailed = 0;
+                }catch (Exception e)
+                {
+                    LOG.error(getName() + " reconnect fail", e);
+                }finally
+                {
+                    //重连失败时下一次心跳继续重连
+                    if (state == HeartBeatState.RECOVERY)
+                        state = HeartBeatState.BORN;
+                }
             }
         }
     }
@@ -0,0 +1,85 @@
+package com.stereo.study.ipc.client;
+
+import com.stereo.study.ipc.Config;
+import com.stereo.study.ipc.Packet;
+import com.stereo.study.ipc.exc.ViaRuntimeException;
+import com.stereo.study.ipc.server.IpcServer;
+import com.stereo.study.service.Service;
+import org.msgpack.MessagePack;
+import org.msgpack.template.Template;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 同JVM直接调用器
+ * 不经过编解码、Netty、分发器和业务线程池,在调用线程上执行服务方法
+ * copyOnCall开启时,参数或返回值中有可变对象才做一次msgpack复制,保证与远程调用相同的传值语义
+ * Created by stereo on 17-3-2.
+ */
+public class LocalInvoker {
+
+    //不可变类型,直接传引用
+    private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+            String.class, Boolean.class, Character.class, Byte.class, Short.class,
+            Integer.class, Long.class, Float.class, Double.class,
+            BigInteger.class, BigDecimal.class, Class.class));
+
+    private final IpcServer server;
+    private final boolean copyOnCall;
+    private final MessagePack messagePack = new MessagePack();
+    private Template<Packet> template;
+
+    public LocalInvoker(IpcServer server, Config config) {
+        this.server = server;
+        this.copyOnCall = config.isLocalCopyOnCall();
+    }
+
+    public Packet invoke(Packet request) {
+        if (!isAvailable())
+            throw new ViaRuntimeException("LocalInvoker >>> server " + server.getName() + " is not started");
+        Packet packet = copyOnCall && !isImmutable(request.getParams()) ? copy(request) : request;
+        server.getIpcRegistry().getSkeletonContext().getServiceHandler().handleLocalRequest(packet);
+        if (copyOnCall && !isImmutable(packet.getResult()))
+            packet = copy(packet);
+        return packet;
+    }
+
+    /**
+     * 本进程内的服务是否仍在运行
+     */
+    public boolean isAvailable() {
+        return server.getServiceState().equals(Service.STATE.STARTED);
+    }
+
+    public IpcServer getServer() {
+        return server;
+    }
+
+    private Packet copy(Packet packet) {
+        try {
+            if (template == null)
+                template = messagePack.lookup(Packet.class);
+            byte[] bytes = messagePack.write(packet, template);
+            return messagePack.read(bytes, template);
+        } catch (IOException ex) {
+            throw new ViaRuntimeException("LocalInvoker >>> copy packet error " + packet, ex);
+        }
+    }
+
+    private static boolean isImmutable(Object[] values) {
+        if (values != null)
+            for (Object value : values)
+                if (!isImmutable(value))
+                    return false;
+        return true;
+    }
+
+    private static boolean isImmutable(Object value) {
+        return value == null || value.getClass().isEnum() || IMMUTABLE_TYPES.contains(value.getClass());
+    }
+}
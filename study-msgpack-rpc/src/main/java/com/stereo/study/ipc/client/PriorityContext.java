@@ -0,0 +1,23 @@
+package com.stereo.study.ipc.client;
+
+/**
+ * 按调用指定优先级,覆盖接口方法上的@Priority
+ * 对当前线程之后的调用生效,直到clear
+ * Created by stereo on 17-3-9.
+ */
+public class PriorityContext {
+
+    private static final ThreadLocal<Byte> _localPriority = new ThreadLocal<Byte>();
+
+    public static void set(byte priority) {
+        _localPriority.set(priority);
+    }
+
+    public static Byte get() {
+        return _localPriority.get();
+    }
+
+    public static void clear() {
+        _localPriority.remove();
+    }
+}
@@ -2,6 +2,7 @@ package com.stereo.study.ipc.client;
 
 import com.stereo.study.ipc.Constants;
 import com.stereo.study.ipc.Packet;
+import com.stereo.study.ipc.Priority;
 import com.stereo.study.ipc.exc.*;
 import com.stereo.study.service.Service;
 import org.slf4j.Logger;
@@ -65,7 +66,12 @@ public class RemoteProxy implements InvocationHandler {
                 }
                 //build packet
                 final Packet packet = Packet.packetRequest(_type.getName(), method.getName(), method.getReturnType(), args);
+                packet.setPriority(priorityOf(method));
                 //LOG.debug("RemoteProxy invoke packet is " + packet);
+                //同JVM直接调用
+                LocalInvoker localInvoker = clientProxy.getLocalInvoker();
+                if (localInvoker != null)
+                    return receiveResponse(localInvoker.invoke(packet));
                 //发送请求
                 AsyncFuture<Packet> future = clientProxy.sendPacket(packet);
                 try {
@@ -84,6 +90,15 @@ public class RemoteProxy implements InvocationHandler {
         }
     }
 
+    //本次调用指定的优先级优先,其次是接口方法上的@Priority
+    private byte priorityOf(Method method) {
+        Byte priority = PriorityContext.get();
+        if (priority != null)
+            return priority;
+        Priority annotation = method.getAnnotation(Priority.class);
+        return annotation != null ? annotation.value() : Constants.PRIORITY_NORMAL;
+    }
+
     private Object receiveResponse(Packet response) {
         Object result = response.getResult();
         byte state = response.getState();
@@ -0,0 +1,62 @@
+package com.stereo.study.ipc.codec;
+
+/**
+ * 已编码好的响应包
+ * Packet的第一个字段是id,header为数组头,tail为id之后全部字段的msgpack编码,
+ * 编码时只需写入本次请求的id,不再遍历Packet的字段
+ * Created by stereo on 17-3-13.
+ */
+public class EncodedPacket {
+
+    private final String id;
+    private final byte[] header;
+    private final byte[] tail;
+
+    public EncodedPacket(String id, byte[] header, byte[] tail) {
+        this.id = id;
+        this.header = header;
+        this.tail = tail;
+    }
+
+    /**
+     * 从id为null时编码出的完整Packet中切出header和tail,布局不符合预期时返回null
+     */
+    public static EncodedPacket split(byte[] encoded) {
+        if (encoded == null || encoded.length == 0)
+            return null;
+        int b = encoded[0] & 0xff;
+        int headerLength;
+        if ((b & 0xf0) == 0x90)
+            headerLength = 1;//fixarray
+        else if (b == 0xdc)
+            headerLength = 3;//array16
+        else if (b == 0xdd)
+            headerLength = 5;//array32
+        else
+            return null;
+        //id必须是nil
+        if (encoded.length <= headerLength || (encoded[headerLength] & 0xff) != 0xc0)
+            return null;
+        byte[] header = new byte[headerLength];
+        System.arraycopy(encoded, 0, header, 0, headerLength);
+        byte[] tail = new byte[encoded.length - headerLength - 1];
+        System.arraycopy(encoded, headerLength + 1, tail, 0, tail.length);
+        return new EncodedPacket(null, header, tail);
+    }
+
+    public EncodedPacket withId(String id) {
+        return new EncodedPacket(id, header, tail);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public byte[] getHeader() {
+        return header;
+    }
+
+    public byte[] getTail() {
+        return tail;
+    }
+}
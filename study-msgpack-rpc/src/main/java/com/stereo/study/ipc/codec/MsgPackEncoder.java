@@ -1,30 +1,63 @@
 package com.stereo.study.ipc.codec;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.ByteBufOutputStream;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
 import org.msgpack.MessagePack;
+import org.msgpack.packer.MessagePackBufferPacker;
+import org.msgpack.template.Template;
 import com.stereo.study.ipc.Packet;
 
+import java.nio.ByteBuffer;
+
 /**
  * Created by stereo on 16-8-4.
  */
-public class MsgPackEncoder extends MessageToByteEncoder<Packet> {
+public class MsgPackEncoder extends MessageToByteEncoder<Object> {
 
     private static final byte[] LENGTH_PLACEHOLDER = new byte[4];
 
+    //每个连接保留的编码缓冲上限
+    private static final int RETAINED_BUFFER_CAPACITY = 16 * 1024;
+
     private final MessagePack messagePack = new MessagePack();
 
+    //编码器只在所属的EventLoop线程中调用,packer可以直接复用
+    private final MessagePackBufferPacker packer = new MessagePackBufferPacker(messagePack);
+
+    private Template<Packet> template;
+
+    @Override
+    public boolean acceptOutboundMessage(Object msg) throws Exception {
+        return msg instanceof Packet || msg instanceof EncodedPacket;
+    }
+
     @Override
-    protected void encode(ChannelHandlerContext channelHandlerContext, Packet packet, ByteBuf out) throws Exception {
+    protected void encode(ChannelHandlerContext channelHandlerContext, Object msg, ByteBuf out) throws Exception {
+        if (template == null)
+            template = messagePack.lookup(Packet.class);
         int startIdx = out.writerIndex();
-        ByteBufOutputStream bout = new ByteBufOutputStream(out);
-        bout.write(LENGTH_PLACEHOLDER);
-        byte[] data = messagePack.write(packet);
-        bout.write(data);
-        bout.flush();
-        bout.close();
+        out.writeBytes(LENGTH_PLACEHOLDER);
+        try {
+            if (msg instanceof EncodedPacket) {
+                //缓存的响应只编码id,其余字段直接拷贝
+                EncodedPacket encoded = (EncodedPacket) msg;
+                out.writeBytes(encoded.getHeader());
+                if (encoded.getId() == null)
+                    packer.writeNil();
+                else
+                    packer.write(encoded.getId());
+                for (ByteBuffer chunk : packer.toByteBuffers())
+                    out.writeBytes(chunk);
+                out.writeBytes(encoded.getTail());
+            } else {
+                template.write(packer, (Packet) msg);
+                for (ByteBuffer chunk : packer.toByteBuffers())
+                    out.writeBytes(chunk);
+            }
+        } finally {
+            packer.clear(RETAINED_BUFFER_CAPACITY);
+        }
         int endIdx = out.writerIndex();
         out.setInt(startIdx, endIdx - startIdx - 4);
     }
@@ -0,0 +1,231 @@
+package com.stereo.study.ipc.discovery;
+
+import com.stereo.study.ipc.Config;
+import com.stereo.study.ipc.exc.ViaRuntimeException;
+import com.stereo.study.service.AbstractService;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.curator.utils.ZKPaths;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 客户端的服务端实例目录
+ * PathChildrenCache监听registryPath下的实例,路由只读本地快照,不访问ZooKeeper,
+ * 与ZooKeeper断开时保留最后一次看到的实例.
+ * 每次调用按 1/(平均延迟*(进行中调用数+1)) 加权随机选择实例
+ * Created by stereo on 17-3-15.
+ */
+public class ServerDirectory extends AbstractService {
+
+    private static Logger LOG = LoggerFactory.getLogger(ServerDirectory.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    //客户端参数模板,地址之外的设置复制到每个实例的连接
+    private final Config config;
+    private final ClassLoader loader;
+    private CuratorFramework zkClient;
+    private final boolean ownsZkClient;
+    private PathChildrenCache cache;
+
+    private final ConcurrentMap<String, ServerInstance> instances = new ConcurrentHashMap<String, ServerInstance>();
+    private volatile ServerInstance[] snapshot = new ServerInstance[0];
+
+    public ServerDirectory(Config config) {
+        this(config, null);
+    }
+
+    /**
+     * @param zkClient 外部管理生命周期的ZooKeeper客户端,为null时按config.registryAddress创建
+     */
+    public ServerDirectory(Config config, CuratorFramework zkClient) {
+        super("ServerDirectory:" + config.getRegistryPath());
+        this.config = config;
+        this.zkClient = zkClient;
+        this.ownsZkClient = zkClient == null;
+        this.loader = Thread.currentThread().getContextClassLoader();
+    }
+
+    @Override
+    protected void serviceInit() throws Exception {
+        if (zkClient == null) {
+            if (config.getRegistryAddress() == null)
+                throw new ViaRuntimeException("registryAddress is required by " + getName());
+            zkClient = CuratorFrameworkFactory.newClient(config.getRegistryAddress(), new ExponentialBackoffRetry(1000, 3));
+        }
+    }
+
+    @Override
+    protected void serviceStart() throws Exception {
+        if (ownsZkClient)
+            zkClient.start();
+        cache = new PathChildrenCache(zkClient, config.getRegistryPath(), true);
+        cache.getListenable().addListener(new PathChildrenCacheListener() {
+            @Override
+            public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
+                switch (event.getType()) {
+                    case CHILD_ADDED:
+                    case CHILD_UPDATED:
+                        add(event.getData());
+                        break;
+                    case CHILD_REMOVED:
+                        remove(event.getData());
+                        break;
+                    default:
+                        //断线重连等事件不清空实例,继续使用已知的实例
+                        break;
+                }
+            }
+        });
+        cache.start(PathChildrenCache.StartMode.BUILD_INITIAL_CACHE);
+        for (ChildData data : cache.getCurrentData())
+            add(data);
+        LOG.info(getName() + " started with " + instances.size() + " instances");
+    }
+
+    @Override
+    protected void serviceStop() throws Exception {
+        CloseableUtils.closeQuietly(cache);
+        for (ServerInstance instance : instances.values())
+            instance.close();
+        instances.clear();
+        snapshot = new ServerInstance[0];
+        if (ownsZkClient)
+            CloseableUtils.closeQuietly(zkClient);
+    }
+
+    private void add(ChildData data) {
+        String name = ZKPaths.getNodeFromPath(data.getPath());
+        byte[] bytes = data.getData();
+        String address = bytes == null || bytes.length == 0 ? name : new String(bytes, UTF8);
+        ServerInstance current = instances.get(name);
+        if (current != null && current.getAddress().equals(address))
+            return;
+        ServerInstance instance = new ServerInstance(address, instanceConfig(address), loader);
+        ServerInstance old = instances.put(name, instance);
+        refresh();
+        if (old != null)
+            old.close();
+        LOG.info(getName() + " found instance " + address);
+    }
+
+    private void remove(ChildData data) {
+        ServerInstance old = instances.remove(ZKPaths.getNodeFromPath(data.getPath()));
+        if (old != null) {
+            refresh();
+            old.close();
+            LOG.info(getName() + " lost instance " + old.getAddress());
+        }
+    }
+
+    private void refresh() {
+        snapshot = instances.values().toArray(new ServerInstance[0]);
+    }
+
+    /**
+     * 实例连接使用的参数
+     */
+    protected Config instanceConfig(String address) {
+        Config c = new Config(address);
+        c.setConnectTimeout(config.getConnectTimeout());
+        c.setReadTimeout(config.getReadTimeout());
+        c.setSendTimeout(config.getSendTimeout());
+        c.setHeartBeatRate(config.getHeartBeatRate());
+        c.setHeartbeatOnIdle(config.isHeartbeatOnIdle());
+        c.setUseEpoll(config.isUseEpoll());
+        c.setPayload(config.getPayload());
+        c.setLocalShortCircuit(config.isLocalShortCircuit());
+        c.setLocalCopyOnCall(config.isLocalCopyOnCall());
+        return c;
+    }
+
+    /**
+     * 按延迟加权随机选择一个实例,没有实例时返回null
+     */
+    public ServerInstance select() {
+        ServerInstance[] all = snapshot;
+        if (all.length == 0)
+            return null;
+        if (all.length == 1)
+            return all[0];
+        long now = System.currentTimeMillis();
+        double[] weights = new double[all.length];
+        double total = 0;
+        for (int i = 0; i < all.length; i++) {
+            weights[i] = all[i].isAvailable(now) ? all[i].weight() : 0;
+            total += weights[i];
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        //全部不可用时随机尝试一个
+        if (total <= 0)
+            return all[random.nextInt(all.length)];
+        double r = random.nextDouble() * total;
+        for (int i = 0; i < all.length; i++) {
+            r -= weights[i];
+            if (weights[i] > 0 && r < 0)
+                return all[i];
+        }
+        for (int i = all.length - 1; i >= 0; i--)
+            if (weights[i] > 0)
+                return all[i];
+        return all[0];
+    }
+
+    public List<ServerInstance> getInstances() {
+        return new ArrayList<ServerInstance>(Arrays.asList(snapshot));
+    }
+
+    /**
+     * 创建路由到目录中实例的接口代理,每次调用单独选择实例
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T create(final Class<T> api) {
+        return (T) Proxy.newProxyInstance(loader, new Class[]{api}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getDeclaringClass() == Object.class) {
+                    if ("equals".equals(method.getName()))
+                        return proxy == args[0];
+                    if ("hashCode".equals(method.getName()))
+                        return System.identityHashCode(proxy);
+                    return "Proxy[" + getName() + "]";
+                }
+                ServerInstance instance = select();
+                if (instance == null)
+                    throw new ViaRuntimeException("No server available under " + config.getRegistryPath());
+                Object target = instance.proxy(api);
+                long start = System.nanoTime();
+                boolean failed = true;
+                instance.begin();
+                try {
+                    Object result = method.invoke(target, args);
+                    failed = false;
+                    return result;
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                } finally {
+                    instance.end(System.nanoTime() - start, failed);
+                }
+            }
+        });
+    }
+}
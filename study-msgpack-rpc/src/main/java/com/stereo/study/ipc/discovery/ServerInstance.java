@@ -0,0 +1,137 @@
+package com.stereo.study.ipc.discovery;
+
+import com.stereo.study.ipc.Config;
+import com.stereo.study.ipc.client.ClientProxy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 目录中的一个服务端实例
+ * 第一次被选中时才建立连接,记录调用延迟的指数移动平均和进行中的调用数作为选择权重,失败的调用按读超时计入延迟
+ * Created by stereo on 17-3-15.
+ */
+public class ServerInstance {
+
+    private static Logger LOG = LoggerFactory.getLogger(ServerInstance.class);
+
+    //新样本的权重
+    private static final double EWMA_ALPHA = 0.2;
+    //还没有样本时按1ms估计,新实例能尽快分到流量
+    private static final double DEFAULT_LATENCY = TimeUnit.MILLISECONDS.toNanos(1);
+    //连接失败后暂停选择的时间
+    private static final long RETRY_INTERVAL = 5000;
+
+    private final String address;
+    private final Config config;
+    private final ClassLoader loader;
+    private volatile ClientProxy client;
+    private final ConcurrentMap<Class<?>, Object> proxies = new ConcurrentHashMap<Class<?>, Object>();
+
+    //只用于权重估计,并发更新丢失个别样本可以接受
+    private volatile double latency;
+    private final AtomicInteger inflight = new AtomicInteger();
+    private volatile long unavailableUntil;
+    private volatile boolean closed;
+
+    public ServerInstance(String address, Config config, ClassLoader loader) {
+        this.address = address;
+        this.config = config;
+        this.loader = loader;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * 平均延迟,纳秒,没有样本时为0
+     */
+    public double getLatency() {
+        return latency;
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    boolean isAvailable(long now) {
+        return !closed && now >= unavailableUntil;
+    }
+
+    double weight() {
+        double lat = latency > 0 ? latency : DEFAULT_LATENCY;
+        return 1.0 / (lat * (inflight.get() + 1));
+    }
+
+    void begin() {
+        inflight.incrementAndGet();
+    }
+
+    /**
+     * @param failed 调用抛出异常时按耗尽读超时计入延迟,快速失败的实例不会因延迟低而分到更多流量
+     */
+    void end(long elapsedNanos, boolean failed) {
+        inflight.decrementAndGet();
+        double sample = failed ? Math.max(elapsedNanos,
+                TimeUnit.MILLISECONDS.toNanos(config.getReadTimeout())) : elapsedNanos;
+        double lat = latency;
+        latency = lat <= 0 ? sample : lat + EWMA_ALPHA * (sample - lat);
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T proxy(Class<T> api) throws Exception {
+        Object proxy = proxies.get(api);
+        if (proxy == null) {
+            proxy = connect().create(api, loader);
+            Object existing = proxies.putIfAbsent(api, proxy);
+            if (existing != null)
+                proxy = existing;
+        }
+        return (T) proxy;
+    }
+
+    private ClientProxy connect() {
+        ClientProxy c = client;
+        if (c != null)
+            return c;
+        synchronized (this) {
+            if (client == null) {
+                ClientProxy proxy = new ClientProxy(config, loader);
+                try {
+                    proxy.init();
+                    proxy.start();
+                } catch (RuntimeException e) {
+                    unavailableUntil = System.currentTimeMillis() + RETRY_INTERVAL;
+                    LOG.warn("Failed to connect " + address + ", skip it for " + RETRY_INTERVAL + "ms");
+                    proxy.stop();
+                    throw e;
+                }
+                client = proxy;
+            }
+            return client;
+        }
+    }
+
+    synchronized void close() {
+        closed = true;
+        proxies.clear();
+        if (client != null) {
+            client.stop();
+            client = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ServerInstance{" +
+                "address='" + address + '\'' +
+                ", latency=" + latency +
+                ", inflight=" + inflight +
+                '}';
+    }
+}
@@ -0,0 +1,69 @@
+package com.stereo.study.ipc.discovery;
+
+import com.stereo.study.ipc.Config;
+import com.stereo.study.ipc.Constants;
+import com.stereo.study.ipc.exc.ViaRuntimeException;
+import com.stereo.study.ipc.util.NetUtils;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.nodes.PersistentEphemeralNode;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.curator.utils.ZKPaths;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把IpcServer登记到ZooKeeper
+ * 节点为 registryPath/host:port 的临时节点,数据是 tcp://host:port,
+ * 会话过期后由PersistentEphemeralNode自动重建
+ * Created by stereo on 17-3-15.
+ */
+public class ZkServerRegistrar {
+
+    private static Logger LOG = LoggerFactory.getLogger(ZkServerRegistrar.class);
+
+    private final Config config;
+    private CuratorFramework client;
+    private PersistentEphemeralNode node;
+
+    public ZkServerRegistrar(Config config) {
+        this.config = config;
+    }
+
+    /**
+     * 登记的实例名 host:port, 监听任意地址时取能连通注册中心的本机地址
+     */
+    public String instanceName() {
+        String host = config.getHost();
+        if (NetUtils.isAnyHost(host))
+            host = NetUtils.getLocalHostByRegistry(config.getRegistryAddress());
+        return host + ":" + config.getPort();
+    }
+
+    public synchronized void register() throws Exception {
+        if (node != null)
+            return;
+        String instance = instanceName();
+        String path = ZKPaths.makePath(config.getRegistryPath(), instance);
+        client = CuratorFrameworkFactory.newClient(config.getRegistryAddress(), new ExponentialBackoffRetry(1000, 3));
+        client.start();
+        node = new PersistentEphemeralNode(client, PersistentEphemeralNode.Mode.EPHEMERAL, path,
+                (Constants.ADDRESS_SCHEME_TCP + instance).getBytes("UTF-8"));
+        node.start();
+        if (!node.waitForInitialCreate(config.getConnectTimeout(), TimeUnit.MILLISECONDS)) {
+            unregister();
+            throw new ViaRuntimeException("Failed to register " + instance + " to " + config.getRegistryAddress());
+        }
+        LOG.info("Registered " + instance + " at " + path);
+    }
+
+    public synchronized void unregister() {
+        CloseableUtils.closeQuietly(node);
+        CloseableUtils.closeQuietly(client);
+        node = null;
+        client = null;
+    }
+}
@@ -6,6 +6,7 @@ import io.netty.channel.ChannelFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -62,12 +63,15 @@ public final class IpcChannel extends AbstractChannel {
         }
     }
 
+    //domain socket连接没有IP地址,返回null
     public InetSocketAddress getLocalAddress() {
-        return (InetSocketAddress) channel.localAddress();
+        SocketAddress address = channel.localAddress();
+        return address instanceof InetSocketAddress ? (InetSocketAddress) address : null;
     }
 
     public InetSocketAddress getRemoteAddress() {
-        return (InetSocketAddress) channel.remoteAddress();
+        SocketAddress address = channel.remoteAddress();
+        return address instanceof InetSocketAddress ? (InetSocketAddress) address : null;
     }
 
     public boolean isConnected() {
@@ -2,14 +2,17 @@ package com.stereo.study.ipc.server;
 
 import com.stereo.study.event.Dispatcher;
 import com.stereo.study.ipc.Constants;
+import com.stereo.study.ipc.Heartbeat;
 import com.stereo.study.ipc.Packet;
 import com.stereo.study.ipc.server.api.IpcEngine;
 import com.stereo.study.ipc.server.event.HeartbeatEvent;
 import com.stereo.study.ipc.server.event.RequestEvent;
 import com.stereo.study.ipc.server.event.ResponseEvent;
 import com.stereo.study.ipc.server.event.enums.HeartbeatEnum;
+import com.stereo.study.ipc.server.skeleton.Liveliness;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.AttributeKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,9 +23,19 @@ public class IpcHandler extends ChannelInboundHandlerAdapter implements IpcEngin
 
     private static Logger LOG = LoggerFactory.getLogger(IpcHandler.class);
 
+    //连接上最近一次心跳登记的客户端
+    static final AttributeKey<Heartbeat> HEARTBEAT_KEY = AttributeKey.valueOf("IpcHandler.heartbeat");
+
     private Dispatcher dispatcher;
+    private Liveliness liveliness;
+
     public IpcHandler(Dispatcher dispatcher) {
+        this(dispatcher, null);
+    }
+
+    public IpcHandler(Dispatcher dispatcher, Liveliness liveliness) {
         this.dispatcher = dispatcher;
+        this.liveliness = liveliness;
     }
 
     @Override
@@ -36,18 +49,23 @@ public class IpcHandler extends ChannelInboundHandlerAdapter implements IpcEngin
                 switch (type)
                 {
                     case Constants.TYPE_REQUEST:
+                        //请求即视为存活,客户端空闲时才会发心跳
+                        touch(ctx);
                         dispatcher.getEventHandler().handle(new RequestEvent(packet,ctx));
                         break;
                     case Constants.TYPE_RESPONSE:
                         dispatcher.getEventHandler().handle(new ResponseEvent(packet,ctx));
                         break;
                     case Constants.TYPE_HEARTBEAT_REQUEST_REGISTER:
+                        ctx.channel().attr(HEARTBEAT_KEY).set(packet.getHeartbeat());
                         dispatcher.getEventHandler().handle(new HeartbeatEvent(HeartbeatEnum.REGISTER,ctx,packet));
                         break;
                     case Constants.TYPE_HEARTBEAT:
+                        ctx.channel().attr(HEARTBEAT_KEY).set(packet.getHeartbeat());
                         dispatcher.getEventHandler().handle(new HeartbeatEvent(HeartbeatEnum.HEARTBEAT,ctx,packet));
                         break;
                     case Constants.TYPE_HEARTBEAT_REQUEST_UNREGISTER:
+                        ctx.channel().attr(HEARTBEAT_KEY).set(null);
                         dispatcher.getEventHandler().handle(new HeartbeatEvent(HeartbeatEnum.UNREGISTER,ctx,packet));
                         break;
                     default:
@@ -61,6 +79,14 @@ public class IpcHandler extends ChannelInboundHandlerAdapter implements IpcEngin
         }
     }
 
+    private void touch(ChannelHandlerContext ctx) {
+        if (liveliness == null)
+            return;
+        Heartbeat heartbeat = ctx.channel().attr(HEARTBEAT_KEY).get();
+        if (heartbeat != null)
+            liveliness.receivedPing(heartbeat);
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         LOG.error("IpcHandler.exceptionCaught",cause);
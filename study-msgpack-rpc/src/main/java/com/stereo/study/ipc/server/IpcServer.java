@@ -4,11 +4,14 @@ import com.stereo.study.ipc.server.api.ISkeletonContext;
 import com.stereo.study.ipc.server.skeleton.SkeletonContext;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerDomainSocketChannel;
 import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.ssl.SslContext;
@@ -19,9 +22,15 @@ import org.slf4j.LoggerFactory;
 import com.stereo.study.ipc.Config;
 import com.stereo.study.ipc.codec.MsgPackDecoder;
 import com.stereo.study.ipc.codec.MsgPackEncoder;
+import com.stereo.study.ipc.discovery.ZkServerRegistrar;
+import com.stereo.study.ipc.exc.ViaRuntimeException;
 import com.stereo.study.service.AbstractService;
 import com.stereo.study.service.Service;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Created by stereo on 16-8-4.
  */
@@ -30,19 +39,21 @@ public class IpcServer extends AbstractService {
     private static Logger log = LoggerFactory.getLogger(IpcServer.class);
 
     private Config config;
-    private Channel channel;
+    private final List<Channel> channels = new ArrayList<Channel>();
+    private int acceptors = 1;
     private ServerBootstrap bootstrap;
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
     private ISkeletonContext serviceContext;
     private IpcRegistry registry;
+    private ZkServerRegistrar registrar;
 
     public IpcServer(){
         this(new Config());
     }
 
     public IpcServer(Config config) {
-        super("IpcServer"+":"+config.getRemoteAddress().toString());
+        super("IpcServer"+":"+config.getAddress());
         this.config = config;
     }
 
@@ -62,14 +73,27 @@ public class IpcServer extends AbstractService {
             sslCtx = null;
         }
         Class clazz;
-        if(config.isUseEpoll())
+        if(config.isDomainSocket())
         {
+            //unix domain socket只有epoll实现
+            if (!Epoll.isAvailable())
+                throw new ViaRuntimeException("Unix domain socket requires epoll", Epoll.unavailabilityCause());
             bossGroup = new EpollEventLoopGroup(1);
             workerGroup = new EpollEventLoopGroup(config.getChildNioEventThreads());
+            clazz = EpollServerDomainSocketChannel.class;
+        }
+        else if(config.isUseEpoll())
+        {
+            //SO_REUSEPORT多监听,每个监听socket注册到bossGroup中各自的线程上,由内核分摊accept
+            acceptors = Math.max(1, config.getAcceptorThreads());
+            bossGroup = new EpollEventLoopGroup(acceptors);
+            workerGroup = new EpollEventLoopGroup(config.getChildNioEventThreads());
             clazz = EpollServerSocketChannel.class;
         }
 
         else {
+            if (config.getAcceptorThreads() > 1)
+                log.warn("acceptorThreads=" + config.getAcceptorThreads() + " requires epoll, fall back to a single acceptor");
             bossGroup = new NioEventLoopGroup(1);
             workerGroup = new NioEventLoopGroup(config.getChildNioEventThreads());
             clazz = NioServerSocketChannel.class;
@@ -78,19 +102,12 @@ public class IpcServer extends AbstractService {
                 .group(bossGroup, workerGroup)
                 .channel(clazz)
                 .option(ChannelOption.SO_BACKLOG, 1024)
-                .option(ChannelOption.SO_REUSEADDR, true)
-                .option(ChannelOption.SO_KEEPALIVE, false)
-                .option(ChannelOption.TCP_NODELAY, config.isTcpNoDelay())
-                .option(ChannelOption.SO_LINGER ,config.getSoLinger())
                 .option(ChannelOption.RCVBUF_ALLOCATOR, AdaptiveRecvByteBufAllocator.DEFAULT)
-                .option(ChannelOption.SO_SNDBUF, config.getSendBufferSize())
-                .option(ChannelOption.SO_RCVBUF, config.getReceiveBufferSize())
-                .localAddress(config.getRemoteAddress())
                 .handler(new LoggingHandler(LogLevel.INFO))
-                .childHandler(new ChannelInitializer<SocketChannel>()
+                .childHandler(new ChannelInitializer<Channel>()
                 {
                     @Override
-                    public void initChannel(SocketChannel ch) throws Exception
+                    public void initChannel(Channel ch) throws Exception
                     {
                         ChannelPipeline p = ch.pipeline();
                         if (sslCtx != null) {
@@ -99,10 +116,23 @@ public class IpcServer extends AbstractService {
                         p.addLast(
                                 new MsgPackEncoder(),
                                 new MsgPackDecoder(config.getPayload()),
-                                new IpcHandler(serviceContext.getDispatcher())
+                                new IpcHandler(serviceContext.getDispatcher(), serviceContext.getLiveliness())
                         );
                     }
                 });
+        //TCP专有参数,domain socket不支持
+        if (!config.isDomainSocket())
+        {
+            bootstrap.option(ChannelOption.SO_REUSEADDR, true)
+                    .option(ChannelOption.SO_SNDBUF, config.getSendBufferSize())
+                    .option(ChannelOption.SO_RCVBUF, config.getReceiveBufferSize())
+                    .option(ChannelOption.SO_KEEPALIVE, false)
+                    .option(ChannelOption.TCP_NODELAY, config.isTcpNoDelay())
+                    .option(ChannelOption.SO_LINGER ,config.getSoLinger())
+                    .localAddress(config.getRemoteAddress());
+        }
+        if (acceptors > 1)
+            bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
     }
 
     @Override
@@ -111,27 +141,67 @@ public class IpcServer extends AbstractService {
             ((Service)serviceContext).start();
         if (bootstrap!=null)
         {
-            channel = bootstrap.bind(config.getHost(),config.getPort()).sync().channel();
+            if (config.isDomainSocket())
+            {
+                //清理上次异常退出残留的socket文件
+                deleteSocketFile();
+                channels.add(bootstrap.bind(new DomainSocketAddress(config.getDomainSocketPath())).sync().channel());
+            }
+            else
+            {
+                for (int i = 0; i < acceptors; i++)
+                    channels.add(bootstrap.bind(config.getHost(),config.getPort()).sync().channel());
+                if (acceptors > 1)
+                    log.info(getName() + " bound " + acceptors + " acceptors with SO_REUSEPORT");
+            }
+        }
+        //登记到本进程,同JVM的客户端可直接调用
+        LocalServerRegistry.register(this);
+        //监听完成后再登记到ZooKeeper,客户端发现时已可连接
+        if (config.getRegistryAddress() != null)
+        {
+            if (config.isDomainSocket())
+                log.warn(getName() + " listens on a unix domain socket, skip registering to ZooKeeper");
+            else
+            {
+                registrar = new ZkServerRegistrar(config);
+                registrar.register();
+            }
         }
     }
 
     @Override
     protected void serviceStop() throws Exception {
+        //先从ZooKeeper摘除,客户端不再选择本实例
+        if (registrar != null)
+        {
+            registrar.unregister();
+            registrar = null;
+        }
+        LocalServerRegistry.unregister(this);
         if(serviceContext!=null)
             ((Service)serviceContext).stop();
-        if(bootstrap!=null && channel!=null && bossGroup!=null && workerGroup!=null)
+        if(bootstrap!=null && !channels.isEmpty() && bossGroup!=null && workerGroup!=null)
         {
-            channel.close().sync();
+            for (Channel channel : channels)
+                channel.close().sync();
             bossGroup.shutdownGracefully();
             workerGroup.shutdownGracefully();
             bootstrap = null;
-            channel = null;
+            channels.clear();
             bossGroup = null;
             workerGroup = null;
-
+            if (config.isDomainSocket())
+                deleteSocketFile();
         }
     }
 
+    private void deleteSocketFile() {
+        File file = new File(config.getDomainSocketPath());
+        if (file.exists() && !file.delete())
+            log.warn("failed to delete socket file " + file);
+    }
+
     public IpcRegistry getIpcRegistry(){
         return registry;
     }
@@ -0,0 +1,81 @@
+package com.stereo.study.ipc.server;
+
+import com.stereo.study.ipc.Config;
+import com.stereo.study.ipc.util.NetUtils;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 同一JVM内已启动的IpcServer登记表
+ * 客户端据此判断目标服务是否在本进程内,从而绕过网络直接调用
+ * Created by stereo on 17-3-2.
+ */
+public final class LocalServerRegistry {
+
+    //端口 -> 服务
+    private static final ConcurrentMap<Integer, IpcServer> servers = new ConcurrentHashMap<Integer, IpcServer>();
+    //domain socket路径 -> 服务
+    private static final ConcurrentMap<String, IpcServer> domainServers = new ConcurrentHashMap<String, IpcServer>();
+
+    private LocalServerRegistry() {
+    }
+
+    static void register(IpcServer server) {
+        Config config = server.getConfig();
+        if (config.isDomainSocket())
+            domainServers.put(config.getDomainSocketPath(), server);
+        else
+            servers.put(config.getPort(), server);
+    }
+
+    static void unregister(IpcServer server) {
+        Config config = server.getConfig();
+        if (config.isDomainSocket())
+            domainServers.remove(config.getDomainSocketPath(), server);
+        else
+            servers.remove(config.getPort(), server);
+    }
+
+    /**
+     * 按客户端配置查找本进程内的服务,没有则返回null
+     *
+     * @param config 客户端配置
+     * @return
+     */
+    public static IpcServer lookup(Config config) {
+        if (config.isDomainSocket())
+            return domainServers.get(config.getDomainSocketPath());
+        return lookup(config.getRemoteAddress());
+    }
+
+    /**
+     * 查找本进程内监听该地址的服务,没有则返回null
+     *
+     * @param address 客户端要连接的地址
+     * @return
+     */
+    public static IpcServer lookup(InetSocketAddress address) {
+        IpcServer server = servers.get(address.getPort());
+        if (server == null)
+            return null;
+        String bindHost = server.getConfig().getHost();
+        String host = address.getHostName();
+        if (bindHost.equals(host))
+            return server;
+        //服务监听在0.0.0.0时任何指向本机的地址都算命中,监听在回环地址时只认回环地址
+        if (NetUtils.isAnyHost(bindHost))
+            return isLoopback(address) || NetUtils.isHostInNetworkCard(host) ? server : null;
+        if (NetUtils.isLocalHost(bindHost))
+            return isLoopback(address) ? server : null;
+        return null;
+    }
+
+    private static boolean isLoopback(InetSocketAddress address) {
+        if (address.getAddress() != null)
+            return address.getAddress().isLoopbackAddress() || address.getAddress().isAnyLocalAddress();
+        String host = address.getHostName();
+        return NetUtils.isLocalHost(host) || NetUtils.isAnyHost(host);
+    }
+}
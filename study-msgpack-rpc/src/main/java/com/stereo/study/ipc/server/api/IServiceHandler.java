@@ -2,6 +2,7 @@ package com.stereo.study.ipc.server.api;
 
 import com.stereo.study.event.Event;
 import com.stereo.study.event.EventHandler;
+import com.stereo.study.ipc.Packet;
 import com.stereo.study.ipc.server.event.RequestEvent;
 import com.stereo.study.ipc.server.event.ResponseEvent;
 import com.stereo.study.ipc.server.event.enums.ServiceEnum;
@@ -17,5 +18,12 @@ public interface IServiceHandler extends EventHandler<Event<ServiceEnum>> {
 
     public void replyResponse(ResponseEvent response) throws Exception;
 
+    /**
+     * 同JVM直接调用,在调用线程上执行,结果写回packet
+     *
+     * @param packet
+     */
+    public void handleLocalRequest(Packet packet);
+
     public IServiceInvoker getServiceInvoker();
 }
@@ -17,4 +17,9 @@ public interface IServiceInvoker {
 	boolean invoke(IServiceCall call);
 
 	boolean invoke(IServiceCall call, Object service);
+
+	/**
+	 * 清除@Idempotent方法缓存的结果,methodName为null时清除整个服务
+	 */
+	int invalidate(String serviceName, String methodName);
 }
@@ -7,9 +7,11 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import com.stereo.study.service.AbstractService;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.PriorityBlockingQueue;
 
 public abstract class AbstractLivelinessMonitor<O> extends AbstractService {
 
@@ -23,7 +25,27 @@ public abstract class AbstractLivelinessMonitor<O> extends AbstractService {
   private int monitorInterval = expireInterval/3;
 
   private final Clock clock;
-  protected Map<O, Long> running = new HashMap<O, Long>();
+  //registered objects, pings only update the entry's timestamp
+  private final ConcurrentMap<O, Entry<O>> running = new ConcurrentHashMap<O, Entry<O>>();
+  //expiry index ordered by deadline, only the checker thread takes entries out
+  private final PriorityBlockingQueue<Entry<O>> deadlines = new PriorityBlockingQueue<Entry<O>>();
+
+  private static final class Entry<O> implements Comparable<Entry<O>> {
+    final O ob;
+    volatile long lastPing;
+    //deadline the entry is queued with, never changed while it sits in the queue
+    long deadline;
+
+    Entry(O ob, long time) {
+      this.ob = ob;
+      this.lastPing = time;
+    }
+
+    @Override
+    public int compareTo(Entry<O> other) {
+      return deadline < other.deadline ? -1 : (deadline == other.deadline ? 0 : 1);
+    }
+  }
 
   public AbstractLivelinessMonitor(String name, Clock clock) {
     super(name);
@@ -61,25 +83,41 @@ public abstract class AbstractLivelinessMonitor<O> extends AbstractService {
     this.monitorInterval = monitorInterval;
   }
 
-  public synchronized void receivedPing(O ob) {
-    //only put for the registered objects
-    if (running.containsKey(ob)) {
-      running.put(ob, clock.getTime());
+  public void receivedPing(O ob) {
+    //only update the registered objects
+    Entry<O> entry = running.get(ob);
+    if (entry != null) {
+      entry.lastPing = clock.getTime();
     }
   }
 
-  public synchronized void register(O ob) {
-    running.put(ob, clock.getTime());
+  public void register(O ob) {
+    Entry<O> entry = new Entry<O>(ob, clock.getTime());
+    entry.deadline = entry.lastPing + expireInterval;
+    running.put(ob, entry);
+    deadlines.offer(entry);
   }
 
-  public synchronized void unregister(O ob) {
+  public void unregister(O ob) {
+    //the queued entry is dropped when the checker reaches it
     running.remove(ob);
   }
 
-  public synchronized void resetTimer() {
+  public boolean isRegistered(O ob) {
+    return running.containsKey(ob);
+  }
+
+  /**
+   * Live read-only view of the registered objects, not a copy.
+   */
+  public Set<O> registered() {
+    return Collections.unmodifiableSet(running.keySet());
+  }
+
+  public void resetTimer() {
     long time = clock.getTime();
-    for (O ob : running.keySet()) {
-      running.put(ob, time);
+    for (Entry<O> entry : running.values()) {
+      entry.lastPing = time;
     }
   }
 
@@ -88,25 +126,35 @@ public abstract class AbstractLivelinessMonitor<O> extends AbstractService {
     @Override
     public void run() {
       while (!stopped && !Thread.currentThread().isInterrupted()) {
-        synchronized (AbstractLivelinessMonitor.this) {
-          Iterator<Map.Entry<O, Long>> iterator = 
-            running.entrySet().iterator();
-
-          //avoid calculating current time everytime in loop
-          long currentTime = clock.getTime();
-
-          while (iterator.hasNext()) {
-            Map.Entry<O, Long> entry = iterator.next();
-            if (currentTime > entry.getValue() + expireInterval) {
-              iterator.remove();
-              expire(entry.getKey());
-              LOG.info("Expired:" + entry.getKey().toString() + 
+        //avoid calculating current time everytime in loop
+        long currentTime = clock.getTime();
+        Entry<O> entry;
+        //only entries whose deadline has passed are touched
+        while ((entry = deadlines.peek()) != null && entry.deadline <= currentTime) {
+          deadlines.poll();
+          if (running.get(entry.ob) != entry) {
+            //unregistered or registered again
+            continue;
+          }
+          long deadline = entry.lastPing + expireInterval;
+          if (currentTime >= deadline) {
+            if (running.remove(entry.ob, entry)) {
+              expire(entry.ob);
+              LOG.info("Expired:" + entry.ob.toString() +
                       " Timed out after " + expireInterval/1000 + " secs");
             }
+          } else {
+            //pinged since it was queued, requeue with the new deadline
+            entry.deadline = deadline;
+            deadlines.offer(entry);
           }
         }
+        long sleep = monitorInterval;
+        if (entry != null) {
+          sleep = Math.max(1, Math.min(sleep, entry.deadline - currentTime));
+        }
         try {
-          Thread.sleep(monitorInterval);
+          Thread.sleep(sleep);
         } catch (InterruptedException e) {
           LOG.info(getName() + " thread interrupted");
           break;
@@ -8,7 +8,7 @@ import com.stereo.study.ipc.util.Time;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.*;
+import java.util.Set;
 
 /**
  * Created by stereo on 16-8-24.
@@ -28,7 +28,7 @@ public class Liveliness extends AbstractLivelinessMonitor<Heartbeat> implements
 
     public Set<Heartbeat> living()
     {
-        return Collections.unmodifiableSet(running.keySet());
+        return registered();
     }
 
     @Override
@@ -59,7 +59,7 @@ public class Liveliness extends AbstractLivelinessMonitor<Heartbeat> implements
                 unregister(heartbeat);
                 break;
             case HEARTBEAT:
-                if (running.containsKey(heartbeat))
+                if (isRegistered(heartbeat))
                     receivedPing(heartbeat);
                 else
                     register(heartbeat);
@@ -0,0 +1,23 @@
+package com.stereo.study.ipc.server.skeleton.service;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记服务实现上的幂等方法,相同参数的成功结果会被缓存并直接返回
+ * 数据变更后通过Service.invalidateResults清除
+ * Created by stereo on 17-3-13.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Idempotent {
+
+    /**
+     * 结果有效期,毫秒,小于等于0只在容量淘汰或主动失效时清除
+     */
+    long ttl() default 60000;
+}
@@ -58,6 +58,18 @@ public abstract class Service implements IService {
 		return sendNotification(notificationName,null,null);
 	}
 
+	/**
+	 * 数据变更后清除本服务@Idempotent方法缓存的结果
+	 */
+	public int invalidateResults(String methodName) {
+		return actionContext.getServiceHandler().getServiceInvoker()
+				.invalidate(serviceName, methodName);
+	}
+
+	public int invalidateResults() {
+		return invalidateResults(null);
+	}
+
 	public void setServiceContext(ISkeletonContext actionContext) {
 		this.actionContext = actionContext;
 	}
@@ -2,6 +2,7 @@ package com.stereo.study.ipc.server.skeleton.service;
 
 import com.stereo.study.ipc.Constants;
 import com.stereo.study.ipc.Packet;
+import com.stereo.study.ipc.codec.EncodedPacket;
 import com.stereo.study.ipc.server.api.ICallback;
 import com.stereo.study.ipc.server.api.IServiceCall;
 
@@ -31,6 +32,8 @@ public class ServiceCall implements IServiceCall {
 
 	protected Packet packet; // 处理的数据包
 
+	private EncodedPacket encodedResponse; // 已编码的响应(可选)
+
 	private HashSet<ICallback> callbacks = new HashSet<ICallback>(); // 回调接口(可选)
 
 	public ServiceCall() {
@@ -110,11 +113,12 @@ public class ServiceCall implements IServiceCall {
 
 	@Override
 	public Set<ICallback> getCallbacks() {
-		return null;
+		return callbacks;
 	}
 
 	@Override
 	public void registerCallback(ICallback callback) {
+		callbacks.add(callback);
 	}
 
 	@Override
@@ -123,6 +127,14 @@ public class ServiceCall implements IServiceCall {
 		packet.setException(exception.toString());
 	}
 
+	public EncodedPacket getEncodedResponse() {
+		return encodedResponse;
+	}
+
+	public void setEncodedResponse(EncodedPacket encodedResponse) {
+		this.encodedResponse = encodedResponse;
+	}
+
 	@Override
 	public Class<?> getReturnType() {
 		return returnType;
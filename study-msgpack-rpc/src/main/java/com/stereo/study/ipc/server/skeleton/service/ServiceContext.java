@@ -56,7 +56,8 @@ public class ServiceContext {
     public static Channel getChannel() {
         ServiceContext context = (ServiceContext) _localContext.get();
 
-        if (context != null)
+        //同JVM直接调用时没有ChannelHandlerContext
+        if (context != null && context._channelHandlerContext != null)
             return context._channelHandlerContext.channel();
         else
             return null;
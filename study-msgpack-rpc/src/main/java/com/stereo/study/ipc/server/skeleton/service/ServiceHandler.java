@@ -2,16 +2,21 @@ package com.stereo.study.ipc.server.skeleton.service;
 
 import com.stereo.study.event.Event;
 import com.stereo.study.ipc.exc.ViaRuntimeException;
+import com.stereo.study.ipc.server.api.ICallback;
 import com.stereo.study.ipc.server.api.ISkeletonContext;
 import com.stereo.study.ipc.server.event.RequestEvent;
 import com.stereo.study.ipc.server.event.ResponseEvent;
 import com.stereo.study.ipc.util.Daemon;
+import com.stereo.study.ipc.util.PriorityLaneQueue;
 import com.stereo.study.ipc.util.ThreadPoolUtils;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.stereo.study.ipc.Config;
 import com.stereo.study.ipc.Constants;
+import com.stereo.study.ipc.Packet;
 import com.stereo.study.ipc.server.api.IServiceHandler;
 import com.stereo.study.ipc.server.api.IServiceInvoker;
 import com.stereo.study.ipc.server.event.enums.ServiceEnum;
@@ -27,12 +32,14 @@ public class ServiceHandler extends AbstractService implements IServiceHandler{
 
     private Config config;
     private ExecutorService handlerPool;
+    //virtual模式下限制同时执行的请求数,代替线程池队列
+    private Semaphore concurrencyLimit;
     private final IServiceInvoker serviceInvoker;
 
     public ServiceHandler(ISkeletonContext servicer, Config config)
     {
         super("ServiceHandler");
-        serviceInvoker = new ServiceInvoker(servicer);
+        serviceInvoker = new ServiceInvoker(servicer, config.getResultCacheSize());
         this.config = config;
     }
 
@@ -40,18 +47,41 @@ public class ServiceHandler extends AbstractService implements IServiceHandler{
         int minPoolSize;
         int aliveTime;
         int maxPoolSize = config.getBusinessPoolSize();
-        if (Constants.THREADPOOL_TYPE_FIXED.equals(config.getBusinessPoolType())) {
+        String poolType = config.getBusinessPoolType();
+        if (Constants.THREADPOOL_TYPE_VIRTUAL.equals(poolType)) {
+            ExecutorService virtualPool = ThreadPoolUtils.newVirtualThreadPerTaskExecutor();
+            if (virtualPool != null) {
+                handlerPool = virtualPool;
+                concurrencyLimit = new Semaphore(maxPoolSize);
+                LOG.info("HandlerPool runs requests on virtual threads, max concurrency " + maxPoolSize);
+                return;
+            }
+            LOG.warn("Virtual threads are not supported by this runtime, HandlerPool falls back to "
+                    + Constants.THREADPOOL_TYPE_CACHED);
+            poolType = Constants.THREADPOOL_TYPE_CACHED;
+        }
+        if (Constants.THREADPOOL_TYPE_FIXED.equals(poolType)) {
             minPoolSize = maxPoolSize;
             aliveTime = 0;
-        } else if (Constants.THREADPOOL_TYPE_CACHED.equals(config.getBusinessPoolType())) {
+        } else if (Constants.THREADPOOL_TYPE_CACHED.equals(poolType)) {
             minPoolSize = 20;
             maxPoolSize = Math.max(minPoolSize, maxPoolSize);
             aliveTime = 60000;
         } else {
-            throw new ViaRuntimeException("HandlerPool-"+ config.getBusinessPoolType());
+            throw new ViaRuntimeException("HandlerPool-"+ poolType);
         }
         boolean isPriority = Constants.QUEUE_TYPE_PRIORITY.equals(config.getBusinessPoolQueueType());
-        BlockingQueue<Runnable> configQueue = ThreadPoolUtils.buildQueue(config.getBusinessPoolQueueSize(), isPriority);
+        //不限长度的优先级队列入队不会失败,线程池不会超出核心线程数,核心线程直接开到最大
+        boolean growCore = isPriority && config.getBusinessPoolQueueSize() <= 0 && minPoolSize < maxPoolSize;
+        if (growCore)
+            minPoolSize = maxPoolSize;
+        BlockingQueue<Runnable> configQueue;
+        if (isPriority)
+            //按优先级分通道,队列大小为0时不限长度,否则没有排队也就没有优先级
+            configQueue = new PriorityLaneQueue(config.getBusinessPoolQueueSize(),
+                    PriorityLaneQueue.parseWeights(config.getBusinessPoolLaneWeights()));
+        else
+            configQueue = ThreadPoolUtils.buildQueue(config.getBusinessPoolQueueSize(), false);
         Daemon.DaemonFactory threadFactory = new Daemon.DaemonFactory();
         RejectedExecutionHandler handler = new RejectedExecutionHandler() {
             private int i = 1;
@@ -73,9 +103,13 @@ public class ServiceHandler extends AbstractService implements IServiceHandler{
                 throw new RejectedExecutionException("Biz thread pool of provider has bean exhausted");
             }
         };
-        handlerPool = new ThreadPoolExecutor(minPoolSize, maxPoolSize,
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(minPoolSize, maxPoolSize,
                 aliveTime, TimeUnit.MILLISECONDS,
                 configQueue, threadFactory, handler);
+        //空闲时仍按cached的存活时间回收
+        if (growCore)
+            executor.allowCoreThreadTimeOut(true);
+        handlerPool = executor;
     }
 
     void shutdown() {
@@ -84,13 +118,27 @@ public class ServiceHandler extends AbstractService implements IServiceHandler{
     }
 
     @Override
-    public void handleRequest(RequestEvent request) throws Exception {
+    public void handleRequest(final RequestEvent request) throws Exception {
         ServiceContext.begin(request.getTarget(),request.getChannelHandlerContext());
         try
         {
-            boolean succeed = serviceInvoker.invoke(new ServiceCall(request.getTarget()));
+            ServiceCall call = new ServiceCall(request.getTarget());
+            //合并到进行中的执行时,结果由执行线程通过回调写回
+            call.registerCallback(new ICallback() {
+                @Override
+                public void resultReceived(Object call) {
+                    try {
+                        replyCoalesced((ServiceCall) call, request);
+                    } catch (Exception ex) {
+                        LOG.error("Reply coalesced request error", ex);
+                    }
+                }
+            });
+            boolean succeed = serviceInvoker.invoke(call);
+            if (succeed && call.getStatus() == Constants.STATUS_PENDING)
+                return;
             if (succeed)
-                replyResponse(new ResponseEvent(request.getTarget(),request.getChannelHandlerContext()));
+                reply(call, request);
             else
                 LOG.error("handleRequest failed request : " + request.getTarget());
         }
@@ -99,12 +147,58 @@ public class ServiceHandler extends AbstractService implements IServiceHandler{
         }
     }
 
+    private void reply(ServiceCall call, RequestEvent request) throws Exception {
+        if (!call.isSuccess())
+            LOG.error("handleRequest failed request : " + request.getTarget());
+        else if (call.getEncodedResponse() != null)
+            //响应已编码,直接写出
+            request.getChannelHandlerContext().channel().writeAndFlush(call.getEncodedResponse()).sync();
+        else
+            replyResponse(new ResponseEvent(request.getTarget(),request.getChannelHandlerContext()));
+    }
+
+    /**
+     * 合并进来的调用在执行线程上依次回写,不等待写完,避免一个慢连接拖住其它调用和业务线程
+     */
+    private void replyCoalesced(ServiceCall call, final RequestEvent request) {
+        if (!call.isSuccess()) {
+            LOG.error("handleRequest failed request : " + request.getTarget());
+            return;
+        }
+        Object message = call.getEncodedResponse() != null ? call.getEncodedResponse() : request.getTarget();
+        request.getChannelHandlerContext().channel().writeAndFlush(message).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (!future.isSuccess())
+                    LOG.error("Reply coalesced request error : " + request.getTarget(), future.cause());
+            }
+        });
+    }
+
     @Override
     public void replyResponse(ResponseEvent response) throws Exception {
         Channel channel = response.getChannelHandlerContext().channel();
         channel.writeAndFlush(response.getTarget()).sync();
     }
 
+    @Override
+    public void handleLocalRequest(Packet packet) {
+        ServiceContext.begin(packet, null);
+        try
+        {
+            ServiceCall call = new ServiceCall(packet);
+            if (!serviceInvoker.invoke(call))
+            {
+                //网络路径下失败不回包,本地调用需要把状态带回给调用方
+                packet.setType(Constants.TYPE_RESPONSE);
+                packet.setState(call.getStatus());
+            }
+        }
+        finally {
+            ServiceContext.end();
+        }
+    }
+
     @Override
     public IServiceInvoker getServiceInvoker() {
         return serviceInvoker;
@@ -117,17 +211,15 @@ public class ServiceHandler extends AbstractService implements IServiceHandler{
         switch (type)
         {
             case REQUEST:
-                handlerPool.submit(new Runnable()
+                if (concurrencyLimit != null && config.getBusinessPoolQueueSize() > 0
+                        && concurrencyLimit.getQueueLength() >= config.getBusinessPoolQueueSize())
                 {
-                    @Override
-                    public void run() {
-                        try {
-                            handleRequest((RequestEvent) event);
-                        } catch (Exception ex) {
-                            LOG.error("HandleRequest error",ex);
-                        }
-                    }
-                });
+                    LOG.warn("Task:{} has been reject for virtual HandlerPool exhausted! waiting:{}",
+                            event, concurrencyLimit.getQueueLength());
+                    throw new RejectedExecutionException("Biz thread pool of provider has bean exhausted");
+                }
+                //execute保留任务本身,优先级队列才能读到请求的优先级
+                handlerPool.execute(new RequestTask((RequestEvent) event));
                 break;
             case RESPONSE:
                 break;
@@ -136,6 +228,35 @@ public class ServiceHandler extends AbstractService implements IServiceHandler{
         }
     }
 
+    private class RequestTask implements Runnable, PriorityLaneQueue.Prioritized
+    {
+        private final RequestEvent request;
+
+        RequestTask(RequestEvent request) {
+            this.request = request;
+        }
+
+        @Override
+        public byte getPriority() {
+            return request.getTarget().getPriority();
+        }
+
+        @Override
+        public void run() {
+            //虚拟线程上阻塞等待许可的代价很小
+            if (concurrencyLimit != null)
+                concurrencyLimit.acquireUninterruptibly();
+            try {
+                handleRequest(request);
+            } catch (Exception ex) {
+                LOG.error("HandleRequest error",ex);
+            } finally {
+                if (concurrencyLimit != null)
+                    concurrencyLimit.release();
+            }
+        }
+    }
+
     @Override
     protected void serviceInit() throws Exception {
         initHandlerPool();
@@ -1,11 +1,17 @@
 package com.stereo.study.ipc.server.skeleton.service;
 
 import com.stereo.study.ipc.Constants;
+import com.stereo.study.ipc.Packet;
+import com.stereo.study.ipc.codec.EncodedPacket;
 import com.stereo.study.ipc.exc.MethodNotFoundException;
 import com.stereo.study.ipc.exc.NotAllowedException;
+import com.stereo.study.ipc.server.api.ICallback;
 import com.stereo.study.ipc.server.api.IServiceCall;
 import com.stereo.study.ipc.server.api.ISkeletonContext;
 import com.stereo.study.ipc.server.api.IServiceInvoker;
+import com.stereo.study.ipc.util.TinyLfuCache;
+import org.msgpack.MessagePack;
+import org.msgpack.template.Template;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.stereo.study.ipc.util.ConversionUtils;
@@ -14,10 +20,15 @@ import com.stereo.study.ipc.util.InvokeUtils;
 import javax.management.ServiceNotFoundException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Action调用器
@@ -53,11 +64,93 @@ public final class ServiceInvoker implements IServiceInvoker {
 		}
 	}
 
+	/**
+	 * 结果缓存的键,按解析出的Method区分重载,参数按msgpack编码后比较
+	 */
+	private static final class ResultKey {
+		private final String serviceName;
+		private final Method method;
+		private final byte[] args;
+		private final int hash;
+
+		ResultKey(String serviceName, Method method, byte[] args) {
+			this.serviceName = serviceName;
+			this.method = method;
+			this.args = args;
+			this.hash = 31 * (31 * serviceName.hashCode() + method.hashCode())
+					+ Arrays.hashCode(args);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof ResultKey))
+				return false;
+			ResultKey other = (ResultKey) obj;
+			return hash == other.hash && serviceName.equals(other.serviceName)
+					&& method.equals(other.method)
+					&& Arrays.equals(args, other.args);
+		}
+	}
+
+	private static final class CachedResult {
+		private final byte status;
+		private final Object result;
+		// 除id外已编码好的响应,编码失败时为null
+		private final EncodedPacket encoded;
+
+		CachedResult(byte status, Object result, EncodedPacket encoded) {
+			this.status = status;
+			this.result = result;
+			this.encoded = encoded;
+		}
+	}
+
+	/**
+	 * 进行中的single-flight执行,完成前加入的调用共享它的结果
+	 */
+	private static final class Flight {
+		private final List<IServiceCall> followers = new ArrayList<IServiceCall>();
+		private boolean done;
+
+		synchronized boolean join(IServiceCall call) {
+			if (done)
+				return false;
+			followers.add(call);
+			return true;
+		}
+
+		synchronized List<IServiceCall> complete() {
+			done = true;
+			return followers;
+		}
+	}
+
 	private ISkeletonContext servicer;
 	private Set<MethodCache> methodCaches = new CopyOnWriteArraySet<MethodCache>();
+	private final TinyLfuCache<ResultKey, CachedResult> resultCache;
+	private final MessagePack messagePack = new MessagePack();
+	private Template<Packet> packetTemplate;
+	private final ConcurrentMap<ResultKey, Flight> inFlights = new ConcurrentHashMap<ResultKey, Flight>();
+	private final AtomicLong singleFlightCount = new AtomicLong();
+	private final AtomicLong coalescedCount = new AtomicLong();
 
 	public ServiceInvoker(ISkeletonContext servicer) {
+		this(servicer, 0);
+	}
+
+	/**
+	 * @param resultCacheSize @Idempotent方法结果缓存的条目上限,0不缓存
+	 */
+	public ServiceInvoker(ISkeletonContext servicer, int resultCacheSize) {
 		this.servicer = servicer;
+		this.resultCache = resultCacheSize > 0 ? new TinyLfuCache<ResultKey, CachedResult>(resultCacheSize) : null;
 	}
 
 	@Override
@@ -158,52 +251,215 @@ public final class ServiceInvoker implements IServiceInvoker {
 				}
 			}
 
-			Object result = null;
 			Method method = (Method) methodResult[0];
 			Object[] params = (Object[]) methodResult[1];
-			try {
-				LOG.debug("Invoking method: ", method.toString());
-				// if (method.getReturnType() != call.getReturnType()) {
-				// call.setStatus(IServiceCall.STATUS_METHOD_NOT_FOUND);
-				// call.setException(new MethodNotFoundException(methodName
-				// + " not match "));
-				// return false;
-				// }
-				if (method.getReturnType() == Void.class) {
-					method.invoke(service, params);
-					call.setStatus(Constants.STATUS_SUCCESS_VOID);
-				} else {
-					result = method.invoke(service, params);
-					LOG.debug("result: {}", result);
-					call.setStatus(result == null ? Constants.STATUS_SUCCESS_NULL
-							: Constants.STATUS_SUCCESS_RESULT);
+			Idempotent idempotent = resultCache == null ? null : method.getAnnotation(Idempotent.class);
+			ResultKey resultKey = null;
+			if (idempotent != null) {
+				resultKey = resultKey(call.getInterfaceName(), method, args);
+				CachedResult cached = resultKey == null ? null : resultCache.get(resultKey);
+				if (cached != null) {
+					call.setStatus(cached.status);
+					call.setResult(cached.result);
+					attachEncoded(call, cached);
+					return true;
+				}
+			}
+			SingleFlight singleFlight = method.getAnnotation(SingleFlight.class);
+			ResultKey flightKey = singleFlight == null ? null
+					: (resultKey != null ? resultKey : resultKey(call.getInterfaceName(), method, args));
+			if (flightKey != null) {
+				Flight flight = new Flight();
+				Flight inFlight = inFlights.putIfAbsent(flightKey, flight);
+				if (inFlight == null) {
+					singleFlightCount.incrementAndGet();
+					try {
+						return execute(call, service, methodName, method, params, resultKey, idempotent);
+					} finally {
+						inFlights.remove(flightKey, flight);
+						deliver(call, flight.complete());
+					}
+				}
+				// 只有能异步写回的调用才挂到进行中的执行上,否则自己执行
+				if (call.getCallbacks() != null && !call.getCallbacks().isEmpty() && inFlight.join(call)) {
+					coalescedCount.incrementAndGet();
+					call.setStatus(Constants.STATUS_PENDING);
+					return true;
 				}
-				call.setResult(result);
-				methodCaches.add(new MethodCache(methodName, ConversionUtils
-						.convertParams(params), method));
+			}
+			return execute(call, service, methodName, method, params, resultKey, idempotent);
+		}
+	}
 
-			} catch (NotAllowedException e) {
-				call.setException(e);
-				call.setStatus(Constants.STATUS_ACCESS_DENIED);
-				return false;
-			} catch (IllegalAccessException accessEx) {
-				call.setException(accessEx);
-				call.setStatus(Constants.STATUS_ACCESS_DENIED);
-				LOG.error("Error executing call:", call);
-				LOG.error("Service invocation error", accessEx);
-				return false;
-			} catch (InvocationTargetException invocationEx) {
-				call.setException(invocationEx);
-				call.setStatus(Constants.STATUS_INVOCATION_EXCEPTION);
-				return false;
-			} catch (Exception ex) {
-				call.setException(ex);
-				call.setStatus(Constants.STATUS_GENERAL_EXCEPTION);
-				LOG.error("Error executing call: ", call);
-				LOG.error("Service invocation error", ex);
-				return false;
+	private boolean execute(IServiceCall call, Object service, String methodName, Method method,
+							Object[] params, ResultKey resultKey, Idempotent idempotent) {
+		Object result = null;
+		try {
+			LOG.debug("Invoking method: ", method.toString());
+			// if (method.getReturnType() != call.getReturnType()) {
+			// call.setStatus(IServiceCall.STATUS_METHOD_NOT_FOUND);
+			// call.setException(new MethodNotFoundException(methodName
+			// + " not match "));
+			// return false;
+			// }
+			if (method.getReturnType() == Void.class) {
+				method.invoke(service, params);
+				call.setStatus(Constants.STATUS_SUCCESS_VOID);
+			} else {
+				result = method.invoke(service, params);
+				LOG.debug("result: {}", result);
+				call.setStatus(result == null ? Constants.STATUS_SUCCESS_NULL
+						: Constants.STATUS_SUCCESS_RESULT);
 			}
-			return true;
+			call.setResult(result);
+			methodCaches.add(new MethodCache(methodName, ConversionUtils
+					.convertParams(params), method));
+			if (resultKey != null)
+				cacheResult(call, resultKey, idempotent.ttl(), result);
+
+		} catch (NotAllowedException e) {
+			call.setException(e);
+			call.setStatus(Constants.STATUS_ACCESS_DENIED);
+			return false;
+		} catch (IllegalAccessException accessEx) {
+			call.setException(accessEx);
+			call.setStatus(Constants.STATUS_ACCESS_DENIED);
+			LOG.error("Error executing call:", call);
+			LOG.error("Service invocation error", accessEx);
+			return false;
+		} catch (InvocationTargetException invocationEx) {
+			call.setException(invocationEx);
+			call.setStatus(Constants.STATUS_INVOCATION_EXCEPTION);
+			return false;
+		} catch (Exception ex) {
+			call.setException(ex);
+			call.setStatus(Constants.STATUS_GENERAL_EXCEPTION);
+			LOG.error("Error executing call: ", call);
+			LOG.error("Service invocation error", ex);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * 清除缓存的结果
+	 *
+	 * @param serviceName
+	 * @param methodName 为null时清除整个服务
+	 * @return 清除的条目数
+	 */
+	@Override
+	public int invalidate(final String serviceName, final String methodName) {
+		if (resultCache == null)
+			return 0;
+		return resultCache.removeAll(new TinyLfuCache.Matcher<ResultKey>() {
+			@Override
+			public boolean matches(ResultKey key) {
+				return key.serviceName.equals(serviceName)
+						&& (methodName == null || key.method.getName().equals(methodName));
+			}
+		});
+	}
+
+	/**
+	 * 以single-flight方式实际执行的次数
+	 */
+	public long getSingleFlightCount() {
+		return singleFlightCount.get();
+	}
+
+	/**
+	 * 合并到进行中执行上、省掉的执行次数
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	public long getResultCacheHitCount() {
+		return resultCache == null ? 0 : resultCache.getHitCount();
+	}
+
+	public long getResultCacheMissCount() {
+		return resultCache == null ? 0 : resultCache.getMissCount();
+	}
+
+	private Template<Packet> packetTemplate() {
+		if (packetTemplate == null)
+			packetTemplate = messagePack.lookup(Packet.class);
+		return packetTemplate;
+	}
+
+	private ResultKey resultKey(String serviceName, Method method, Object[] args) {
+		try {
+			byte[] encodedArgs = messagePack.write(new Packet(null, null, args), packetTemplate());
+			return new ResultKey(serviceName, method, encodedArgs);
+		} catch (Exception e) {
+			// 参数无法编码时不缓存
+			LOG.debug("Arguments of {} are not cacheable: {}", method.getName(), e.toString());
+			return null;
+		}
+	}
+
+	/**
+	 * 以id为null编码一次响应,复用时只需替换id
+	 */
+	private EncodedPacket encodeResponse(IServiceCall call) {
+		Object resultPacket = call.getResultPacket();
+		if (!(resultPacket instanceof Packet))
+			return null;
+		Packet response = (Packet) resultPacket;
+		String id = response.getId();
+		response.setId(null);
+		try {
+			return EncodedPacket.split(messagePack.write(response, packetTemplate()));
+		} catch (Exception e) {
+			LOG.debug("Response of {} is not encoded in advance: {}", call.getMethodName(), e.toString());
+			return null;
+		} finally {
+			response.setId(id);
 		}
 	}
-}
\ No newline at end of file
+
+	private void cacheResult(IServiceCall call, ResultKey key, long ttl, Object result) {
+		CachedResult cached = new CachedResult(call.getStatus(), result, encodeResponse(call));
+		resultCache.put(key, cached, ttl);
+		attachEncoded(call, cached);
+	}
+
+	/**
+	 * 把执行者的结果交给合并进来的调用,并通过回调写回
+	 */
+	private void deliver(IServiceCall leader, List<IServiceCall> followers) {
+		if (followers.isEmpty())
+			return;
+		EncodedPacket encoded = null;
+		if (leader.isSuccess()) {
+			if (leader instanceof ServiceCall)
+				encoded = ((ServiceCall) leader).getEncodedResponse();
+			if (encoded == null)
+				encoded = encodeResponse(leader);
+		}
+		for (IServiceCall follower : followers) {
+			follower.setStatus(leader.getStatus());
+			if (leader.isSuccess()) {
+				follower.setResult(leader.getResult());
+				if (encoded != null && follower instanceof ServiceCall)
+					((ServiceCall) follower).setEncodedResponse(encoded.withId(follower.getId()));
+			} else if (leader.getException() != null) {
+				follower.setException(leader.getException());
+			}
+			for (ICallback callback : follower.getCallbacks()) {
+				try {
+					callback.resultReceived(follower);
+				} catch (Exception e) {
+					LOG.error("Coalesced call callback error", e);
+				}
+			}
+		}
+	}
+
+	private static void attachEncoded(IServiceCall call, CachedResult cached) {
+		if (cached.encoded != null && call instanceof ServiceCall)
+			((ServiceCall) call).setEncodedResponse(cached.encoded.withId(call.getId()));
+	}
+}
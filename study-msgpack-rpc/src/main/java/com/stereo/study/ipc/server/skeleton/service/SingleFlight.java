@@ -0,0 +1,18 @@
+package com.stereo.study.ipc.server.skeleton.service;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记服务实现上可合并执行的方法
+ * 参数相同的并发请求只执行一次,执行期间到达的请求不占用业务线程等待,完成后共享同一个结果
+ * Created by stereo on 17-3-14.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SingleFlight {
+}
@@ -0,0 +1,327 @@
+package com.stereo.study.ipc.util;
+
+import com.stereo.study.ipc.Constants;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按优先级分通道的线程池队列
+ * 高,普通,低三个FIFO通道,出队时在非空通道间做平滑加权轮询,低优先级不会被饿死
+ * 未实现Prioritized的任务进入普通通道
+ * Created by stereo on 17-3-9.
+ */
+public class PriorityLaneQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    /**
+     * 带优先级的任务
+     */
+    public interface Prioritized {
+        byte getPriority();
+    }
+
+    private static final int LANE_HIGH = 0;
+    private static final int LANE_NORMAL = 1;
+    private static final int LANE_LOW = 2;
+
+    private final ArrayDeque<Runnable>[] lanes;
+    private final int[] weights;
+    private final int[] current;
+    private final int capacity;
+    private int count;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    /**
+     * @param capacity 总容量,小于等于0为无界
+     * @param weights  高,普通,低通道的权重
+     */
+    @SuppressWarnings("unchecked")
+    public PriorityLaneQueue(int capacity, int[] weights) {
+        if (weights == null || weights.length != 3)
+            throw new IllegalArgumentException("weights of high,normal,low lanes are required");
+        this.capacity = capacity <= 0 ? Integer.MAX_VALUE : capacity;
+        this.weights = new int[3];
+        for (int i = 0; i < 3; i++) {
+            if (weights[i] <= 0)
+                throw new IllegalArgumentException("lane weight must be positive: " + weights[i]);
+            this.weights[i] = weights[i];
+        }
+        this.current = new int[3];
+        this.lanes = new ArrayDeque[3];
+        for (int i = 0; i < 3; i++)
+            lanes[i] = new ArrayDeque<Runnable>();
+    }
+
+    /**
+     * 解析"8,4,1"形式的权重
+     */
+    public static int[] parseWeights(String weights) {
+        String[] parts = weights.split(",");
+        if (parts.length != 3)
+            throw new IllegalArgumentException("lane weights should be high,normal,low: " + weights);
+        int[] ret = new int[3];
+        for (int i = 0; i < 3; i++)
+            ret[i] = Integer.parseInt(parts[i].trim());
+        return ret;
+    }
+
+    private static int laneOf(Runnable r) {
+        if (r instanceof Prioritized) {
+            byte priority = ((Prioritized) r).getPriority();
+            if (priority > Constants.PRIORITY_NORMAL)
+                return LANE_HIGH;
+            if (priority < Constants.PRIORITY_NORMAL)
+                return LANE_LOW;
+        }
+        return LANE_NORMAL;
+    }
+
+    //调用方持有锁
+    private void enqueue(Runnable r) {
+        lanes[laneOf(r)].addLast(r);
+        count++;
+        notEmpty.signal();
+    }
+
+    //调用方持有锁且count>0, 平滑加权轮询选出通道
+    private Runnable dequeue() {
+        int total = 0;
+        int selected = -1;
+        for (int i = 0; i < 3; i++) {
+            if (lanes[i].isEmpty())
+                continue;
+            current[i] += weights[i];
+            total += weights[i];
+            if (selected < 0 || current[i] > current[selected])
+                selected = i;
+        }
+        current[selected] -= total;
+        count--;
+        notFull.signal();
+        return lanes[selected].pollFirst();
+    }
+
+    @Override
+    public boolean offer(Runnable r) {
+        if (r == null)
+            throw new NullPointerException();
+        lock.lock();
+        try {
+            if (count >= capacity)
+                return false;
+            enqueue(r);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(Runnable r) throws InterruptedException {
+        if (r == null)
+            throw new NullPointerException();
+        lock.lockInterruptibly();
+        try {
+            while (count >= capacity)
+                notFull.await();
+            enqueue(r);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable r, long timeout, TimeUnit unit) throws InterruptedException {
+        if (r == null)
+            throw new NullPointerException();
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count >= capacity) {
+                if (nanos <= 0)
+                    return false;
+                nanos = notFull.awaitNanos(nanos);
+            }
+            enqueue(r);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == 0)
+                notEmpty.await();
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (nanos <= 0)
+                    return null;
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return count == 0 ? null : dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            for (ArrayDeque<Runnable> lane : lanes)
+                if (!lane.isEmpty())
+                    return lane.peekFirst();
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof Runnable))
+            return false;
+        lock.lock();
+        try {
+            return removeFromLane((Runnable) o);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //调用方持有锁, 按任务的优先级只在所在通道里查找
+    private boolean removeFromLane(Runnable r) {
+        Iterator<Runnable> it = lanes[laneOf(r)].iterator();
+        while (it.hasNext()) {
+            if (it.next() == r) {
+                it.remove();
+                count--;
+                notFull.signal();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return capacity - count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        if (c == null)
+            throw new NullPointerException();
+        if (c == this)
+            throw new IllegalArgumentException();
+        lock.lock();
+        try {
+            int n = 0;
+            while (n < maxElements && count > 0) {
+                c.add(dequeue());
+                n++;
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 快照迭代器,按高,普通,低顺序;remove从任务所在通道中删除,ThreadPoolExecutor.purge依赖它清除已取消的任务
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        lock.lock();
+        try {
+            List<Runnable> snapshot = new ArrayList<Runnable>(count);
+            for (ArrayDeque<Runnable> lane : lanes)
+                snapshot.addAll(lane);
+            final Iterator<Runnable> it = snapshot.iterator();
+            return new Iterator<Runnable>() {
+                private Runnable last;
+
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public Runnable next() {
+                    last = it.next();
+                    return last;
+                }
+
+                @Override
+                public void remove() {
+                    if (last == null)
+                        throw new IllegalStateException();
+                    lock.lock();
+                    try {
+                        //快照之后已出队的任务不再删除
+                        removeFromLane(last);
+                    } finally {
+                        lock.unlock();
+                    }
+                    last = null;
+                }
+            };
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.stereo.study.ipc.util;
 
+import java.lang.reflect.Method;
 import java.util.concurrent.*;
 
 public class ThreadPoolUtils {
@@ -179,6 +180,24 @@ public class ThreadPoolUtils {
                 handler);
     }
 
+    /**
+     * 每个任务一个虚拟线程的线程池,运行时不支持虚拟线程(JDK21以下)时返回null
+     * 源码级别为1.7,只能反射调用Executors.newVirtualThreadPerTaskExecutor
+     *
+     * @return the executor service or null
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (Exception e) {
+            //预览版本等情况下无法创建
+            return null;
+        }
+    }
+
     /**
      * 构建队列
      *
@@ -0,0 +1,222 @@
+package com.stereo.study.ipc.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * W-TinyLFU风格的有界缓存
+ * 新数据先进入1%的LRU窗口,被挤出窗口时与主区(分段LRU: 试用区+保护区)的淘汰候选比较访问频率,
+ * 频率更高者留下,频率由带老化的Count-Min Sketch估算.
+ * 每个条目可以有独立的过期时间.一把锁保护全部结构,适合读多写少、值计算代价高的场景
+ * Created by stereo on 17-3-13.
+ */
+public class TinyLfuCache<K, V> {
+
+    /**
+     * 按条件批量失效
+     */
+    public interface Matcher<K> {
+        boolean matches(K key);
+    }
+
+    private static final class Node<V> {
+        final V value;
+        final long expireAt;
+
+        Node(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private final int windowMax;
+    private final int mainMax;
+    private final int protectedMax;
+    private final LinkedHashMap<Object, Node<V>> window = new LinkedHashMap<Object, Node<V>>(16, 0.75f, true);
+    private final LinkedHashMap<Object, Node<V>> probation = new LinkedHashMap<Object, Node<V>>(16, 0.75f, true);
+    private final LinkedHashMap<Object, Node<V>> protect = new LinkedHashMap<Object, Node<V>>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private final Clock clock = new MonotonicClock();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public TinyLfuCache(int maximumSize) {
+        if (maximumSize <= 0)
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        windowMax = Math.max(1, maximumSize / 100);
+        mainMax = Math.max(1, maximumSize - windowMax);
+        protectedMax = Math.max(1, mainMax * 4 / 5);
+        sketch = new FrequencySketch(maximumSize);
+    }
+
+    public synchronized V get(K key) {
+        sketch.increment(key);
+        Node<V> node = window.get(key);
+        if (node == null) {
+            node = probation.remove(key);
+            if (node != null) {
+                //试用区再次命中,晋升到保护区
+                protect.put(key, node);
+                if (protect.size() > protectedMax) {
+                    Map.Entry<Object, Node<V>> eldest = eldest(protect);
+                    protect.remove(eldest.getKey());
+                    probation.put(eldest.getKey(), eldest.getValue());
+                }
+            } else {
+                node = protect.get(key);
+            }
+        }
+        if (node != null && node.expireAt > 0 && clock.getTime() >= node.expireAt) {
+            remove(key);
+            node = null;
+        }
+        if (node == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return node.value;
+    }
+
+    /**
+     * @param ttl 毫秒,小于等于0不过期
+     */
+    public synchronized void put(K key, V value, long ttl) {
+        sketch.increment(key);
+        Node<V> node = new Node<V>(value, ttl > 0 ? clock.getTime() + ttl : 0);
+        if (window.containsKey(key)) {
+            window.put(key, node);
+            return;
+        }
+        if (probation.containsKey(key)) {
+            probation.put(key, node);
+            return;
+        }
+        if (protect.containsKey(key)) {
+            protect.put(key, node);
+            return;
+        }
+        window.put(key, node);
+        if (window.size() > windowMax) {
+            Map.Entry<Object, Node<V>> candidate = eldest(window);
+            window.remove(candidate.getKey());
+            admit(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    private void admit(Object key, Node<V> node) {
+        if (probation.size() + protect.size() < mainMax) {
+            probation.put(key, node);
+            return;
+        }
+        LinkedHashMap<Object, Node<V>> victims = probation.isEmpty() ? protect : probation;
+        Map.Entry<Object, Node<V>> victim = eldest(victims);
+        //频率更高才替换主区的淘汰候选,否则丢弃新条目
+        if (sketch.frequency(key) > sketch.frequency(victim.getKey())) {
+            victims.remove(victim.getKey());
+            probation.put(key, node);
+        }
+    }
+
+    public synchronized boolean remove(K key) {
+        return removeKey(key);
+    }
+
+    private boolean removeKey(Object key) {
+        return window.remove(key) != null
+                || probation.remove(key) != null
+                || protect.remove(key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized int removeAll(Matcher<K> matcher) {
+        int removed = 0;
+        for (LinkedHashMap<Object, Node<V>> segment : new LinkedHashMap[]{window, probation, protect}) {
+            Iterator<Object> it = segment.keySet().iterator();
+            while (it.hasNext()) {
+                if (matcher.matches((K) it.next())) {
+                    it.remove();
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    public synchronized void clear() {
+        window.clear();
+        probation.clear();
+        protect.clear();
+    }
+
+    public synchronized int size() {
+        return window.size() + probation.size() + protect.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    private static <T> Map.Entry<Object, T> eldest(LinkedHashMap<Object, T> map) {
+        return map.entrySet().iterator().next();
+    }
+
+    /**
+     * 4-bit计数的Count-Min Sketch,累计次数达到10倍容量时全部减半,让旧的热点逐渐冷却
+     */
+    static final class FrequencySketch {
+        private static final int[] SEEDS = {0x97cb3127, 0xb0f1c5a1, 0x6a09e667, 0xbb67ae85};
+        private static final int MAX_COUNT = 15;
+
+        private final int[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int maximumSize) {
+            int size = Integer.highestOneBit(Math.max(16, maximumSize) - 1) << 1;
+            table = new int[size];
+            mask = size - 1;
+            sampleSize = 10 * Math.max(16, maximumSize);
+        }
+
+        private int index(Object key, int i) {
+            int h = key.hashCode() * SEEDS[i];
+            h ^= h >>> 16;
+            return h & mask;
+        }
+
+        void increment(Object key) {
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int idx = index(key, i);
+                if (table[idx] < MAX_COUNT) {
+                    table[idx]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize)
+                reset();
+        }
+
+        int frequency(Object key) {
+            int min = MAX_COUNT;
+            for (int i = 0; i < SEEDS.length; i++)
+                min = Math.min(min, table[index(key, i)]);
+            return min;
+        }
+
+        private void reset() {
+            for (int i = 0; i < table.length; i++)
+                table[i] >>>= 1;
+            additions /= 2;
+        }
+    }
+}
@@ -18,6 +18,11 @@
 package org.msgpack;
 
 import org.msgpack.packer.*;
+import org.msgpack.template.DoubleArrayTemplate;
+import org.msgpack.template.FloatArrayTemplate;
+import org.msgpack.template.IntegerArrayTemplate;
+import org.msgpack.template.LongArrayTemplate;
+import org.msgpack.template.ShortArrayTemplate;
 import org.msgpack.template.Template;
 import org.msgpack.template.TemplateRegistry;
 import org.msgpack.type.Value;
@@ -28,6 +33,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Type;
 import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * <p>
@@ -43,8 +49,21 @@ import java.nio.ByteBuffer;
  * 
  */
 public class MessagePack {
+    /**
+     * Default number of bytes a reused buffer packer keeps between writes.
+     */
+    public static final int DEFAULT_RETAINED_BUFFER_CAPACITY = 64 * 1024;
+
     private TemplateRegistry registry;
 
+    private volatile boolean reuseBufferPacker = false;
+
+    private volatile int retainedBufferCapacity = DEFAULT_RETAINED_BUFFER_CAPACITY;
+
+    private volatile boolean typedArrayExtension = false;
+
+    private final ThreadLocal<MessagePackBufferPacker> localBufferPacker = new ThreadLocal<MessagePackBufferPacker>();
+
     /**
      * 
      * @since 0.6.0
@@ -75,6 +94,62 @@ public class MessagePack {
         registry.setClassLoader(cl);
     }
 
+    /**
+     * Enables or disables reusing one buffer packer per thread for
+     * {@link #write(Object)} and friends instead of allocating a new packer
+     * and buffer chain on every call.
+     * 
+     * @param reuse
+     */
+    public void setReuseBufferPacker(boolean reuse) {
+        this.reuseBufferPacker = reuse;
+        if (!reuse) {
+            localBufferPacker.remove();
+        }
+    }
+
+    public boolean isReuseBufferPacker() {
+        return reuseBufferPacker;
+    }
+
+    /**
+     * Sets how many bytes of chunks a reused buffer packer may keep after a
+     * write. Larger messages still work, the surplus chunks are just dropped.
+     * 
+     * @param capacity
+     */
+    public void setRetainedBufferCapacity(int capacity) {
+        this.retainedBufferCapacity = capacity;
+    }
+
+    public int getRetainedBufferCapacity() {
+        return retainedBufferCapacity;
+    }
+
+    /**
+     * Enables or disables the typed block encoding for <tt>short[]</tt>,
+     * <tt>int[]</tt>, <tt>long[]</tt>, <tt>float[]</tt> and <tt>double[]</tt>.
+     * When enabled these arrays are written as a single raw value (one tag
+     * byte followed by big-endian elements) and copied in bulk, instead of
+     * one msgpack value per element. Readers accept both encodings either
+     * way, but peers that do not use these templates only see raw bytes, so
+     * enable it on both sides only.
+     *
+     * @param typed
+     */
+    public void setTypedArrayExtension(boolean typed) {
+        registry.register(short[].class, typed ? ShortArrayTemplate.getTypedInstance() : ShortArrayTemplate.getInstance());
+        registry.register(int[].class, typed ? IntegerArrayTemplate.getTypedInstance() : IntegerArrayTemplate.getInstance());
+        registry.register(long[].class, typed ? LongArrayTemplate.getTypedInstance() : LongArrayTemplate.getInstance());
+        registry.register(float[].class, typed ? FloatArrayTemplate.getTypedInstance() : FloatArrayTemplate.getInstance());
+        registry.register(double[].class, typed ? DoubleArrayTemplate.getTypedInstance() : DoubleArrayTemplate.getInstance());
+        this.typedArrayExtension = typed;
+    }
+
+    public boolean isTypedArrayExtension() {
+        return typedArrayExtension;
+    }
+
     /**
      * Returns serializer that enables serializing objects into
      * {@link OutputStream} object.
@@ -180,7 +255,58 @@ public class MessagePack {
      * @throws IOException
      */
     public <T> byte[] write(T v) throws IOException {
-        BufferPacker pk = createBufferPacker();
+        MessagePackBufferPacker pk = borrowBufferPacker();
+        try {
+            writeTo(pk, v);
+            return pk.toByteArray();
+        } finally {
+            returnBufferPacker(pk);
+        }
+    }
+
+    /**
+     * Serializes specified object and returns the internal chunks of the
+     * buffer without flattening them into one array. When buffer packer
+     * reuse is enabled the returned buffers are only valid until the next
+     * write on the calling thread.
+     * 
+     * @param v
+     *            serialized object
+     * @return output chunks
+     * @throws IOException
+     */
+    public <T> ByteBuffer[] writeToByteBuffers(T v) throws IOException {
+        MessagePackBufferPacker pk = borrowBufferPacker();
+        try {
+            writeTo(pk, v);
+            return pk.toByteBuffers();
+        } finally {
+            returnBufferPacker(pk);
+        }
+    }
+
+    /**
+     * Serializes specified object to the channel with a gathering write of
+     * the internal chunks.
+     * 
+     * @param channel
+     *            output channel
+     * @param v
+     *            serialized object
+     * @return number of bytes written
+     * @throws IOException
+     */
+    public <T> long write(WritableByteChannel channel, T v) throws IOException {
+        MessagePackBufferPacker pk = borrowBufferPacker();
+        try {
+            writeTo(pk, v);
+            return pk.writeTo(channel);
+        } finally {
+            returnBufferPacker(pk);
+        }
+    }
+
+    private <T> void writeTo(Packer pk, T v) throws IOException {
         if (v == null) {
             pk.writeNil();
         } else {
@@ -188,7 +314,26 @@ public class MessagePack {
             Template<T> tmpl = registry.lookup(v.getClass());
             tmpl.write(pk, v);
         }
-        return pk.toByteArray();
+    }
+
+    private MessagePackBufferPacker borrowBufferPacker() {
+        if (!reuseBufferPacker) {
+            return new MessagePackBufferPacker(this);
+        }
+        MessagePackBufferPacker pk = localBufferPacker.get();
+        if (pk == null) {
+            return new MessagePackBufferPacker(this);
+        }
+        // taken out while in use so that a nested write gets its own packer
+        localBufferPacker.set(null);
+        return pk;
+    }
+
+    private void returnBufferPacker(MessagePackBufferPacker pk) {
+        if (reuseBufferPacker) {
+            pk.clear(retainedBufferCapacity);
+            localBufferPacker.set(pk);
+        }
     }
 
     /**
@@ -202,9 +347,13 @@ public class MessagePack {
      * @throws IOException
      */
     public <T> byte[] write(T v, Template<T> template) throws IOException {
-        BufferPacker pk = createBufferPacker();
-        template.write(pk, v);
-        return pk.toByteArray();
+        MessagePackBufferPacker pk = borrowBufferPacker();
+        try {
+            template.write(pk, v);
+            return pk.toByteArray();
+        } finally {
+            returnBufferPacker(pk);
+        }
     }
 
     /**
@@ -34,10 +34,14 @@ abstract class BufferedOutput implements Output {
     }
 
     private void allocateNewBuffer() {
-        buffer = new byte[bufferSize];
+        buffer = newBuffer();
         castByteBuffer = ByteBuffer.wrap(buffer);
     }
 
+    protected byte[] newBuffer() {
+        return new byte[bufferSize];
+    }
+
     private void reserve(int len) throws IOException {
         if (buffer == null) {
             allocateNewBuffer();
@@ -45,8 +49,7 @@ abstract class BufferedOutput implements Output {
         }
         if (bufferSize - filled < len) {
             if (!flushBuffer(buffer, 0, filled)) {
-                buffer = new byte[bufferSize];
-                castByteBuffer = ByteBuffer.wrap(buffer);
+                allocateNewBuffer();
             }
             filled = 0;
         }
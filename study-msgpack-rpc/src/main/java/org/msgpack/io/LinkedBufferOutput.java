@@ -17,6 +17,11 @@
 //
 package org.msgpack.io;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
 import java.util.LinkedList;
 
 public final class LinkedBufferOutput extends BufferedOutput {
@@ -24,20 +29,24 @@ public final class LinkedBufferOutput extends BufferedOutput {
         final byte[] buffer;
         final int offset;
         final int size;
+        final boolean owned;
 
-        Link(byte[] buffer, int offset, int size) {
+        Link(byte[] buffer, int offset, int size, boolean owned) {
             this.buffer = buffer;
             this.offset = offset;
             this.size = size;
+            this.owned = owned;
         }
     }
 
     private LinkedList<Link> link;
+    private ArrayDeque<byte[]> spare;
     private int size;
 
     public LinkedBufferOutput(int bufferSize) {
         super(bufferSize);
         link = new LinkedList<Link>();
+        spare = new ArrayDeque<byte[]>();
     }
 
     public byte[] toByteArray() {
@@ -53,23 +62,89 @@ public final class LinkedBufferOutput extends BufferedOutput {
         return bytes;
     }
 
+    /**
+     * Returns the written bytes as a sequence of buffers that share the
+     * internal chunks, so nothing is copied. The buffers are only valid
+     * until the next {@link #clear()} or {@link #clear(int)}.
+     */
+    public ByteBuffer[] toByteBuffers() {
+        ByteBuffer[] buffers = new ByteBuffer[link.size() + (filled > 0 ? 1 : 0)];
+        int i = 0;
+        for (Link l : link) {
+            buffers[i++] = ByteBuffer.wrap(l.buffer, l.offset, l.size);
+        }
+        if (filled > 0) {
+            buffers[i] = ByteBuffer.wrap(buffer, 0, filled);
+        }
+        return buffers;
+    }
+
+    /**
+     * Writes the internal chunks to the channel, using a gathering write
+     * when the channel supports it.
+     */
+    public long writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer[] buffers = toByteBuffers();
+        long written = 0;
+        if (channel instanceof GatheringByteChannel) {
+            GatheringByteChannel gathering = (GatheringByteChannel) channel;
+            long total = getSize();
+            int first = 0;
+            while (written < total) {
+                written += gathering.write(buffers, first, buffers.length - first);
+                while (first < buffers.length && !buffers[first].hasRemaining()) {
+                    first++;
+                }
+            }
+        } else {
+            for (ByteBuffer b : buffers) {
+                while (b.hasRemaining()) {
+                    written += channel.write(b);
+                }
+            }
+        }
+        return written;
+    }
+
     public int getSize() {
         return size + filled;
     }
 
     @Override
     protected boolean flushBuffer(byte[] b, int off, int len) {
-        link.add(new Link(b, off, len));
+        link.add(new Link(b, off, len, b == buffer));
         size += len;
         return false;
     }
 
+    @Override
+    protected byte[] newBuffer() {
+        byte[] b = spare.pollFirst();
+        return b != null ? b : super.newBuffer();
+    }
+
     public void clear() {
         link.clear();
         size = 0;
         filled = 0;
     }
 
+    /**
+     * Clears the output and keeps the chunks it allocated for reuse, up to
+     * retainedCapacity bytes. Chunks beyond the cap, and arrays that were
+     * linked from the caller, are dropped.
+     */
+    public void clear(int retainedCapacity) {
+        int retained = spare.size() * bufferSize;
+        for (Link l : link) {
+            if (l.owned && retained + bufferSize <= retainedCapacity) {
+                spare.addLast(l.buffer);
+                retained += bufferSize;
+            }
+        }
+        clear();
+    }
+
     @Override
     public void close() {
     }
@@ -20,6 +20,10 @@ package org.msgpack.packer;
 import org.msgpack.MessagePack;
 import org.msgpack.io.LinkedBufferOutput;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
 public class MessagePackBufferPacker extends MessagePackPacker implements BufferPacker {
     private static final int DEFAULT_BUFFER_SIZE = 512;
 
@@ -39,8 +43,21 @@ public class MessagePackBufferPacker extends MessagePackPacker implements Buffer
         return ((LinkedBufferOutput) out).toByteArray();
     }
 
+    public ByteBuffer[] toByteBuffers() {
+        return ((LinkedBufferOutput) out).toByteBuffers();
+    }
+
+    public long writeTo(WritableByteChannel channel) throws IOException {
+        return ((LinkedBufferOutput) out).writeTo(channel);
+    }
+
     public void clear() {
         reset();
         ((LinkedBufferOutput) out).clear();
     }
+
+    public void clear(int retainedCapacity) {
+        reset();
+        ((LinkedBufferOutput) out).clear(retainedCapacity);
+    }
 }
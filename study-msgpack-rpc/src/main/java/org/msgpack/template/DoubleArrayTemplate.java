@@ -22,9 +22,14 @@ import org.msgpack.packer.Packer;
 import org.msgpack.unpacker.Unpacker;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class DoubleArrayTemplate extends AbstractTemplate<double[]> {
-    private DoubleArrayTemplate() {
+    // 是否按整块raw写出, 读取时两种格式都接受
+    private final boolean typed;
+
+    private DoubleArrayTemplate(boolean typed) {
+        this.typed = typed;
     }
 
     public void write(Packer pk, double[] target, boolean required)
@@ -36,6 +41,12 @@ public class DoubleArrayTemplate extends AbstractTemplate<double[]> {
             pk.writeNil();
             return;
         }
+        if (typed) {
+            ByteBuffer bb = PrimitiveArrayBlock.allocate(PrimitiveArrayBlock.DOUBLE, target.length, 8);
+            bb.asDoubleBuffer().put(target);
+            PrimitiveArrayBlock.write(pk, bb);
+            return;
+        }
         pk.writeArrayBegin(target.length);
         for (double a : target) {
             pk.write(a);
@@ -48,6 +59,13 @@ public class DoubleArrayTemplate extends AbstractTemplate<double[]> {
         if (!required && u.trySkipNil()) {
             return null;
         }
+        if (PrimitiveArrayBlock.next(u)) {
+            ByteBuffer bb = PrimitiveArrayBlock.open(u, PrimitiveArrayBlock.DOUBLE, 8);
+            int n = bb.remaining() / 8;
+            double[] array = (to != null && to.length == n) ? to : new double[n];
+            bb.asDoubleBuffer().get(array);
+            return array;
+        }
         int n = u.readArrayBegin();
         if (to == null || to.length != n) {
             to = new double[n];
@@ -63,5 +81,14 @@ public class DoubleArrayTemplate extends AbstractTemplate<double[]> {
         return instance;
     }
 
-    static final DoubleArrayTemplate instance = new DoubleArrayTemplate();
+    /**
+     * 整块编码的实例, 需要两端都能识别, 见MessagePack#setTypedArrayExtension
+     */
+    static public DoubleArrayTemplate getTypedInstance() {
+        return typedInstance;
+    }
+
+    static final DoubleArrayTemplate instance = new DoubleArrayTemplate(false);
+
+    static final DoubleArrayTemplate typedInstance = new DoubleArrayTemplate(true);
 }
@@ -22,9 +22,14 @@ import org.msgpack.packer.Packer;
 import org.msgpack.unpacker.Unpacker;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class FloatArrayTemplate extends AbstractTemplate<float[]> {
-    private FloatArrayTemplate() {
+    // 是否按整块raw写出, 读取时两种格式都接受
+    private final boolean typed;
+
+    private FloatArrayTemplate(boolean typed) {
+        this.typed = typed;
     }
 
     public void write(Packer pk, float[] target, boolean required)
@@ -36,6 +41,12 @@ public class FloatArrayTemplate extends AbstractTemplate<float[]> {
             pk.writeNil();
             return;
         }
+        if (typed) {
+            ByteBuffer bb = PrimitiveArrayBlock.allocate(PrimitiveArrayBlock.FLOAT, target.length, 4);
+            bb.asFloatBuffer().put(target);
+            PrimitiveArrayBlock.write(pk, bb);
+            return;
+        }
         pk.writeArrayBegin(target.length);
         for (float a : target) {
             pk.write(a);
@@ -48,6 +59,13 @@ public class FloatArrayTemplate extends AbstractTemplate<float[]> {
         if (!required && u.trySkipNil()) {
             return null;
         }
+        if (PrimitiveArrayBlock.next(u)) {
+            ByteBuffer bb = PrimitiveArrayBlock.open(u, PrimitiveArrayBlock.FLOAT, 4);
+            int n = bb.remaining() / 4;
+            float[] array = (to != null && to.length == n) ? to : new float[n];
+            bb.asFloatBuffer().get(array);
+            return array;
+        }
         int n = u.readArrayBegin();
         if (to == null || to.length != n) {
             to = new float[n];
@@ -63,5 +81,14 @@ public class FloatArrayTemplate extends AbstractTemplate<float[]> {
         return instance;
     }
 
-    static final FloatArrayTemplate instance = new FloatArrayTemplate();
+    /**
+     * 整块编码的实例, 需要两端都能识别, 见MessagePack#setTypedArrayExtension
+     */
+    static public FloatArrayTemplate getTypedInstance() {
+        return typedInstance;
+    }
+
+    static final FloatArrayTemplate instance = new FloatArrayTemplate(false);
+
+    static final FloatArrayTemplate typedInstance = new FloatArrayTemplate(true);
 }
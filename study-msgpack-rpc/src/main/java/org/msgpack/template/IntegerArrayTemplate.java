@@ -22,9 +22,14 @@ import org.msgpack.packer.Packer;
 import org.msgpack.unpacker.Unpacker;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class IntegerArrayTemplate extends AbstractTemplate<int[]> {
-    private IntegerArrayTemplate() {
+    // 是否按整块raw写出, 读取时两种格式都接受
+    private final boolean typed;
+
+    private IntegerArrayTemplate(boolean typed) {
+        this.typed = typed;
     }
 
     public void write(Packer pk, int[] target, boolean required)
@@ -36,6 +41,12 @@ public class IntegerArrayTemplate extends AbstractTemplate<int[]> {
             pk.writeNil();
             return;
         }
+        if (typed) {
+            ByteBuffer bb = PrimitiveArrayBlock.allocate(PrimitiveArrayBlock.INT, target.length, 4);
+            bb.asIntBuffer().put(target);
+            PrimitiveArrayBlock.write(pk, bb);
+            return;
+        }
         pk.writeArrayBegin(target.length);
         for (int a : target) {
             pk.write(a);
@@ -48,6 +59,13 @@ public class IntegerArrayTemplate extends AbstractTemplate<int[]> {
         if (!required && u.trySkipNil()) {
             return null;
         }
+        if (PrimitiveArrayBlock.next(u)) {
+            ByteBuffer bb = PrimitiveArrayBlock.open(u, PrimitiveArrayBlock.INT, 4);
+            int n = bb.remaining() / 4;
+            int[] array = (to != null && to.length == n) ? to : new int[n];
+            bb.asIntBuffer().get(array);
+            return array;
+        }
         int n = u.readArrayBegin();
         int[] array;
         if (to != null && to.length == n) {
@@ -66,5 +84,14 @@ public class IntegerArrayTemplate extends AbstractTemplate<int[]> {
         return instance;
     }
 
-    static final IntegerArrayTemplate instance = new IntegerArrayTemplate();
+    /**
+     * 整块编码的实例, 需要两端都能识别, 见MessagePack#setTypedArrayExtension
+     */
+    static public IntegerArrayTemplate getTypedInstance() {
+        return typedInstance;
+    }
+
+    static final IntegerArrayTemplate instance = new IntegerArrayTemplate(false);
+
+    static final IntegerArrayTemplate typedInstance = new IntegerArrayTemplate(true);
 }
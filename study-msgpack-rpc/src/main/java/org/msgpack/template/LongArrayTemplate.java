@@ -22,9 +22,14 @@ import org.msgpack.packer.Packer;
 import org.msgpack.unpacker.Unpacker;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class LongArrayTemplate extends AbstractTemplate<long[]> {
-    private LongArrayTemplate() {
+    // 是否按整块raw写出, 读取时两种格式都接受
+    private final boolean typed;
+
+    private LongArrayTemplate(boolean typed) {
+        this.typed = typed;
     }
 
     public void write(Packer pk, long[] target, boolean required)
@@ -36,6 +41,12 @@ public class LongArrayTemplate extends AbstractTemplate<long[]> {
             pk.writeNil();
             return;
         }
+        if (typed) {
+            ByteBuffer bb = PrimitiveArrayBlock.allocate(PrimitiveArrayBlock.LONG, target.length, 8);
+            bb.asLongBuffer().put(target);
+            PrimitiveArrayBlock.write(pk, bb);
+            return;
+        }
         pk.writeArrayBegin(target.length);
         for (long a : target) {
             pk.write(a);
@@ -48,6 +59,13 @@ public class LongArrayTemplate extends AbstractTemplate<long[]> {
         if (!required && u.trySkipNil()) {
             return null;
         }
+        if (PrimitiveArrayBlock.next(u)) {
+            ByteBuffer bb = PrimitiveArrayBlock.open(u, PrimitiveArrayBlock.LONG, 8);
+            int n = bb.remaining() / 8;
+            long[] array = (to != null && to.length == n) ? to : new long[n];
+            bb.asLongBuffer().get(array);
+            return array;
+        }
         int n = u.readArrayBegin();
         if (to == null || to.length != n) {
             to = new long[n];
@@ -63,5 +81,14 @@ public class LongArrayTemplate extends AbstractTemplate<long[]> {
         return instance;
     }
 
-    static final LongArrayTemplate instance = new LongArrayTemplate();
+    /**
+     * 整块编码的实例, 需要两端都能识别, 见MessagePack#setTypedArrayExtension
+     */
+    static public LongArrayTemplate getTypedInstance() {
+        return typedInstance;
+    }
+
+    static final LongArrayTemplate instance = new LongArrayTemplate(false);
+
+    static final LongArrayTemplate typedInstance = new LongArrayTemplate(true);
 }
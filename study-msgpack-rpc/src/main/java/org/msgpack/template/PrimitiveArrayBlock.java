@@ -0,0 +1,68 @@
+package org.msgpack.template;
+
+import org.msgpack.MessageTypeException;
+import org.msgpack.packer.Packer;
+import org.msgpack.type.ValueType;
+import org.msgpack.unpacker.Unpacker;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 基本类型数组的整块编码
+ * 格式为一个raw: [1字节类型标记][按大端序连续排列的元素]
+ * 写出和读入都走ByteBuffer视图批量拷贝,不再逐个元素编解码
+ */
+final class PrimitiveArrayBlock {
+
+    static final byte SHORT = 'S';
+    static final byte INT = 'I';
+    static final byte LONG = 'J';
+    static final byte FLOAT = 'F';
+    static final byte DOUBLE = 'D';
+
+    private PrimitiveArrayBlock() {
+    }
+
+    /**
+     * 分配块缓冲并写入类型标记,position停在元素起始处
+     */
+    static ByteBuffer allocate(byte tag, int length, int width) {
+        long size = 1L + (long) length * width;
+        if (size > Integer.MAX_VALUE) {
+            throw new MessageTypeException("Primitive array is too large: " + length);
+        }
+        ByteBuffer bb = ByteBuffer.allocate((int) size);
+        bb.put(tag);
+        return bb;
+    }
+
+    /**
+     * 元素写入视图后调用,把整块作为raw写出
+     */
+    static void write(Packer pk, ByteBuffer bb) throws IOException {
+        bb.rewind();
+        pk.write(bb);
+    }
+
+    /**
+     * 下一个值是否为整块编码,否则按标准msgpack数组读取
+     */
+    static boolean next(Unpacker u) throws IOException {
+        return u.getNextType() == ValueType.RAW;
+    }
+
+    /**
+     * 读入整块并校验类型标记和长度,返回的缓冲position停在元素起始处
+     */
+    static ByteBuffer open(Unpacker u, byte tag, int width) throws IOException {
+        ByteBuffer bb = u.readByteBuffer();
+        if (!bb.hasRemaining() || bb.get() != tag) {
+            throw new MessageTypeException("Unexpected primitive array block, expected tag " + (char) tag);
+        }
+        if (bb.remaining() % width != 0) {
+            throw new MessageTypeException("Broken primitive array block, " + bb.remaining() + " bytes for width " + width);
+        }
+        return bb.slice();
+    }
+}
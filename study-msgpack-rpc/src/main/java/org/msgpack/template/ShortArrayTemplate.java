@@ -22,9 +22,14 @@ import org.msgpack.packer.Packer;
 import org.msgpack.unpacker.Unpacker;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class ShortArrayTemplate extends AbstractTemplate<short[]> {
-    private ShortArrayTemplate() {
+    // 是否按整块raw写出, 读取时两种格式都接受
+    private final boolean typed;
+
+    private ShortArrayTemplate(boolean typed) {
+        this.typed = typed;
     }
 
     public void write(Packer pk, short[] target, boolean required)
@@ -36,6 +41,12 @@ public class ShortArrayTemplate extends AbstractTemplate<short[]> {
             pk.writeNil();
             return;
         }
+        if (typed) {
+            ByteBuffer bb = PrimitiveArrayBlock.allocate(PrimitiveArrayBlock.SHORT, target.length, 2);
+            bb.asShortBuffer().put(target);
+            PrimitiveArrayBlock.write(pk, bb);
+            return;
+        }
         pk.writeArrayBegin(target.length);
         for (short a : target) {
             pk.write(a);
@@ -48,6 +59,13 @@ public class ShortArrayTemplate extends AbstractTemplate<short[]> {
         if (!required && u.trySkipNil()) {
             return null;
         }
+        if (PrimitiveArrayBlock.next(u)) {
+            ByteBuffer bb = PrimitiveArrayBlock.open(u, PrimitiveArrayBlock.SHORT, 2);
+            int n = bb.remaining() / 2;
+            short[] array = (to != null && to.length == n) ? to : new short[n];
+            bb.asShortBuffer().get(array);
+            return array;
+        }
         int n = u.readArrayBegin();
         if (to == null || to.length != n) {
             to = new short[n];
@@ -63,5 +81,14 @@ public class ShortArrayTemplate extends AbstractTemplate<short[]> {
         return instance;
     }
 
-    static final ShortArrayTemplate instance = new ShortArrayTemplate();
+    /**
+     * 整块编码的实例, 需要两端都能识别, 见MessagePack#setTypedArrayExtension
+     */
+    static public ShortArrayTemplate getTypedInstance() {
+        return typedInstance;
+    }
+
+    static final ShortArrayTemplate instance = new ShortArrayTemplate(false);
+
+    static final ShortArrayTemplate typedInstance = new ShortArrayTemplate(true);
 }
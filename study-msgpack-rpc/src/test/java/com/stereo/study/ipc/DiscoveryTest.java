@@ -0,0 +1,56 @@
+package com.stereo.study.ipc;
+
+import com.stereo.study.ipc.discovery.ServerDirectory;
+import com.stereo.study.ipc.discovery.ServerInstance;
+import com.stereo.study.ipc.server.IpcServer;
+import org.apache.curator.test.TestingServer;
+
+/**
+ * 用Curator进程内的TestingServer验证服务登记、发现和按延迟加权选择
+ * Created by stereo on 17-3-15.
+ */
+public class DiscoveryTest {
+
+    //@Test
+    public static void main(String[] params) throws Exception {
+        TestingServer zkServer = new TestingServer();
+        try {
+            //两个服务端实例登记到同一路径
+            IpcServer server1 = startServer(zkServer.getConnectString(), 10095);
+            IpcServer server2 = startServer(zkServer.getConnectString(), 10096);
+            Config config = new Config();
+            config.setRegistryAddress(zkServer.getConnectString());
+            //同JVM直调会掩盖两个实例的延迟差异
+            config.setLocalShortCircuit(false);
+            ServerDirectory directory = new ServerDirectory(config);
+            directory.init();
+            directory.start();
+            System.out.println("instances=" + directory.getInstances());
+            ITestService testService = directory.create(ITestService.class);
+            for (int i = 0; i < 10000; i++)
+                testService.test3();
+            for (ServerInstance instance : directory.getInstances())
+                System.out.println(instance);
+            //摘除一个实例后调用只落到剩下的实例上
+            server1.stop();
+            Thread.sleep(1000);
+            System.out.println("instances=" + directory.getInstances());
+            for (int i = 0; i < 1000; i++)
+                testService.test3();
+            directory.stop();
+            server2.stop();
+        } finally {
+            zkServer.close();
+        }
+    }
+
+    private static IpcServer startServer(String registryAddress, int port) throws Exception {
+        Config config = new Config("127.0.0.1", port);
+        config.setRegistryAddress(registryAddress);
+        IpcServer ipcServer = new IpcServer(config);
+        ipcServer.init();
+        ipcServer.start();
+        ipcServer.getIpcRegistry().registerService(new TestService(ITestService.class));
+        return ipcServer;
+    }
+}
@@ -0,0 +1,149 @@
+package com.stereo.study.rpc.benchmark;
+
+import com.stereo.study.rpc.io.Input;
+import com.stereo.study.rpc.io.Output;
+import com.stereo.study.util.SerializeHelper;
+import org.msgpack.MessagePack;
+import org.msgpack.template.Template;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 三种序列化的对比基准: study-rpc Output/Input、msgpack模板、study-common SerializeHelper(fastjson)
+ * 同一组负载分别测编码和解码吞吐,编码后的字节数在setup时计算一次并打印到输出(# encoded size行);
+ * 每次操作的分配量看gc profiler的gc.alloc.rate.norm.
+ * msgpack和json不带类型信息,polymorphic负载解码得到的是Value/JSONObject等通用结构
+ *
+ * mvn -Pjmh verify -Djmh.args="CodecBenchmark -prof gc"
+ *
+ * @author stereo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CodecBenchmark {
+
+	@Param({ "rpc", "msgpack", "json" })
+	public String codec;
+
+	@Param({ Payloads.BEAN, Payloads.GRAPH, Payloads.PRIMITIVES, Payloads.STRINGS, Payloads.POLYMORPHIC })
+	public String payload;
+
+	private Codec _codec;
+	private Object _value;
+	private byte[] _bytes;
+
+	@Setup
+	public void setup() throws IOException {
+		if ("rpc".equals(codec))
+			_codec = new RpcCodec();
+		else if ("msgpack".equals(codec))
+			_codec = new MsgpackCodec(Payloads.msgpackTemplate(payload), Payloads.type(payload));
+		else if ("json".equals(codec))
+			_codec = new JsonCodec(Payloads.type(payload));
+		else
+			throw new IllegalArgumentException("unknown codec " + codec);
+		_value = Payloads.create(payload);
+		_bytes = _codec.encode(_value);
+		System.out.println("# encoded size: codec=" + codec + ", payload=" + payload + ", bytes=" + _bytes.length);
+	}
+
+	@Benchmark
+	public byte[] encode() throws IOException {
+		return _codec.encode(_value);
+	}
+
+	@Benchmark
+	public Object decode() throws IOException {
+		return _codec.decode(_bytes);
+	}
+
+	abstract static class Codec {
+		abstract byte[] encode(Object value) throws IOException;
+
+		abstract Object decode(byte[] bytes) throws IOException;
+	}
+
+	static final class RpcCodec extends Codec {
+		private final ByteArrayOutputStream _bos = new ByteArrayOutputStream(64 * 1024);
+		private final Output _out = new Output();
+
+		@Override
+		byte[] encode(Object value) throws IOException {
+			_bos.reset();
+			_out.init(_bos);
+			_out.writeObject(value);
+			_out.flush();
+			return _bos.toByteArray();
+		}
+
+		@Override
+		Object decode(byte[] bytes) throws IOException {
+			Input in = new Input(new ByteArrayInputStream(bytes));
+			return in.readObject();
+		}
+	}
+
+	static final class MsgpackCodec extends Codec {
+		private final MessagePack _msgpack = new MessagePack();
+		private final Template<Object> _template;
+		private final Class<?> _type;
+
+		@SuppressWarnings("unchecked")
+		MsgpackCodec(Template<?> template, Class<?> type) {
+			// 先注册被引用的类型
+			_msgpack.register(Payloads.User.class);
+			_msgpack.register(Payloads.Address.class);
+			_msgpack.register(Payloads.Customer.class);
+			_msgpack.register(Payloads.Product.class);
+			_msgpack.register(Payloads.OrderLine.class);
+			_msgpack.register(Payloads.Order.class);
+			_msgpack.register(Payloads.Samples.class);
+			_template = (Template<Object>) template;
+			_type = type;
+		}
+
+		@Override
+		byte[] encode(Object value) throws IOException {
+			return _template != null ? _msgpack.write(value, _template) : _msgpack.write(value);
+		}
+
+		@Override
+		Object decode(byte[] bytes) throws IOException {
+			if (_template != null)
+				return _msgpack.read(bytes, _template);
+			else if (_type == Object[].class)
+				return _msgpack.read(bytes);
+			return _msgpack.read(bytes, _type);
+		}
+	}
+
+	static final class JsonCodec extends Codec {
+		private final Class<?> _type;
+
+		JsonCodec(Class<?> type) {
+			_type = type;
+		}
+
+		@Override
+		byte[] encode(Object value) throws IOException {
+			return SerializeHelper.serialize(value);
+		}
+
+		@Override
+		Object decode(byte[] bytes) throws IOException {
+			return SerializeHelper.deserialize(bytes, _type);
+		}
+	}
+}
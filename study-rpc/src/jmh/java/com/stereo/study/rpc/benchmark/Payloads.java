@@ -0,0 +1,255 @@
+package com.stereo.study.rpc.benchmark;
+
+import org.msgpack.template.Template;
+import org.msgpack.template.Templates;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 跨格式基准共用的负载
+ * bean字段为public并带无参构造,三种编码都可以直接处理;取值固定,各次运行结果可比
+ *
+ * @author stereo
+ */
+final class Payloads {
+
+	static final String BEAN = "bean";
+	static final String GRAPH = "graph";
+	static final String PRIMITIVES = "primitives";
+	static final String STRINGS = "strings";
+	static final String POLYMORPHIC = "polymorphic";
+
+	private static final long EPOCH = 1476806400000L;
+
+	private Payloads() {
+	}
+
+	/**
+	 * 负载对象
+	 */
+	static Object create(String name) {
+		if (BEAN.equals(name))
+			return User.create(1);
+		else if (GRAPH.equals(name))
+			return Order.create();
+		else if (PRIMITIVES.equals(name))
+			return Samples.create(10000);
+		else if (STRINGS.equals(name))
+			return strings(500);
+		else if (POLYMORPHIC.equals(name))
+			return polymorphic(100);
+		throw new IllegalArgumentException("unknown payload " + name);
+	}
+
+	/**
+	 * 解码的目标类型
+	 */
+	static Class<?> type(String name) {
+		if (BEAN.equals(name))
+			return User.class;
+		else if (GRAPH.equals(name))
+			return Order.class;
+		else if (PRIMITIVES.equals(name))
+			return Samples.class;
+		else if (STRINGS.equals(name))
+			return HashMap.class;
+		else if (POLYMORPHIC.equals(name))
+			return Object[].class;
+		throw new IllegalArgumentException("unknown payload " + name);
+	}
+
+	/**
+	 * msgpack模板,bean按类注册;返回null表示没有静态类型,按运行时类型写出、解码为Value
+	 */
+	static Template<?> msgpackTemplate(String name) {
+		if (STRINGS.equals(name))
+			return Templates.tMap(Templates.TString, Templates.TString);
+		return null;
+	}
+
+	static Map<String, String> strings(int size) {
+		Map<String, String> map = new HashMap<String, String>(size * 2);
+		for (int i = 0; i < size; i++)
+			map.put("attribute.key." + i, "北京市海淀区中关村大街" + i + " / value-" + (i * 31));
+		return map;
+	}
+
+	static Object[] polymorphic(int size) {
+		Object[] values = new Object[size];
+		for (int i = 0; i < size; i++) {
+			switch (i % 8) {
+			case 0:
+				values[i] = i;
+				break;
+			case 1:
+				values[i] = EPOCH + i;
+				break;
+			case 2:
+				values[i] = i * 1.25;
+				break;
+			case 3:
+				values[i] = "value-" + i;
+				break;
+			case 4:
+				values[i] = (i & 1) == 0;
+				break;
+			case 5:
+				values[i] = new Date(EPOCH + i);
+				break;
+			case 6:
+				values[i] = User.create(i);
+				break;
+			default:
+				values[i] = new ArrayList<String>(Arrays.asList("a" + i, "b" + i, "c" + i));
+				break;
+			}
+		}
+		return values;
+	}
+
+	public static class User implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		public long id;
+		public String name;
+		public String email;
+		public int age;
+		public boolean active;
+		public double balance;
+		public Date created;
+
+		public User() {
+		}
+
+		static User create(int i) {
+			User user = new User();
+			user.id = 10000L + i;
+			user.name = "user-" + i;
+			user.email = "user-" + i + "@example.com";
+			user.age = 20 + i % 50;
+			user.active = i % 3 != 0;
+			user.balance = 1024.5 * i;
+			user.created = new Date(EPOCH + i * 1000L);
+			return user;
+		}
+	}
+
+	public static class Address implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		public String city;
+		public String street;
+		public String zip;
+
+		public Address() {
+		}
+	}
+
+	public static class Customer implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		public long id;
+		public String name;
+		public Address address;
+
+		public Customer() {
+		}
+	}
+
+	public static class Product implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		public long sku;
+		public String title;
+		public List<String> tags;
+
+		public Product() {
+		}
+	}
+
+	public static class OrderLine implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		public int quantity;
+		public double price;
+		public Product product;
+
+		public OrderLine() {
+		}
+	}
+
+	/**
+	 * 订单 -> 客户 -> 地址, 订单 -> 明细 -> 商品 -> 标签, 四层对象图
+	 */
+	public static class Order implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		public long id;
+		public int status;
+		public Date created;
+		public Customer customer;
+		public List<OrderLine> lines;
+
+		public Order() {
+		}
+
+		static Order create() {
+			Order order = new Order();
+			order.id = 20161019000123L;
+			order.status = 3;
+			order.created = new Date(EPOCH);
+			order.customer = new Customer();
+			order.customer.id = 42;
+			order.customer.name = "stereo";
+			order.customer.address = new Address();
+			order.customer.address.city = "Beijing";
+			order.customer.address.street = "Haidian Zhongguancun Street No.1";
+			order.customer.address.zip = "100080";
+			order.lines = new ArrayList<OrderLine>();
+			for (int i = 0; i < 50; i++) {
+				OrderLine line = new OrderLine();
+				line.quantity = i + 1;
+				line.price = 99.9 * (i + 1);
+				line.product = new Product();
+				line.product.sku = 100000L + i;
+				line.product.title = "product-" + i;
+				line.product.tags = new ArrayList<String>(Arrays.asList("tag-" + (i % 5), "tag-" + (i % 7)));
+				order.lines.add(line);
+			}
+			return order;
+		}
+	}
+
+	/**
+	 * 大块基本类型数组
+	 */
+	public static class Samples implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		public int[] ids;
+		public long[] timestamps;
+		public double[] values;
+
+		public Samples() {
+		}
+
+		static Samples create(int size) {
+			Samples samples = new Samples();
+			samples.ids = new int[size];
+			samples.timestamps = new long[size];
+			samples.values = new double[size];
+			for (int i = 0; i < size; i++) {
+				samples.ids[i] = i * 7;
+				samples.timestamps[i] = EPOCH + i * 1000L;
+				samples.values[i] = Math.sin(i) * 1000;
+			}
+			return samples;
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package com.stereo.study.rpc.benchmark;
+
+import com.stereo.study.rpc.io.Input;
+import com.stereo.study.rpc.io.LongList;
+import com.stereo.study.rpc.io.Output;
+import com.stereo.study.rpc.io.factory.SerializerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 大数值列表: 普通列表逐个元素编解码与基本类型定长块对比
+ *
+ * mvn -Pjmh verify -Djmh.args="PrimitiveBlockBenchmark -prof gc"
+ *
+ * @author stereo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PrimitiveBlockBenchmark {
+
+	@Param({ "false", "true" })
+	public boolean block;
+
+	@Param({ "10000", "1000000" })
+	public int size;
+
+	private SerializerFactory _factory;
+	private LongList _values;
+	private byte[] _bytes;
+	private ByteArrayOutputStream _bos;
+
+	@Setup
+	public void setup() throws IOException {
+		_factory = new SerializerFactory();
+		_factory.setPrimitiveBlock(block);
+
+		Random random = new Random(1);
+		_values = new LongList(size);
+		for (int i = 0; i < size; i++)
+			_values.addLong(random.nextLong());
+
+		_bos = new ByteArrayOutputStream(size * 9 + 64);
+		_bytes = write();
+	}
+
+	@Benchmark
+	public byte[] encode() throws IOException {
+		return write();
+	}
+
+	@Benchmark
+	public Object decode() throws IOException {
+		Input in = new Input(new ByteArrayInputStream(_bytes));
+		in.setSerializerFactory(_factory);
+		return in.readObject(List.class);
+	}
+
+	private byte[] write() throws IOException {
+		_bos.reset();
+		Output out = new Output(_bos);
+		out.setSerializerFactory(_factory);
+		out.writeObject(_values);
+		out.flush();
+		return _bos.toByteArray();
+	}
+}
@@ -0,0 +1,135 @@
+package com.stereo.study.rpc.benchmark;
+
+import com.stereo.study.rpc.io.Input;
+import com.stereo.study.rpc.io.Output;
+import com.stereo.study.rpc.io.factory.SerializerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * bean序列化基准: 反射(JavaSerializer)、Unsafe、字节码生成三种方式对比
+ *
+ * mvn -Pjmh verify -Djmh.args="SerializerBenchmark -prof gc"
+ *
+ * @author stereo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SerializerBenchmark {
+
+	@Param({ "java", "unsafe", "generated" })
+	public String mode;
+
+	private SerializerFactory _factory;
+	private Order _order;
+	private byte[] _bytes;
+	private ByteArrayOutputStream _bos;
+
+	@Setup
+	public void setup() throws IOException {
+		_factory = new SerializerFactory();
+		if ("unsafe".equals(mode))
+			_factory.setEnableUnsafeSerializer(true);
+		else if ("generated".equals(mode))
+			_factory.setEnableGeneratedSerializer(true);
+		else
+			_factory.setEnableUnsafeSerializer(false);
+
+		_order = Order.create();
+		_bos = new ByteArrayOutputStream(1024);
+		_bytes = write();
+	}
+
+	@Benchmark
+	public byte[] serialize() throws IOException {
+		return write();
+	}
+
+	@Benchmark
+	public Object deserialize() throws IOException {
+		Input in = new Input(new ByteArrayInputStream(_bytes));
+		in.setSerializerFactory(_factory);
+		return in.readObject();
+	}
+
+	private byte[] write() throws IOException {
+		_bos.reset();
+		Output out = new Output(_bos);
+		out.setSerializerFactory(_factory);
+		out.writeObject(_order);
+		out.flush();
+		return _bos.toByteArray();
+	}
+
+	public static class Item implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private long sku;
+		private int quantity;
+		private double price;
+		private String title;
+
+		public Item() {
+		}
+
+		Item(long sku, int quantity, double price, String title) {
+			this.sku = sku;
+			this.quantity = quantity;
+			this.price = price;
+			this.title = title;
+		}
+	}
+
+	public static class Order implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private long id;
+		private int status;
+		private boolean paid;
+		private short channel;
+		private double amount;
+		private float discount;
+		private String customer;
+		private String address;
+		private Integer coupon;
+		private Date created;
+		private List<Item> items;
+
+		public Order() {
+		}
+
+		static Order create() {
+			Order order = new Order();
+			order.id = 20161019000123L;
+			order.status = 3;
+			order.paid = true;
+			order.channel = 2;
+			order.amount = 1288.5;
+			order.discount = 0.85f;
+			order.customer = "stereo";
+			order.address = "Beijing Haidian Zhongguancun Street No.1";
+			order.coupon = 10;
+			order.created = new Date(1476806400000L);
+			order.items = new ArrayList<Item>();
+			for (int i = 0; i < 4; i++)
+				order.items.add(new Item(100000L + i, i + 1, 99.9 * (i + 1), "item-" + i));
+			return order;
+		}
+	}
+}
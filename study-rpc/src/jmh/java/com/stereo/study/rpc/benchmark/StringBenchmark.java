@@ -0,0 +1,68 @@
+package com.stereo.study.rpc.benchmark;
+
+import com.stereo.study.rpc.io.Input;
+import com.stereo.study.rpc.io.Output;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 字符串为主的负载解码基准: ASCII、中文和混合内容,短串和超过缓冲区的长串
+ *
+ * mvn -Pjmh verify -Djmh.args="StringBenchmark -prof gc"
+ *
+ * @author stereo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StringBenchmark {
+
+	@Param({ "ascii", "cjk", "mixed", "long" })
+	public String content;
+
+	private byte[] _bytes;
+
+	@Setup
+	public void setup() throws IOException {
+		List<String> strings = new ArrayList<String>();
+		for (int i = 0; i < 200; i++) {
+			if ("ascii".equals(content))
+				strings.add("user-" + i + "@example.com/orders/segment-" + (i * 31));
+			else if ("cjk".equals(content))
+				strings.add("用户名称" + i + "北京市海淀区中关村大街");
+			else if ("mixed".equals(content))
+				strings.add("order-" + i + " 收货人:张三 phone:1380000" + i);
+			else {
+				StringBuilder sb = new StringBuilder();
+				while (sb.length() < 4000)
+					sb.append("long text payload ").append(i).append(' ');
+				strings.add(sb.toString());
+			}
+		}
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		Output out = new Output(bos);
+		out.writeObject(strings);
+		out.flush();
+		_bytes = bos.toByteArray();
+	}
+
+	@Benchmark
+	public Object decode() throws IOException {
+		Input in = new Input(new ByteArrayInputStream(_bytes));
+		return in.readObject();
+	}
+}
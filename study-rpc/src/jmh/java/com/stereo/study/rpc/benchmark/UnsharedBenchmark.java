@@ -0,0 +1,85 @@
+package com.stereo.study.rpc.benchmark;
+
+import com.stereo.study.rpc.io.Output;
+import com.stereo.study.rpc.io.factory.SerializerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 大列表序列化: 跟踪引用与不跟踪引用(unshared)对比
+ *
+ * mvn -Pjmh verify -Djmh.args="UnsharedBenchmark -prof gc"
+ *
+ * @author stereo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class UnsharedBenchmark {
+
+	@Param({ "false", "true" })
+	public boolean unshared;
+
+	@Param({ "1000", "10000" })
+	public int size;
+
+	private List<Item> _items;
+	private Output _out;
+	private ByteArrayOutputStream _bos;
+
+	@Setup
+	public void setup() {
+		SerializerFactory factory = new SerializerFactory();
+		factory.setUnshared(unshared);
+
+		_items = new ArrayList<Item>(size);
+		for (int i = 0; i < size; i++)
+			_items.add(new Item(i, "item-" + i, i * 1.5, new Date(1476806400000L + i)));
+
+		_bos = new ByteArrayOutputStream(size * 64);
+		_out = new Output();
+		_out.setSerializerFactory(factory);
+	}
+
+	@Benchmark
+	public int serialize() throws IOException {
+		_bos.reset();
+		_out.init(_bos);
+		_out.writeObject(_items);
+		_out.flush();
+		return _bos.size();
+	}
+
+	public static class Item implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private long id;
+		private String name;
+		private double price;
+		private Date created;
+
+		public Item() {
+		}
+
+		Item(long id, String name, double price, Date created) {
+			this.id = id;
+			this.name = name;
+			this.price = price;
+			this.created = created;
+		}
+	}
+}
@@ -8,6 +8,14 @@ public interface IUpload {
 
 	static final String FILE_UPLOAD_AVAILABLE_METHOD = "allowUpload";
 
+	static final String FILE_UPLOAD_OFFSET_METHOD = "uploadOffset";
+
+	static final String FILE_UPLOAD_RESUME_METHOD = "handleResumableUpload";
+
+	static final String FILE_UPLOAD_PART_METHOD = "handlePartUpload";
+
+	static final String FILE_UPLOAD_COMMIT_METHOD = "commitUpload";
+
 	static final String FILE_UPLOAD_COMPLETED = "rpc-upload-completed";
 
 	static final String FILE_UPLOAD_FAILED = "rpc-upload-failed";
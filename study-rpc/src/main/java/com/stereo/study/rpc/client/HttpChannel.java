@@ -0,0 +1,122 @@
+package com.stereo.study.rpc.client;
+
+import com.stereo.study.rpc.exc.ConnectionException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 连接池中的一条HTTP/1.1长连接
+ * 请求在写锁内按顺序写出并领取序号,响应按同样的顺序读取,
+ * 开启管线化时同一条连接上可以有多个请求在等待响应
+ *
+ * @author stereo
+ */
+final class HttpChannel {
+
+	private static final int BUFFER_SIZE = 8 * 1024;
+
+	final String key;
+	final Socket socket;
+	final InputStream in;
+	final OutputStream out;
+
+	private final ReentrantLock writeLock = new ReentrantLock();
+
+	// 下一个写出的请求序号
+	private long writeSeq;
+	// 正在读取响应的请求序号
+	private long readSeq;
+
+	// 已租出未归还的请求数,由连接池加锁维护
+	int pending;
+	long lastUsed;
+	private volatile boolean broken;
+
+	HttpChannel(String key, Socket socket) throws IOException {
+		this.key = key;
+		this.socket = socket;
+		this.in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+		this.out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+	}
+
+	/**
+	 * 独占写出一个请求,返回该请求的响应序号
+	 */
+	long beginWrite() throws IOException {
+		writeLock.lock();
+		if (broken) {
+			writeLock.unlock();
+			throw new ConnectionException("connection " + key + " is broken");
+		}
+		synchronized (this) {
+			return writeSeq++;
+		}
+	}
+
+	void endWrite() {
+		if (writeLock.isHeldByCurrentThread())
+			writeLock.unlock();
+	}
+
+	/**
+	 * 等待轮到读取ticket的响应
+	 */
+	synchronized void awaitReadTurn(long ticket) throws IOException {
+		while (readSeq != ticket && !broken) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				fail();
+				throw new ConnectionException("interrupted while waiting for response on " + key, e);
+			}
+		}
+		if (broken)
+			throw new ConnectionException("connection " + key + " is broken");
+	}
+
+	/**
+	 * 前面的响应都已读完
+	 */
+	synchronized boolean isReadTurn(long ticket) {
+		return readSeq == ticket;
+	}
+
+	synchronized void endRead() {
+		readSeq++;
+		notifyAll();
+	}
+
+	/**
+	 * 请求或响应不完整,连接不能再用,在同一连接上等待的请求全部失败
+	 */
+	void fail() {
+		synchronized (this) {
+			broken = true;
+			notifyAll();
+		}
+		close();
+	}
+
+	boolean isBroken() {
+		return broken || socket.isClosed();
+	}
+
+	void close() {
+		try {
+			socket.close();
+		} catch (IOException ignored) {
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "HttpChannel[" + key + ", " + socket.getLocalPort() + "]";
+	}
+}
@@ -0,0 +1,489 @@
+package com.stereo.study.rpc.client;
+
+import com.stereo.study.rpc.exc.ConnectionException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 长连接上的一次请求/响应
+ * close()在响应读完后把连接还给连接池,destroy()直接关闭连接
+ *
+ * @author stereo
+ */
+public class PooledConnection extends AbstractConnection {
+
+	private static final Logger log = Logger.getLogger(PooledConnection.class
+			.getName());
+
+	private static final Charset ASCII = Charset.forName("ISO-8859-1");
+
+	// 归还连接时最多丢弃的未读响应字节
+	private static final int MAX_DRAIN = 64 * 1024;
+
+	private final PooledConnectionFactory _factory;
+	private final URL _url;
+	private HttpChannel _channel;
+	private final int _chunklen;
+
+	private final Map<String, String> _requestHeaders = new LinkedHashMap<String, String>();
+	private final Map<String, String> _responseHeaders = new HashMap<String, String>();
+
+	private OutputStream _requestBody;
+	private long _ticket = -1;
+	private boolean _isWriting;
+	private boolean _isReading;
+	private boolean _isReleased;
+	private boolean _isKeepAlive;
+	// 已读到响应的第一个字节
+	private boolean _isResponseStarted;
+	private boolean _isRetried;
+	// 连接上已完成过请求,且写出时前面没有等待响应的请求
+	private boolean _isReused;
+
+	private int _statusCode;
+	private String _statusMessage;
+	private BodyInputStream _inputStream;
+
+	PooledConnection(PooledConnectionFactory factory, URL url, HttpChannel channel, int chunklen) {
+		_factory = factory;
+		_url = url;
+		_channel = channel;
+		_chunklen = chunklen;
+	}
+
+	@Override
+	public void addHeader(String key, String value) {
+		_requestHeaders.put(key, value);
+	}
+
+	public OutputStream getOutputStream() throws IOException {
+		if (_requestBody == null) {
+			if (_chunklen > 0) {
+				// 分块发送,边写边发
+				beginWrite();
+				writeHead(-1);
+				_requestBody = new ChunkedOutputStream(_channel.out, _chunklen);
+			} else
+				// 长度未知,先缓存请求体
+				_requestBody = new ByteArrayOutputStream();
+		}
+		return _requestBody;
+	}
+
+	public void sendRequest() throws IOException {
+		try {
+			writeRequest();
+		} catch (IOException e) {
+			if (!isRetryable())
+				throw e;
+			// 复用的空闲连接已被服务端关闭(keep-alive超时或重启),换一条新连接重发一次
+			if (log.isLoggable(Level.FINE))
+				log.fine(_channel + " closed before response, retry on a fresh connection: " + e);
+			_isRetried = true;
+			_channel = _factory.lease(_url, true);
+			_ticket = -1;
+			_isReused = false;
+			_isReleased = false;
+			_isReading = false;
+			_isKeepAlive = false;
+			writeRequest();
+		}
+
+		if (_statusCode != 200) {
+			StringBuilder sb = new StringBuilder();
+			InputStream is = getInputStream();
+			int ch;
+			while ((ch = is.read()) >= 0)
+				sb.append((char) ch);
+			_statusMessage = sb.toString();
+			throw new ConnectionException(_statusCode + ": " + sb);
+		}
+	}
+
+	/**
+	 * 只在复用的连接上、还没读到任何响应字节、请求体可以重发时重试,且只重试一次.
+	 * 分块发送的请求体已经写到旧连接上,无法重发
+	 */
+	private boolean isRetryable() {
+		return !_isRetried && _isReused && !_isResponseStarted
+				&& (_requestBody == null || _requestBody instanceof ByteArrayOutputStream);
+	}
+
+	private void writeRequest() throws IOException {
+		try {
+			if (_requestBody == null) {
+				beginWrite();
+				writeHead(0);
+			} else if (_requestBody instanceof ByteArrayOutputStream) {
+				ByteArrayOutputStream body = (ByteArrayOutputStream) _requestBody;
+				beginWrite();
+				writeHead(body.size());
+				body.writeTo(_channel.out);
+			} else
+				((ChunkedOutputStream) _requestBody).finish();
+			_channel.out.flush();
+			_channel.endWrite();
+			_isWriting = false;
+
+			_channel.awaitReadTurn(_ticket);
+			_isReading = true;
+			readResponseHead();
+		} catch (IOException e) {
+			destroy();
+			throw e;
+		}
+	}
+
+	private void beginWrite() throws IOException {
+		_ticket = _channel.beginWrite();
+		_isWriting = true;
+		_isReused = _ticket > 0 && _channel.isReadTurn(_ticket);
+	}
+
+	private void writeHead(long contentLength) throws IOException {
+		StringBuilder sb = new StringBuilder(256);
+		String file = _url.getFile();
+		sb.append("POST ").append(file.length() == 0 ? "/" : file).append(" HTTP/1.1\r\n");
+		sb.append("Host: ").append(_url.getHost());
+		if (_url.getPort() > 0)
+			sb.append(':').append(_url.getPort());
+		sb.append("\r\n");
+		for (Map.Entry<String, String> header : _requestHeaders.entrySet())
+			sb.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+		if (contentLength < 0)
+			sb.append("Transfer-Encoding: chunked\r\n");
+		else
+			sb.append("Content-Length: ").append(contentLength).append("\r\n");
+		sb.append("\r\n");
+		_channel.out.write(sb.toString().getBytes(ASCII));
+	}
+
+	private void readResponseHead() throws IOException {
+		String statusLine;
+		// 跳过100-continue等临时响应
+		do {
+			statusLine = readLine();
+			_responseHeaders.clear();
+			String line;
+			while ((line = readLine()).length() > 0) {
+				int idx = line.indexOf(':');
+				if (idx > 0)
+					_responseHeaders.put(line.substring(0, idx).trim().toLowerCase(),
+							line.substring(idx + 1).trim());
+			}
+			String[] parts = statusLine.split(" ", 3);
+			if (parts.length < 2 || !parts[0].startsWith("HTTP/"))
+				throw new ConnectionException("illegal status line from " + _url + ": " + statusLine);
+			try {
+				_statusCode = Integer.parseInt(parts[1]);
+			} catch (NumberFormatException e) {
+				throw new ConnectionException("illegal status line from " + _url + ": " + statusLine, e);
+			}
+			_statusMessage = parts.length > 2 ? parts[2] : null;
+		} while (_statusCode >= 100 && _statusCode < 200);
+
+		String connection = _responseHeaders.get("connection");
+		if (statusLine.startsWith("HTTP/1.0"))
+			_isKeepAlive = "keep-alive".equalsIgnoreCase(connection);
+		else
+			_isKeepAlive = !"close".equalsIgnoreCase(connection);
+
+		String length = _responseHeaders.get("content-length");
+		if ("chunked".equalsIgnoreCase(_responseHeaders.get("transfer-encoding")))
+			_inputStream = new ChunkedInputStream(_channel.in);
+		else if (length != null)
+			_inputStream = new FixedLengthInputStream(_channel.in, Long.parseLong(length));
+		else {
+			// 读到连接关闭为止,不能复用
+			_isKeepAlive = false;
+			_inputStream = new FixedLengthInputStream(_channel.in, Long.MAX_VALUE);
+		}
+	}
+
+	private String readLine() throws IOException {
+		StringBuilder sb = new StringBuilder(64);
+		int ch;
+		while ((ch = _channel.in.read()) != '\n') {
+			if (ch < 0)
+				throw new EOFException("connection " + _channel + " closed by peer");
+			_isResponseStarted = true;
+			if (ch != '\r')
+				sb.append((char) ch);
+		}
+		return sb.toString();
+	}
+
+	public int getStatusCode() {
+		return _statusCode;
+	}
+
+	public String getStatusMessage() {
+		return _statusMessage;
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		if (_inputStream == null)
+			throw new IOException("request has not been sent");
+		return _inputStream;
+	}
+
+	@Override
+	public String getContentEncoding() {
+		return _responseHeaders.get("content-encoding");
+	}
+
+	/**
+	 * 读完剩余响应后把连接还给连接池
+	 */
+	@Override
+	public void close() throws IOException {
+		if (_isReleased)
+			return;
+		// 没有发出请求的连接原样归还
+		boolean reusable = _ticket < 0;
+		if (_isReading && _isKeepAlive) {
+			try {
+				reusable = _inputStream.drain(MAX_DRAIN);
+			} catch (IOException e) {
+				reusable = false;
+			}
+		}
+		release(reusable);
+	}
+
+	/**
+	 * 关闭底层连接
+	 */
+	@Override
+	public void destroy() {
+		if (!_isReleased)
+			release(false);
+	}
+
+	private void release(boolean reusable) {
+		_isReleased = true;
+		if (_isWriting) {
+			_channel.endWrite();
+			_isWriting = false;
+			reusable = false;
+		} else if (_ticket >= 0 && !_isReading) {
+			// 请求已发出但没有读响应,后续响应无法对齐
+			reusable = false;
+		}
+		if (!reusable)
+			_channel.fail();
+		else if (_isReading)
+			_channel.endRead();
+		_factory.release(_channel, reusable);
+	}
+
+	private abstract static class BodyInputStream extends InputStream {
+
+		/**
+		 * 丢弃未读的响应,读到结尾返回true
+		 */
+		boolean drain(int limit) throws IOException {
+			byte[] buf = new byte[4096];
+			int total = 0;
+			int n;
+			while (total <= limit && (n = read(buf, 0, buf.length)) >= 0)
+				total += n;
+			return total <= limit;
+		}
+
+		@Override
+		public void close() throws IOException {
+			// 响应流关闭不影响长连接,由PooledConnection.close()决定是否复用
+		}
+	}
+
+	private static final class FixedLengthInputStream extends BodyInputStream {
+		private final InputStream _in;
+		private long _remaining;
+
+		FixedLengthInputStream(InputStream in, long length) {
+			_in = in;
+			_remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (_remaining <= 0)
+				return -1;
+			int ch = _in.read();
+			if (ch >= 0)
+				_remaining--;
+			else if (_remaining != Long.MAX_VALUE)
+				throw new EOFException("unexpected end of response");
+			return ch;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (_remaining <= 0)
+				return -1;
+			int n = _in.read(b, off, (int) Math.min(len, _remaining));
+			if (n > 0)
+				_remaining -= n;
+			else if (n < 0 && _remaining != Long.MAX_VALUE)
+				throw new EOFException("unexpected end of response");
+			return n;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(_in.available(), _remaining);
+		}
+	}
+
+	private static final class ChunkedInputStream extends BodyInputStream {
+		private final InputStream _in;
+		private int _chunkRemaining;
+		private boolean _isEof;
+
+		ChunkedInputStream(InputStream in) {
+			_in = in;
+		}
+
+		private boolean nextChunk() throws IOException {
+			if (_isEof)
+				return false;
+			if (_chunkRemaining == 0) {
+				String line = readLine();
+				// 上一块数据之后的CRLF
+				if (line.length() == 0)
+					line = readLine();
+				int ext = line.indexOf(';');
+				if (ext >= 0)
+					line = line.substring(0, ext);
+				_chunkRemaining = Integer.parseInt(line.trim(), 16);
+				if (_chunkRemaining == 0) {
+					// 跳过trailer
+					while (readLine().length() > 0) {
+					}
+					_isEof = true;
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private String readLine() throws IOException {
+			StringBuilder sb = new StringBuilder(16);
+			int ch;
+			while ((ch = _in.read()) != '\n') {
+				if (ch < 0)
+					throw new EOFException("unexpected end of chunked response");
+				if (ch != '\r')
+					sb.append((char) ch);
+			}
+			return sb.toString();
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!nextChunk())
+				return -1;
+			int ch = _in.read();
+			if (ch < 0)
+				throw new EOFException("unexpected end of chunked response");
+			_chunkRemaining--;
+			return ch;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			if (!nextChunk())
+				return -1;
+			int n = _in.read(b, off, Math.min(len, _chunkRemaining));
+			if (n < 0)
+				throw new EOFException("unexpected end of chunked response");
+			_chunkRemaining -= n;
+			return n;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return _isEof ? 0 : Math.min(_in.available(), _chunkRemaining);
+		}
+	}
+
+	private static final class ChunkedOutputStream extends OutputStream {
+		private static final byte[] CRLF = {'\r', '\n'};
+
+		private final OutputStream _out;
+		private final byte[] _buffer;
+		private int _count;
+		private boolean _isFinished;
+
+		ChunkedOutputStream(OutputStream out, int chunklen) {
+			_out = out;
+			_buffer = new byte[chunklen];
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (_count == _buffer.length)
+				writeChunk();
+			_buffer[_count++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (_count == _buffer.length)
+					writeChunk();
+				int n = Math.min(len, _buffer.length - _count);
+				System.arraycopy(b, off, _buffer, _count, n);
+				_count += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		private void writeChunk() throws IOException {
+			if (_count == 0)
+				return;
+			_out.write(Integer.toHexString(_count).getBytes(ASCII));
+			_out.write(CRLF);
+			_out.write(_buffer, 0, _count);
+			_out.write(CRLF);
+			_count = 0;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			writeChunk();
+			_out.flush();
+		}
+
+		void finish() throws IOException {
+			if (_isFinished)
+				return;
+			_isFinished = true;
+			writeChunk();
+			_out.write('0');
+			_out.write(CRLF);
+			_out.write(CRLF);
+		}
+
+		@Override
+		public void close() throws IOException {
+			// 请求体在sendRequest()时结束,关闭不影响长连接
+		}
+	}
+}
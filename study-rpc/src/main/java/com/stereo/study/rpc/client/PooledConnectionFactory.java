@@ -0,0 +1,389 @@
+package com.stereo.study.rpc.client;
+
+import com.stereo.study.rpc.api.IConnection;
+import com.stereo.study.rpc.api.IConnectionFactory;
+import com.stereo.study.rpc.api.IProxyFactory;
+import com.stereo.study.rpc.exc.ConnectionException;
+
+import javax.net.SocketFactory;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 长连接池连接工厂
+ * 按host:port维护HTTP/1.1长连接,请求完成且响应读完后连接回到池中复用,
+ * 空闲超时的连接由后台线程关闭.开启管线化时池满后新请求排在已有连接的未完成请求之后发出.
+ * 通过RpcProxyFactory.setConnectionPooling(true)或setConnectionFactory使用
+ *
+ * @author stereo
+ */
+public class PooledConnectionFactory extends AbstractConnectionFactory implements
+		IConnectionFactory {
+
+	private static final Logger log = Logger.getLogger(PooledConnectionFactory.class
+			.getName());
+
+	public static final int DEFAULT_MAX_PER_HOST = 8;
+
+	// 低于常见容器的keep-alive超时(tomcat 20s, jetty 30s),避免复用服务端已关闭的连接
+	public static final long DEFAULT_IDLE_TIMEOUT = 15000;
+
+	public static final int DEFAULT_PIPELINE_DEPTH = 4;
+
+	private RpcProxyFactory _proxyFactory;
+
+	private final ConcurrentMap<String, HostPool> _pools = new ConcurrentHashMap<String, HostPool>();
+
+	private int _maxPerHost = DEFAULT_MAX_PER_HOST;
+	private long _idleTimeout = DEFAULT_IDLE_TIMEOUT;
+	private boolean _isPipelining = false;
+	private int _pipelineDepth = DEFAULT_PIPELINE_DEPTH;
+
+	private volatile ScheduledExecutorService _evictor;
+
+	@Override
+	public void setRPCProxyFactory(IProxyFactory factory) {
+		super.setRPCProxyFactory(factory);
+		this._proxyFactory = (RpcProxyFactory) factory;
+	}
+
+	public IConnection open(URL url) throws IOException {
+		if (log.isLoggable(Level.FINER))
+			log.finer(this + " open(" + url + ")");
+		return new PooledConnection(this, url, lease(url, false), _proxyFactory.getChunklen());
+	}
+
+	/**
+	 * 取一条连接并设置读超时,isFresh时丢弃空闲连接新建一条
+	 */
+	HttpChannel lease(URL url, boolean isFresh) throws IOException {
+		HttpChannel channel = acquire(url, isFresh);
+		long readTimeout = _proxyFactory.getReadTimeout();
+		if (readTimeout > 0)
+			channel.socket.setSoTimeout((int) readTimeout);
+		return channel;
+	}
+
+	/**
+	 * 取一条连接: 优先复用空闲连接,未满时新建,管线化时挑未完成请求最少的连接,否则等待归还
+	 */
+	private HttpChannel acquire(URL url, boolean isFresh) throws IOException {
+		String key = key(url);
+		HostPool pool = _pools.get(key);
+		if (pool == null) {
+			HostPool created = new HostPool();
+			pool = _pools.putIfAbsent(key, created);
+			if (pool == null)
+				pool = created;
+			startEvictor();
+		}
+		long connectTimeout = _proxyFactory.getConnectTimeout();
+		long deadline = System.currentTimeMillis() + (connectTimeout > 0 ? connectTimeout : 30000);
+		synchronized (pool) {
+			while (true) {
+				HttpChannel channel;
+				while ((channel = pool.idle.pollLast()) != null) {
+					// 复用连接失败后重试时,同一host的其它空闲连接多半也已被服务端关闭
+					if (isFresh || channel.isBroken() || isExpired(channel) || isStale(channel)) {
+						pool.remove(channel);
+						continue;
+					}
+					channel.pending++;
+					return channel;
+				}
+				if (pool.size < _maxPerHost) {
+					// 先占位,在锁外建立连接
+					pool.size++;
+					break;
+				}
+				if (_isPipelining && !isFresh) {
+					HttpChannel least = null;
+					for (HttpChannel c : pool.all) {
+						if (!c.isBroken() && c.pending < _pipelineDepth
+								&& (least == null || c.pending < least.pending))
+							least = c;
+					}
+					if (least != null) {
+						least.pending++;
+						return least;
+					}
+				}
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0)
+					throw new ConnectionException("connection pool for " + key + " exhausted, max " + _maxPerHost);
+				try {
+					pool.wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new ConnectionException("interrupted while waiting for connection to " + key, e);
+				}
+			}
+		}
+		HttpChannel channel = null;
+		try {
+			channel = new HttpChannel(key, connect(url, connectTimeout));
+		} finally {
+			synchronized (pool) {
+				if (channel == null) {
+					pool.size--;
+					pool.notifyAll();
+				} else {
+					channel.pending = 1;
+					pool.all.add(channel);
+				}
+			}
+		}
+		return channel;
+	}
+
+	/**
+	 * 归还连接,不可复用的连接关闭并让出名额
+	 */
+	void release(HttpChannel channel, boolean reusable) {
+		HostPool pool = _pools.get(channel.key);
+		if (pool == null) {
+			channel.close();
+			return;
+		}
+		synchronized (pool) {
+			channel.pending--;
+			if (!reusable && !channel.isBroken())
+				channel.fail();
+			if (channel.isBroken()) {
+				if (channel.pending <= 0)
+					pool.remove(channel);
+			} else if (channel.pending == 0) {
+				channel.lastUsed = System.currentTimeMillis();
+				pool.idle.addLast(channel);
+			}
+			pool.notifyAll();
+		}
+	}
+
+	private Socket connect(URL url, long connectTimeout) throws IOException {
+		boolean isSecure = "https".equalsIgnoreCase(url.getProtocol());
+		int port = url.getPort() > 0 ? url.getPort() : isSecure ? 443 : 80;
+		Socket socket = SocketFactory.getDefault().createSocket();
+		try {
+			socket.setTcpNoDelay(true);
+			socket.setKeepAlive(true);
+			socket.connect(new InetSocketAddress(url.getHost(), port),
+					connectTimeout > 0 ? (int) connectTimeout : 0);
+			if (isSecure) {
+				// 握手也受连接超时约束,读超时由lease设置
+				socket.setSoTimeout(connectTimeout > 0 ? (int) connectTimeout : 0);
+				socket = startTls(socket, url.getHost(), port);
+				socket.setSoTimeout(0);
+			}
+			return socket;
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * 在已建立的连接上握手,按主机名校验证书(与HttpsURLConnection一致),并带上SNI
+	 */
+	private static Socket startTls(Socket socket, String host, int port) throws IOException {
+		SSLSocket sslSocket = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault())
+				.createSocket(socket, host, port, true);
+		try {
+			SSLParameters params = sslSocket.getSSLParameters();
+			params.setEndpointIdentificationAlgorithm("HTTPS");
+			sslSocket.setSSLParameters(params);
+			sslSocket.startHandshake();
+			return sslSocket;
+		} catch (IOException e) {
+			sslSocket.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * 空闲连接上不应有可读数据,有则是服务端关闭前发出的408等应答
+	 */
+	private boolean isStale(HttpChannel channel) {
+		try {
+			return channel.in.available() > 0;
+		} catch (IOException e) {
+			return true;
+		}
+	}
+
+	private boolean isExpired(HttpChannel channel) {
+		return System.currentTimeMillis() - channel.lastUsed > _idleTimeout;
+	}
+
+	private void startEvictor() {
+		if (_evictor != null)
+			return;
+		synchronized (this) {
+			if (_evictor != null)
+				return;
+			_evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "rpc-connection-evictor");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			long period = Math.max(1000, _idleTimeout / 2);
+			_evictor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					evictIdle();
+				}
+			}, period, period, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * 关闭空闲超时的连接
+	 */
+	void evictIdle() {
+		for (HostPool pool : _pools.values()) {
+			synchronized (pool) {
+				Iterator<HttpChannel> it = pool.idle.iterator();
+				while (it.hasNext()) {
+					HttpChannel channel = it.next();
+					if (channel.isBroken() || isExpired(channel)) {
+						it.remove();
+						pool.remove(channel);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * 关闭所有连接和后台线程
+	 */
+	public void shutdown() {
+		ScheduledExecutorService evictor = _evictor;
+		if (evictor != null)
+			evictor.shutdownNow();
+		for (HostPool pool : _pools.values()) {
+			synchronized (pool) {
+				for (HttpChannel channel : pool.all)
+					channel.fail();
+				pool.all.clear();
+				pool.idle.clear();
+				pool.size = 0;
+				pool.notifyAll();
+			}
+		}
+		_pools.clear();
+	}
+
+	public int getIdleCount() {
+		int count = 0;
+		for (HostPool pool : _pools.values()) {
+			synchronized (pool) {
+				count += pool.idle.size();
+			}
+		}
+		return count;
+	}
+
+	public int getOpenCount() {
+		int count = 0;
+		for (HostPool pool : _pools.values()) {
+			synchronized (pool) {
+				count += pool.size;
+			}
+		}
+		return count;
+	}
+
+	private static String key(URL url) {
+		return url.getProtocol() + "://" + url.getHost() + ":" + url.getPort();
+	}
+
+	/**
+	 * 每个host的最大连接数
+	 */
+	public void setMaxPerHost(int maxPerHost) {
+		if (maxPerHost < 1)
+			throw new IllegalArgumentException("maxPerHost " + maxPerHost);
+		_maxPerHost = maxPerHost;
+	}
+
+	public int getMaxPerHost() {
+		return _maxPerHost;
+	}
+
+	/**
+	 * 空闲超过该时间(毫秒)的连接被关闭
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		_idleTimeout = idleTimeout;
+	}
+
+	public long getIdleTimeout() {
+		return _idleTimeout;
+	}
+
+	/**
+	 * HTTP管线化: 池满时在已有连接上继续发送请求,响应按顺序读取.
+	 * 连接出错时同一连接上排队的请求一起失败,只适合幂等调用
+	 */
+	public void setPipelining(boolean isPipelining) {
+		_isPipelining = isPipelining;
+	}
+
+	public boolean isPipelining() {
+		return _isPipelining;
+	}
+
+	/**
+	 * 管线化时每条连接上最多未完成的请求数
+	 */
+	public void setPipelineDepth(int pipelineDepth) {
+		if (pipelineDepth < 1)
+			throw new IllegalArgumentException("pipelineDepth " + pipelineDepth);
+		_pipelineDepth = pipelineDepth;
+	}
+
+	public int getPipelineDepth() {
+		return _pipelineDepth;
+	}
+
+	@Override
+	public String toString() {
+		return "PooledConnectionFactory[maxPerHost=" + _maxPerHost
+				+ ", idleTimeout=" + _idleTimeout
+				+ ", pipelining=" + _isPipelining + "]";
+	}
+
+	private static final class HostPool {
+		final ArrayDeque<HttpChannel> idle = new ArrayDeque<HttpChannel>();
+		final List<HttpChannel> all = new ArrayList<HttpChannel>();
+		int size;
+
+		void remove(HttpChannel channel) {
+			if (all.remove(channel))
+				size--;
+			idle.remove(channel);
+			channel.close();
+		}
+	}
+}
@@ -99,6 +99,7 @@ public class RemoteProxy implements InvocationHandler, Serializable {
 		}
 		InputStream is = null;
 		IConnection conn = null;
+		boolean isCompleted = false;
 		try {
 			if (args[0] instanceof Packet) {
 				final Packet packet = (Packet) args[0];
@@ -106,6 +107,7 @@ public class RemoteProxy implements InvocationHandler, Serializable {
 				is = getInputStream(conn);
 				AbstractInput in = _factory.getRPCInput(is);
 				Object result = in.readReply(method.getReturnType());
+				isCompleted = true;
 				if (result == null) {
 					throw new RpcRuntimeException(packet.getInterfaceName()
 							+ "." + packet.getMethod() + " execute failed !");
@@ -124,8 +126,13 @@ public class RemoteProxy implements InvocationHandler, Serializable {
 			}
 
 			try {
-				if (conn != null)
-					conn.destroy();
+				// 响应完整读出时close()保留长连接,出错时断开
+				if (conn != null) {
+					if (isCompleted)
+						conn.close();
+					else
+						conn.destroy();
+				}
 			} catch (Exception e) {
 				log.log(Level.FINE, e.toString(), e);
 			}
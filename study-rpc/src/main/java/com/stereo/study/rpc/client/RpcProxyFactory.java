@@ -10,6 +10,7 @@ import com.stereo.study.rpc.io.*;
 import com.stereo.study.rpc.io.factory.SerializerFactory;
 import com.stereo.study.rpc.transport.Packet;
 import com.stereo.study.rpc.utils.UUID;
+import com.stereo.study.util.DataTransferThrottler;
 
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -44,6 +45,11 @@ public class RpcProxyFactory implements IProxyFactory {
 
 	private boolean _isOverloadEnabled = false;
 	private boolean _isChunkedPost = true;
+	private boolean _isResumableUpload = false;
+	private boolean _isConnectionPooling = false;
+
+	private int _uploadParts = 1;
+	private DataTransferThrottler _uploadThrottler;
 
 	private long _readTimeout = -1;
 	private long _connectTimeout = -1;
@@ -96,6 +102,57 @@ public class RpcProxyFactory implements IProxyFactory {
 		return _isChunkedPost;
 	}
 
+	/**
+	 * 使用长连接池(PooledConnectionFactory),需在第一次getConnectionFactory()之前设置
+	 */
+	public void setConnectionPooling(boolean isPooling) {
+		_isConnectionPooling = isPooling;
+	}
+
+	public boolean isConnectionPooling() {
+		return _isConnectionPooling;
+	}
+
+	/**
+	 * 续传模式上传: 先查询服务端已收到的字节数,再从断点继续
+	 */
+	public void setResumableUpload(boolean isResumable) {
+		_isResumableUpload = isResumable;
+	}
+
+	public boolean isResumableUpload() {
+		return _isResumableUpload;
+	}
+
+	/**
+	 * 分片并发上传: 大于1时文件切成parts段,各段用独立连接同时上传
+	 */
+	public void setUploadParts(int parts) {
+		if (parts < 1)
+			throw new IllegalArgumentException("upload parts " + parts);
+		_uploadParts = parts;
+	}
+
+	public int getUploadParts() {
+		return _uploadParts;
+	}
+
+	/**
+	 * 上传总带宽(字节/秒),工厂创建的所有上传和分片共用,小于等于0不限速
+	 */
+	public synchronized void setUploadBandwidth(long bytesPerSecond) {
+		if (bytesPerSecond <= 0)
+			_uploadThrottler = null;
+		else if (_uploadThrottler == null)
+			_uploadThrottler = new DataTransferThrottler(bytesPerSecond);
+		else
+			_uploadThrottler.setBandwidth(bytesPerSecond);
+	}
+
+	public synchronized DataTransferThrottler getUploadThrottler() {
+		return _uploadThrottler;
+	}
+
 	public long getReadTimeout() {
 		return _readTimeout;
 	}
@@ -141,6 +198,8 @@ public class RpcProxyFactory implements IProxyFactory {
 		} catch (Exception e) {
 			throw new RpcRuntimeException(e);
 		}
+		if (_isConnectionPooling)
+			return new PooledConnectionFactory();
 		return new ConnectionFactory();
 	}
 
@@ -9,13 +9,24 @@ import com.stereo.study.rpc.io.AbstractInput;
 import com.stereo.study.rpc.io.AbstractOutput;
 import com.stereo.study.rpc.utils.FileUtil;
 import com.stereo.study.rpc.utils.MD5CheckSum;
+import com.stereo.study.rpc.utils.MD5Util;
+import com.stereo.study.util.DataTransferThrottler;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.*;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.Inflater;
@@ -37,6 +48,9 @@ public class UploadProxy implements InvocationHandler, Serializable {
      */
     private static final long serialVersionUID = -4610802859772604635L;
 
+    //单个分片的上传次数
+    private static final int PART_ATTEMPTS = 3;
+
     private URL _url;
 
     private File _src;
@@ -98,6 +112,10 @@ public class UploadProxy implements InvocationHandler, Serializable {
             if (isUsable(_url))
             {
                 IProgress _listener = args !=null && args.length == 1 ? (IProgress) args[0] : null;
+                if (_factory.getUploadParts() > 1 && _src.length() > IUpload.FILE_SEGMENTED_BUF)
+                    return parallelUpload(_listener);
+                if (_factory.isResumableUpload())
+                    return resumableUpload(_listener);
                 total = _bis.available();
                 conn = _factory.getConnectionFactory().open(_url);
                 conn.addHeader("Content-Type", "x-application/rpc");
@@ -119,6 +137,7 @@ public class UploadProxy implements InvocationHandler, Serializable {
                 while (-1 != (length = _bis.read(buffer)))
                 {
                     checkSum.process(buffer,0,length);
+                    throttle(length);
                     //写len
                     out.writeInt(length);
                     //写字节
@@ -168,6 +187,309 @@ public class UploadProxy implements InvocationHandler, Serializable {
         }
     }
 
+    /**
+     * 续传上传: 查询服务端已收到的字节数,前缀只参与校验,从断点开始发送
+     */
+    private boolean resumableUpload(IProgress listener) throws Exception {
+        long total = _src.length();
+        //同一文件同一目标的上传标识不变,文件修改后重新上传
+        String uploadId = MD5Util.getMD5String(_src.getCanonicalPath() + "|" + total + "|"
+                + _src.lastModified() + "|" + _remotePath + "|" + _fileName);
+        long offset = queryOffset(total, uploadId);
+        IConnection conn = null;
+        InputStream is = null;
+        OutputStream os = null;
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(_src, "r");
+            byte[] buffer = new byte[IUpload.FILE_SEGMENTED_BUF];
+            long position = 0;
+            int length;
+            while (position < offset
+                    && -1 != (length = raf.read(buffer, 0, (int) Math.min(buffer.length, offset - position)))) {
+                checkSum.process(buffer, 0, length);
+                position += length;
+            }
+            conn = _factory.getConnectionFactory().open(_url);
+            conn.addHeader("Content-Type", "x-application/rpc");
+            conn.addHeader("Accept-Encoding", "deflate");
+            os = conn.getOutputStream();
+            AbstractOutput out = _factory.getRPCOutput(os);
+
+            // 写入文件信息和断点
+            out.call(IUpload.FILE_UPLOAD_RESUME_METHOD, 0);
+            out.writeString(_fileName);
+            out.writeString(_remotePath);
+            out.writeLong(total);
+            out.writeString(uploadId);
+            out.writeLong(offset);
+
+            long currentlength = offset;
+            while (-1 != (length = raf.read(buffer)))
+            {
+                checkSum.process(buffer, 0, length);
+                throttle(length);
+                //写len
+                out.writeInt(length);
+                //写字节,缓冲区满时自动刷出,不逐块flush
+                out.writeBytes(buffer, 0, length);
+                counter.incrementAndGet();
+                currentlength += length;
+                if (null != listener)
+                    listener.update(total, currentlength, counter.get());
+            }
+            _md5 = checkSum.processed();
+            out.writeInt(IUpload.FILE_UPLOAD_EOF_MARKER);
+            out.writeString(_md5);
+            out.flush();
+            conn.sendRequest();
+            if ("deflate".equals(conn.getContentEncoding()))
+                is = new InflaterInputStream(conn.getInputStream(),
+                        new Inflater(true));
+            else
+                is = conn.getInputStream();
+            AbstractInput in = _factory.getRPCInput(is);
+            String result = in.readString();
+            if (IUpload.FILE_UPLOAD_COMPLETED.equals(result))
+                return true;
+            else if (IUpload.FILE_UPLOAD_FAILED.equals(result))
+                return false;
+            else
+                throw new RuntimeException("upload not completed");
+        } finally {
+            if (is != null)
+                is.close();
+            if (os != null)
+                os.close();
+            if (raf != null)
+                raf.close();
+            if (conn != null)
+                conn.destroy();
+        }
+    }
+
+    /**
+     * 分片并发上传: 文件切成若干段,每段用独立连接写到服务端预分配文件的对应偏移,
+     * 分片单独校验、失败重传,全部成功后提交,由服务端校验整个文件
+     */
+    private boolean parallelUpload(final IProgress listener) throws Exception {
+        final long total = _src.length();
+        final String uploadId = MD5Util.getMD5String(_src.getCanonicalPath() + "|" + total + "|"
+                + _src.lastModified() + "|" + _remotePath + "|" + _fileName + "|parts");
+        int parts = (int) Math.min(_factory.getUploadParts(),
+                (total + IUpload.FILE_SEGMENTED_BUF - 1) / IUpload.FILE_SEGMENTED_BUF);
+        long partSize = (total + parts - 1) / parts;
+        final AtomicLong uploaded = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(parts, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "rpc-upload-" + _fileName + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(parts);
+            for (long start = 0; start < total; start += partSize) {
+                final long offset = start;
+                final long length = Math.min(partSize, total - start);
+                futures.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        for (int attempt = 1; attempt <= PART_ATTEMPTS; attempt++) {
+                            AtomicLong sent = new AtomicLong();
+                            try {
+                                if (uploadPart(total, uploadId, offset, length, sent, uploaded, listener))
+                                    return true;
+                                log.warning("upload part [" + offset + ", " + (offset + length)
+                                        + ") checksum failed, attempt " + attempt);
+                            } catch (Exception e) {
+                                log.log(Level.WARNING, "upload part [" + offset + ", " + (offset + length)
+                                        + ") failed, attempt " + attempt, e);
+                            }
+                            //重传的部分不重复计入进度
+                            uploaded.addAndGet(-sent.get());
+                        }
+                        return false;
+                    }
+                }));
+            }
+            //分片上传期间在当前线程计算整个文件的MD5
+            byte[] buffer = new byte[IUpload.FILE_SEGMENTED_BUF];
+            int length;
+            while (-1 != (length = _bis.read(buffer)))
+                checkSum.process(buffer, 0, length);
+            _md5 = checkSum.processed();
+            boolean succeed = true;
+            for (Future<Boolean> future : futures) {
+                try {
+                    succeed &= future.get();
+                } catch (ExecutionException e) {
+                    throw new RpcRuntimeException(e.getCause());
+                }
+            }
+            return succeed && commitUpload(total, uploadId);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 上传[offset, offset + partLength)一段,返回服务端对这一段的校验结果
+     */
+    private boolean uploadPart(long total, String uploadId, long offset, long partLength,
+                               AtomicLong sent, AtomicLong uploaded, IProgress listener) throws Exception {
+        IConnection conn = null;
+        OutputStream os = null;
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(_src, "r");
+            raf.seek(offset);
+            conn = _factory.getConnectionFactory().open(_url);
+            conn.addHeader("Content-Type", "x-application/rpc");
+            conn.addHeader("Accept-Encoding", "deflate");
+            os = conn.getOutputStream();
+            AbstractOutput out = _factory.getRPCOutput(os);
+
+            // 写入文件信息和分片区间
+            out.call(IUpload.FILE_UPLOAD_PART_METHOD, 0);
+            out.writeString(_fileName);
+            out.writeString(_remotePath);
+            out.writeLong(total);
+            out.writeString(uploadId);
+            out.writeLong(offset);
+            out.writeLong(partLength);
+
+            MD5CheckSum partCheckSum = new MD5CheckSum();
+            byte[] buffer = new byte[IUpload.FILE_SEGMENTED_BUF];
+            long remaining = partLength;
+            int length;
+            while (remaining > 0
+                    && -1 != (length = raf.read(buffer, 0, (int) Math.min(buffer.length, remaining)))) {
+                partCheckSum.process(buffer, 0, length);
+                //所有分片共用一个限速器,限制的是总带宽
+                throttle(length);
+                out.writeInt(length);
+                out.writeBytes(buffer, 0, length);
+                remaining -= length;
+                counter.incrementAndGet();
+                sent.addAndGet(length);
+                long current = uploaded.addAndGet(length);
+                if (null != listener)
+                    listener.update(total, current, counter.get());
+            }
+            out.writeInt(IUpload.FILE_UPLOAD_EOF_MARKER);
+            out.writeString(partCheckSum.processed());
+            out.flush();
+            return readResult(conn);
+        } finally {
+            if (os != null)
+                os.close();
+            if (raf != null)
+                raf.close();
+            if (conn != null)
+                conn.destroy();
+        }
+    }
+
+    /**
+     * 提交分片上传,服务端校验整个文件的MD5
+     */
+    private boolean commitUpload(long total, String uploadId) throws Exception {
+        IConnection conn = null;
+        OutputStream os = null;
+        try {
+            conn = _factory.getConnectionFactory().open(_url);
+            conn.addHeader("Content-Type", "x-application/rpc");
+            conn.addHeader("Accept-Encoding", "deflate");
+            os = conn.getOutputStream();
+            AbstractOutput out = _factory.getRPCOutput(os);
+            out.call(IUpload.FILE_UPLOAD_COMMIT_METHOD, 0);
+            out.writeString(_fileName);
+            out.writeString(_remotePath);
+            out.writeLong(total);
+            out.writeString(uploadId);
+            out.writeString(_md5);
+            out.flush();
+            return readResult(conn);
+        } finally {
+            if (os != null)
+                os.close();
+            if (conn != null)
+                conn.destroy();
+        }
+    }
+
+    private boolean readResult(IConnection conn) throws IOException {
+        InputStream is = null;
+        try {
+            conn.sendRequest();
+            if ("deflate".equals(conn.getContentEncoding()))
+                is = new InflaterInputStream(conn.getInputStream(),
+                        new Inflater(true));
+            else
+                is = conn.getInputStream();
+            AbstractInput in = _factory.getRPCInput(is);
+            String result = in.readString();
+            if (IUpload.FILE_UPLOAD_COMPLETED.equals(result))
+                return true;
+            else if (IUpload.FILE_UPLOAD_FAILED.equals(result))
+                return false;
+            else
+                throw new RuntimeException("upload not completed");
+        } finally {
+            if (is != null)
+                is.close();
+        }
+    }
+
+    private void throttle(int length) {
+        DataTransferThrottler throttler = _factory.getUploadThrottler();
+        if (throttler != null)
+            throttler.throttle(length);
+    }
+
+    /**
+     * 查询服务端已收到的字节数
+     */
+    private long queryOffset(long total, String uploadId) throws Exception {
+        InputStream is = null;
+        OutputStream os = null;
+        IConnection connection = null;
+        try {
+            connection = _factory.getConnectionFactory().open(_url);
+            connection.addHeader("Content-Type", "x-application/rpc");
+            connection.addHeader("Accept-Encoding", "deflate");
+            os = connection.getOutputStream();
+            AbstractOutput out = _factory.getRPCOutput(os);
+            out.call(IUpload.FILE_UPLOAD_OFFSET_METHOD, 0);
+            out.writeString(_fileName);
+            out.writeString(_remotePath);
+            out.writeLong(total);
+            out.writeString(uploadId);
+            out.flush();
+            connection.sendRequest();
+            if ("deflate".equals(connection.getContentEncoding()))
+                is = new InflaterInputStream(connection.getInputStream(),
+                        new Inflater(true));
+            else
+                is = connection.getInputStream();
+            AbstractInput in = _factory.getRPCInput(is);
+            long offset = in.readLong();
+            if (offset < 0 || offset > total)
+                throw new RpcRuntimeException("illegal upload offset " + offset);
+            return offset;
+        } finally {
+            if (is != null)
+                is.close();
+            if (os != null)
+                os.close();
+            if (connection != null)
+                connection.destroy();
+        }
+    }
+
     private boolean isUsable(URL url) {
         InputStream is = null;
         OutputStream os = null;
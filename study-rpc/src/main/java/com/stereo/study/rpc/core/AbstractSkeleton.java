@@ -2,6 +2,7 @@ package com.stereo.study.rpc.core;
 
 import java.io.InputStream;
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.HashMap;
 
 /**
@@ -15,7 +16,30 @@ abstract public class AbstractSkeleton {
 	private Class _homeClass;
 	private Class _objectClass;
 
-	private HashMap _methodMap = new HashMap();
+	// 方法名/重整名/name__N -> 调用器,构造后只读
+	private final HashMap<String, MethodIndex> _methodMap = new HashMap<String, MethodIndex>();
+
+	/**
+	 * 同一个键下的调用器: first对应按名称查找的结果,arities按参数个数下标
+	 */
+	private static final class MethodIndex {
+		private MethodInvoker first;
+		private MethodInvoker[] arities;
+
+		private void putArity(int arity, MethodInvoker invoker) {
+			if (arities == null)
+				arities = new MethodInvoker[arity + 1];
+			else if (arities.length <= arity)
+				arities = Arrays.copyOf(arities, arity + 1);
+			arities[arity] = invoker;
+		}
+
+		private MethodInvoker getArity(int arity) {
+			if (arities != null && arity >= 0 && arity < arities.length)
+				return arities[arity];
+			return null;
+		}
+	}
 
 	protected AbstractSkeleton(Class apiClass) {
 		_apiClass = apiClass;
@@ -24,18 +48,31 @@ abstract public class AbstractSkeleton {
 
 		for (int i = 0; i < methodList.length; i++) {
 			Method method = methodList[i];
+			MethodInvoker invoker = new MethodInvoker(method);
+			// Method.getName()返回的名称已经intern
+			String name = method.getName();
 
-			if (_methodMap.get(method.getName()) == null)
-				_methodMap.put(method.getName(), methodList[i]);
+			MethodIndex index = index(name);
+			if (index.first == null)
+				index.first = invoker;
+			int arity = method.getParameterTypes().length;
+			index.putArity(arity, invoker);
 
-			Class[] param = method.getParameterTypes();
-			String mangledName = method.getName() + "__" + param.length;
-			_methodMap.put(mangledName, methodList[i]);
+			index(name + "__" + arity).first = invoker;
 
-			_methodMap.put(mangleName(method, false), methodList[i]);
+			index(mangleName(method, false)).first = invoker;
 		}
 	}
 
+	private MethodIndex index(String key) {
+		MethodIndex index = _methodMap.get(key);
+		if (index == null) {
+			index = new MethodIndex();
+			_methodMap.put(key, index);
+		}
+		return index;
+	}
+
 	public String getAPIClassName() {
 		return _apiClass.getName();
 	}
@@ -63,7 +100,28 @@ abstract public class AbstractSkeleton {
 	}
 
 	protected Method getMethod(String mangledName) {
-		return (Method) _methodMap.get(mangledName);
+		MethodInvoker invoker = getInvoker(mangledName);
+		return invoker != null ? invoker.getMethod() : null;
+	}
+
+	/**
+	 * 按方法名或重整名查找
+	 */
+	protected MethodInvoker getInvoker(String mangledName) {
+		MethodIndex index = _methodMap.get(mangledName);
+		return index != null ? index.first : null;
+	}
+
+	/**
+	 * 按(方法名,参数个数)查找,等同于getMethod(methodName + "__" + argLength)
+	 * 但不拼接字符串;没有对应参数个数的方法时退回按名称查找
+	 */
+	protected MethodInvoker getInvoker(String methodName, int argLength) {
+		MethodIndex index = _methodMap.get(methodName);
+		if (index == null)
+			return null;
+		MethodInvoker invoker = index.getArity(argLength);
+		return invoker != null ? invoker : index.first;
 	}
 
 	public static String mangleName(Method method, boolean isFull) {
@@ -47,4 +47,40 @@ public interface IHandler<E> extends Serializable {
 	 * @throws Exception
 	 */
 	void handleUpload(AbstractInput in, AbstractOutput out) throws Exception;
-}
+
+	/**
+	 * 查询续传偏移: 服务端已收到的字节数
+	 * 
+	 * @param in
+	 * @param out
+	 * @throws Exception
+	 */
+	void uploadOffset(AbstractInput in, AbstractOutput out) throws Exception;
+
+	/**
+	 * 从指定偏移续传
+	 * 
+	 * @param in
+	 * @param out
+	 * @throws Exception
+	 */
+	void handleResumableUpload(AbstractInput in, AbstractOutput out) throws Exception;
+
+	/**
+	 * 分片上传: 把一段数据写入预分配文件的指定偏移
+	 * 
+	 * @param in
+	 * @param out
+	 * @throws Exception
+	 */
+	void handlePartUpload(AbstractInput in, AbstractOutput out) throws Exception;
+
+	/**
+	 * 分片全部上传后提交: 校验整个文件并移到目标位置
+	 * 
+	 * @param in
+	 * @param out
+	 * @throws Exception
+	 */
+	void commitUpload(AbstractInput in, AbstractOutput out) throws Exception;
+}
\ No newline at end of file
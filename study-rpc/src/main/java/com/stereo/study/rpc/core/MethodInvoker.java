@@ -0,0 +1,144 @@
+package com.stereo.study.rpc.core;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * 预先绑定的方法调用器
+ * 构造时把Method转换为(Object, Object[])Object形式的MethodHandle,调用时直接invokeExact,
+ * 省去Method.invoke每次的访问检查和参数装箱数组校验.无法取得MethodHandle时退回反射调用.
+ * 目标方法抛出的异常统一包装为InvocationTargetException,与反射调用保持一致
+ *
+ * @author stereo
+ */
+public final class MethodInvoker {
+
+	private static final MethodType INVOKER_TYPE = MethodType.methodType(
+			Object.class, Object.class, Object[].class);
+
+	private final Method _method;
+	private final Class<?>[] _parameterTypes;
+	private final MethodHandle _handle;
+
+	public MethodInvoker(Method method) {
+		_method = method;
+		_parameterTypes = method.getParameterTypes();
+		_handle = bind(method, _parameterTypes.length);
+	}
+
+	public Method getMethod() {
+		return _method;
+	}
+
+	/**
+	 * 参数类型,调用方不得修改
+	 */
+	public Class<?>[] getParameterTypes() {
+		return _parameterTypes;
+	}
+
+	public int getParameterCount() {
+		return _parameterTypes.length;
+	}
+
+	public Object invoke(Object target, Object[] args)
+			throws IllegalAccessException, InvocationTargetException {
+		if (_handle == null)
+			return _method.invoke(target, args);
+		checkArguments(target, args);
+		try {
+			return (Object) _handle.invokeExact(target, args);
+		} catch (Throwable e) {
+			throw new InvocationTargetException(e);
+		}
+	}
+
+	/**
+	 * 调用前按反射的规则检查目标和参数,不合法时抛IllegalArgumentException,
+	 * 这样MethodHandle自身的类型转换不会失败,捕获到的异常都来自目标方法
+	 */
+	private void checkArguments(Object target, Object[] args) {
+		if (!Modifier.isStatic(_method.getModifiers())
+				&& !_method.getDeclaringClass().isInstance(target)) {
+			if (target == null)
+				throw new NullPointerException("null target for " + _method);
+			throw new IllegalArgumentException("object is not an instance of declaring class: "
+					+ target.getClass().getName() + " for " + _method);
+		}
+		int length = args == null ? 0 : args.length;
+		if (length != _parameterTypes.length)
+			throw new IllegalArgumentException("wrong number of arguments: "
+					+ length + " for " + _method);
+		for (int i = 0; i < length; i++) {
+			if (!isAssignable(_parameterTypes[i], args[i]))
+				throw new IllegalArgumentException("argument type mismatch at " + i + ": "
+						+ (args[i] == null ? "null" : args[i].getClass().getName())
+						+ " for " + _parameterTypes[i].getName() + " in " + _method);
+		}
+	}
+
+	/**
+	 * 引用类型要求实例或null;基本类型要求非null的包装类,允许拓宽转换
+	 */
+	private static boolean isAssignable(Class<?> type, Object arg) {
+		if (!type.isPrimitive())
+			return arg == null || type.isInstance(arg);
+		if (arg == null)
+			return false;
+		Class<?> cl = arg.getClass();
+		if (type == boolean.class)
+			return cl == Boolean.class;
+		int to = rank(type);
+		if (cl == Character.class)
+			return type == char.class || to >= 3;
+		int from = rank(cl);
+		return from > 0 && to > 0 && from <= to;
+	}
+
+	/**
+	 * 数值类型的拓宽顺序,char只能拓宽到int及以上,单独处理
+	 */
+	private static int rank(Class<?> cl) {
+		if (cl == byte.class || cl == Byte.class)
+			return 1;
+		if (cl == short.class || cl == Short.class)
+			return 2;
+		if (cl == int.class || cl == Integer.class)
+			return 3;
+		if (cl == long.class || cl == Long.class)
+			return 4;
+		if (cl == float.class || cl == Float.class)
+			return 5;
+		if (cl == double.class || cl == Double.class)
+			return 6;
+		return 0;
+	}
+
+	private static MethodHandle bind(Method method, int parameterCount) {
+		MethodHandle handle;
+		try {
+			handle = MethodHandles.publicLookup().unreflect(method);
+		} catch (IllegalAccessException e) {
+			// 非public接口或实现类的方法,打开访问后重试
+			try {
+				method.setAccessible(true);
+				handle = MethodHandles.lookup().unreflect(method);
+			} catch (Exception e1) {
+				return null;
+			}
+		}
+		if (Modifier.isStatic(method.getModifiers()))
+			handle = MethodHandles.dropArguments(handle, 0, Object.class);
+		return handle.asType(MethodType.genericMethodType(parameterCount + 1))
+				.asSpreader(Object[].class, parameterCount)
+				.asType(INVOKER_TYPE);
+	}
+
+	public String toString() {
+		return getClass().getSimpleName() + "[" + _method + "]";
+	}
+}
@@ -2,6 +2,8 @@ package com.stereo.study.rpc.core;
 
 import com.stereo.study.rpc.api.IUpload;
 import com.stereo.study.rpc.io.AbstractInput;
+import com.stereo.study.rpc.io.Input;
+import com.stereo.study.rpc.io.Output;
 import com.stereo.study.rpc.io.factory.IOFactory;
 import com.stereo.study.rpc.io.factory.SerializerFactory;
 import com.stereo.study.rpc.io.AbstractOutput;
@@ -9,7 +11,6 @@ import com.stereo.study.rpc.io.AbstractOutput;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -49,6 +50,10 @@ public final class Skeleton extends AbstractSkeleton {
         _factory = factory;
     }
 
+    public IOFactory getFactory() {
+        return _factory;
+    }
+
     public void invoke(InputStream is, OutputStream os) throws Exception {
         invoke(is, os, null);
     }
@@ -64,8 +69,9 @@ public final class Skeleton extends AbstractSkeleton {
         /**
          * here can read Version
          */
-        AbstractInput in = _factory.createRPCInput(is);
-        AbstractOutput out = _factory.createRPCOutput(os);
+        // 从池中借出,调用结束后清空引用表归还
+        Input in = _factory.createRPCInput(is);
+        Output out = _factory.createRPCOutput(os);
         if (serializerFactory != null) {
             in.setSerializerFactory(serializerFactory);
             out.setSerializerFactory(serializerFactory);
@@ -73,8 +79,13 @@ public final class Skeleton extends AbstractSkeleton {
         try {
             invoke(_service, in, out);
         } finally {
-            in.close();
-            out.close();
+            try {
+                in.close();
+                out.close();
+            } finally {
+                _factory.freeRPCInput(in);
+                _factory.freeRPCOutput(out);
+            }
         }
     }
 
@@ -118,9 +129,9 @@ public final class Skeleton extends AbstractSkeleton {
             String user = in.readString();
             String passwd = in.readString();
             Object[] args = {user, passwd};
-            Method method = getMethod(methodName + "__" + args.length);
-            if (method != null)
-                allow = (Boolean) method.invoke(service,args);
+            MethodInvoker invoker = getInvoker(methodName, args.length);
+            if (invoker != null && invoker.getParameterCount() == args.length)
+                allow = (Boolean) invoker.invoke(service, args);
             if (allow)
                 out.writeString(IUpload.FILE_UPLOAD_AUTH_COMPLETED);
             else
@@ -131,11 +142,15 @@ public final class Skeleton extends AbstractSkeleton {
         }
 
         // handle upload
-        if (methodName.equals(IUpload.FILE_UPLOAD_METHOD)) {
+        if (methodName.equals(IUpload.FILE_UPLOAD_METHOD)
+                || methodName.equals(IUpload.FILE_UPLOAD_OFFSET_METHOD)
+                || methodName.equals(IUpload.FILE_UPLOAD_RESUME_METHOD)
+                || methodName.equals(IUpload.FILE_UPLOAD_PART_METHOD)
+                || methodName.equals(IUpload.FILE_UPLOAD_COMMIT_METHOD)) {
             Object[] args = {in, out};
-            Method method = getMethod(methodName + "__" + args.length);
-            if (method != null)
-                method.invoke(service, args);
+            MethodInvoker invoker = getInvoker(methodName, args.length);
+            if (invoker != null && invoker.getParameterCount() == args.length)
+                invoker.invoke(service, args);
             out.close();
             return;
         }
@@ -143,11 +158,9 @@ public final class Skeleton extends AbstractSkeleton {
         // handle packet
         // read argLength
         int argLength = in.readMethodArgLength();
-        Method method = getMethod(methodName + "__" + argLength);
-        if (method == null)
-            method = getMethod(methodName);
-        if (method != null) {
-        } else if (method == null) {
+        // 一次查找得到(方法名,参数个数)对应的调用器,没有时退回按名称查找
+        MethodInvoker invoker = getInvoker(methodName, argLength);
+        if (invoker == null) {
             out.writeFault(
                     "NoSuchMethodException",
                     escapeMessage("The skeleton has no method named: "
@@ -156,11 +169,11 @@ public final class Skeleton extends AbstractSkeleton {
             return;
         }
 
-        Class<?>[] args = method.getParameterTypes();
+        Class<?>[] args = invoker.getParameterTypes();
 
         if (argLength != args.length && argLength >= 0) {
             out.writeFault("NoSuchMethod",
-                    escapeMessage("method " + method
+                    escapeMessage("method " + invoker.getMethod()
                             + " argument length mismatch, received length="
                             + argLength), null);
             out.close();
@@ -174,7 +187,7 @@ public final class Skeleton extends AbstractSkeleton {
 
         Object result = null;
         try {
-            result = method.invoke(service, values);
+            result = invoker.invoke(service, values);
         } catch (Exception e) {
             Throwable e1 = e;
             if (e1 instanceof InvocationTargetException)
@@ -2,6 +2,7 @@ package com.stereo.study.rpc.core.context;
 
 import com.stereo.study.rpc.api.IActionCall;
 import com.stereo.study.rpc.api.IActionInvoker;
+import com.stereo.study.rpc.core.MethodInvoker;
 import com.stereo.study.rpc.exc.MethodNotFoundException;
 import com.stereo.study.rpc.exc.NotAllowedException;
 import com.stereo.study.rpc.utils.ConversionUtils;
@@ -12,10 +13,14 @@ import org.slf4j.LoggerFactory;
 import javax.management.ServiceNotFoundException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * 业务核心调用器
@@ -26,27 +31,84 @@ import java.util.concurrent.CopyOnWriteArraySet;
  */
 public final class ActionInvoker implements IActionInvoker {
 
-	private static class MethodCache {
-		private String methodName;
-		private Class<?>[] classes;
-		private Method method;
+	/**
+	 * 业务类的方法索引,首次调用时按类建立,之后只读
+	 * 方法名 -> 参数个数 -> 候选调用器
+	 */
+	private static final class ActionIndex {
+		private final HashMap<String, Candidate[][]> methods = new HashMap<String, Candidate[][]>();
+
+		ActionIndex(Class<?> actionClass) {
+			HashMap<String, List<Candidate>> byName = new HashMap<String, List<Candidate>>();
+			for (Method method : actionClass.getMethods()) {
+				List<Candidate> list = byName.get(method.getName());
+				if (list == null) {
+					list = new ArrayList<Candidate>();
+					byName.put(method.getName(), list);
+				}
+				list.add(new Candidate(new MethodInvoker(method)));
+			}
+			for (Map.Entry<String, List<Candidate>> entry : byName.entrySet()) {
+				int maxArity = 0;
+				for (Candidate candidate : entry.getValue())
+					maxArity = Math.max(maxArity, candidate.types.length);
+				Candidate[][] arities = new Candidate[maxArity + 1][];
+				for (int i = 0; i <= maxArity; i++) {
+					List<Candidate> matched = new ArrayList<Candidate>();
+					for (Candidate candidate : entry.getValue())
+						if (candidate.types.length == i)
+							matched.add(candidate);
+					if (!matched.isEmpty())
+						arities[i] = matched.toArray(new Candidate[matched.size()]);
+				}
+				methods.put(entry.getKey(), arities);
+			}
+		}
+
+		Candidate[][] get(String methodName) {
+			return methods.get(methodName);
+		}
+	}
+
+	private static final class Candidate {
+		private final MethodInvoker invoker;
+		// 基本类型替换为包装类型后的参数类型
+		private final Class<?>[] types;
+		private final boolean[] primitives;
 
-		public MethodCache(String methodName, Class<?>[] classes, Method method) {
-			this.methodName = methodName;
-			this.classes = classes;
-			this.method = method;
+		Candidate(MethodInvoker invoker) {
+			this.invoker = invoker;
+			Class<?>[] parameterTypes = invoker.getParameterTypes();
+			this.types = new Class<?>[parameterTypes.length];
+			this.primitives = new boolean[parameterTypes.length];
+			for (int i = 0; i < parameterTypes.length; i++) {
+				primitives[i] = parameterTypes[i].isPrimitive();
+				types[i] = ConversionUtils.getWrapperClass(parameterTypes[i]);
+			}
 		}
 
-		public Method findMethod(String methodName, Object[] args)
-		{
-			if (this.methodName.equals(methodName)
-					&& args.length == classes.length) {
-				for (int i = 0; i < args.length; i++)
-					if (!args[i].getClass().isAssignableFrom(classes[i]))
-						return null;
-				return method;
+		/**
+		 * 参数无需转换即可直接传入
+		 */
+		boolean isApplicable(Object[] args) {
+			for (int i = 0; i < types.length; i++) {
+				Object arg = args[i];
+				if (arg == null ? primitives[i] : !types[i].isInstance(arg))
+					return false;
 			}
-			return null;
+			return true;
+		}
+
+		/**
+		 * 参数类型与声明类型完全一致,用于在重载中选择
+		 */
+		boolean isExact(Object[] args) {
+			for (int i = 0; i < types.length; i++) {
+				Object arg = args[i];
+				if (arg == null ? primitives[i] : arg.getClass() != types[i])
+					return false;
+			}
+			return true;
 		}
 	}
 
@@ -54,7 +116,7 @@ public final class ActionInvoker implements IActionInvoker {
 			.getLogger(ActionInvoker.class);
 
 	private ActionContext actionContext;
-	private Set<MethodCache> methodCaches = new CopyOnWriteArraySet<MethodCache>();
+	private final ConcurrentMap<Class<?>, ActionIndex> actionIndexes = new ConcurrentHashMap<Class<?>, ActionIndex>();
 
 	protected ActionInvoker(ActionContext actionContext) {
 		this.actionContext = actionContext;
@@ -107,18 +169,16 @@ public final class ActionInvoker implements IActionInvoker {
 			} else {
 				argsWithCall = new Object[] { call };
 			}
+			ActionIndex actionIndex = getActionIndex(service.getClass());
+			Candidate[][] arities = actionIndex.get(methodName);
+			// 快速路径: 参数无需转换时直接从索引取得调用器
+			MethodInvoker invoker = resolve(arities, argsWithCall);
 			Object[] methodResult = null;
-			if (methodCaches.size() > 0) {
-				Method method = null;
-				for (MethodCache cache : methodCaches) {
-					if (cache.findMethod(methodName, argsWithCall) != null) {
-						method = cache.findMethod(methodName, argsWithCall);
-						break;
-					}
-				}
-				if (method != null) {
-					methodResult = new Object[] { method, argsWithCall };
-				}
+			if (invoker != null) {
+				methodResult = new Object[] { invoker, argsWithCall };
+			} else if (args != null && !acceptsCall(arities, argsWithCall)
+					&& (invoker = resolve(arities, args)) != null) {
+				methodResult = new Object[] { invoker, args };
 			}
 			if (methodResult == null) {
 				methodResult = InvokeUtils.findMethodWithExactParameters(
@@ -158,8 +218,11 @@ public final class ActionInvoker implements IActionInvoker {
 				}
 			}
 
+			if (methodResult[0] instanceof Method)
+				methodResult[0] = findInvoker(arities, (Method) methodResult[0]);
 			Object result = null;
-			Method method = (Method) methodResult[0];
+			invoker = (MethodInvoker) methodResult[0];
+			Method method = invoker.getMethod();
 			Object[] params = (Object[]) methodResult[1];
 			try {
 				log.debug("Invoking method: ", method.toString());
@@ -170,17 +233,15 @@ public final class ActionInvoker implements IActionInvoker {
 				// return false;
 				// }
 				if (method.getReturnType() == Void.class) {
-					method.invoke(service, params);
+					invoker.invoke(service, params);
 					call.setStatus(IActionCall.STATUS_SUCCESS_VOID);
 				} else {
-					result = method.invoke(service, params);
+					result = invoker.invoke(service, params);
 					log.debug("result: {}", result);
 					call.setStatus(result == null ? IActionCall.STATUS_SUCCESS_NULL
 							: IActionCall.STATUS_SUCCESS_RESULT);
 				}
 				call.setResult(result);
-				methodCaches.add(new MethodCache(methodName, ConversionUtils
-						.convertParams(params), method));
 
 			} catch (NotAllowedException e) {
 				call.setException(e);
@@ -206,4 +267,56 @@ public final class ActionInvoker implements IActionInvoker {
 			return true;
 		}
 	}
+
+	private ActionIndex getActionIndex(Class<?> actionClass) {
+		ActionIndex index = actionIndexes.get(actionClass);
+		if (index == null) {
+			index = new ActionIndex(actionClass);
+			ActionIndex existing = actionIndexes.putIfAbsent(actionClass, index);
+			if (existing != null)
+				index = existing;
+		}
+		return index;
+	}
+
+	/**
+	 * 单个候选时参数可直接传入即可,重载时要求参数类型完全一致,其余情况交给InvokeUtils转换匹配
+	 */
+	private static MethodInvoker resolve(Candidate[][] arities, Object[] args) {
+		if (arities == null || args.length >= arities.length)
+			return null;
+		Candidate[] candidates = arities[args.length];
+		if (candidates == null)
+			return null;
+		if (candidates.length == 1)
+			return candidates[0].isApplicable(args) ? candidates[0].invoker : null;
+		for (Candidate candidate : candidates)
+			if (candidate.isExact(args))
+				return candidate.invoker;
+		return null;
+	}
+
+	/**
+	 * 存在以IActionCall开头的同名方法时保持原有顺序,交给InvokeUtils先尝试转换后的带call调用
+	 */
+	private static boolean acceptsCall(Candidate[][] arities, Object[] argsWithCall) {
+		if (arities == null || argsWithCall.length >= arities.length
+				|| arities[argsWithCall.length] == null)
+			return false;
+		for (Candidate candidate : arities[argsWithCall.length])
+			if (candidate.types[0].isInstance(argsWithCall[0]))
+				return true;
+		return false;
+	}
+
+	private static MethodInvoker findInvoker(Candidate[][] arities, Method method) {
+		if (arities != null) {
+			int arity = method.getParameterTypes().length;
+			if (arity < arities.length && arities[arity] != null)
+				for (Candidate candidate : arities[arity])
+					if (candidate.invoker.getMethod().equals(method))
+						return candidate.invoker;
+		}
+		return new MethodInvoker(method);
+	}
 }
\ No newline at end of file
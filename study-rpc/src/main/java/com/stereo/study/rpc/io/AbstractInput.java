@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
+import java.nio.ByteBuffer;
 
 abstract public class AbstractInput {
 
@@ -101,6 +102,19 @@ abstract public class AbstractInput {
 	abstract public int readBytes(byte[] buffer, int offset, int length)
 			throws IOException;
 
+	/**
+	 * 把一个完整的二进制值读入dst
+	 * 
+	 * @return 读入的字节数, null值返回-1
+	 */
+	public int readBytes(ByteBuffer dst) throws IOException {
+		byte[] bytes = readBytes();
+		if (bytes == null)
+			return -1;
+		dst.put(bytes);
+		return bytes.length;
+	}
+
 	abstract public Object readObject(Class expectedClass) throws IOException;
 
 	abstract public Object readObject() throws IOException;
@@ -427,6 +427,50 @@ abstract public class AbstractOutput {
 	 */
 	abstract public void writeListEnd() throws IOException;
 
+	/**
+	 * 写出int块. type为null时对应int[],否则为基本类型列表的类名.
+	 * 默认按普通列表逐个写出,不识别定长块的读取端也能读取
+	 */
+	public void writeIntBlock(int[] data, int length, String type)
+			throws IOException {
+		boolean hasEnd = writeListBegin(length, type != null ? type : "[int");
+
+		for (int i = 0; i < length; i++)
+			writeInt(data[i]);
+
+		if (hasEnd)
+			writeListEnd();
+	}
+
+	/**
+	 * 写出long块,同writeIntBlock
+	 */
+	public void writeLongBlock(long[] data, int length, String type)
+			throws IOException {
+		boolean hasEnd = writeListBegin(length, type != null ? type : "[long");
+
+		for (int i = 0; i < length; i++)
+			writeLong(data[i]);
+
+		if (hasEnd)
+			writeListEnd();
+	}
+
+	/**
+	 * 写出double块,同writeIntBlock
+	 */
+	public void writeDoubleBlock(double[] data, int length, String type)
+			throws IOException {
+		boolean hasEnd = writeListBegin(length, type != null ? type
+				: "[double");
+
+		for (int i = 0; i < length; i++)
+			writeDouble(data[i]);
+
+		if (hasEnd)
+			writeListEnd();
+	}
+
 	/**
 	 * Writes the map header to the stream. Map writers will call
 	 * <code>writeMapBegin</code> followed by the map contents and then call
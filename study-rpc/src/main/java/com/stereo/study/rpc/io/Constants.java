@@ -77,6 +77,15 @@ public interface Constants {
 
 	public static final int BC_REF = 0x51;
 
+	// 基本类型定长块: 0x40 类型 长度(int) 大端定长数据, 使用hessian 2保留的0x40
+	public static final int BC_PRIMITIVE_BLOCK = 0x40;
+	public static final int BLOCK_INT = 'I'; // int[]
+	public static final int BLOCK_LONG = 'L'; // long[]
+	public static final int BLOCK_DOUBLE = 'D'; // double[]
+	public static final int BLOCK_INT_LIST = 'i'; // IntList
+	public static final int BLOCK_LONG_LIST = 'l'; // LongList
+	public static final int BLOCK_DOUBLE_LIST = 'd'; // DoubleList
+
 	public static final int BC_STRING = 'S'; // final string
 	public static final int BC_STRING_CHUNK = 'R'; // non-final string
 
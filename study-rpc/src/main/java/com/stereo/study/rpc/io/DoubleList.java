@@ -0,0 +1,135 @@
+package com.stereo.study.rpc.io;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * 以double[]为存储的List,按double存取时不装箱.
+ * SerializerFactory开启基本类型块时整体写为定长块,读取端批量解码到double[]
+ *
+ * @author stereo
+ */
+public class DoubleList extends AbstractList<Double> implements RandomAccess,
+		Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private static final double[] EMPTY = new double[0];
+
+	private double[] _data;
+	private int _size;
+
+	public DoubleList() {
+		_data = EMPTY;
+	}
+
+	public DoubleList(int capacity) {
+		_data = capacity > 0 ? new double[capacity] : EMPTY;
+	}
+
+	/**
+	 * 直接包装数组,不复制
+	 */
+	public DoubleList(double[] data) {
+		this(data, data.length);
+	}
+
+	public DoubleList(double[] data, int size) {
+		if (size < 0 || size > data.length)
+			throw new IndexOutOfBoundsException("size " + size + " of "
+					+ data.length);
+		_data = data;
+		_size = size;
+	}
+
+	public double getDouble(int index) {
+		checkIndex(index);
+		return _data[index];
+	}
+
+	public double setDouble(int index, double value) {
+		checkIndex(index);
+		double old = _data[index];
+		_data[index] = value;
+		return old;
+	}
+
+	public void addDouble(double value) {
+		ensureCapacity(_size + 1);
+		_data[_size++] = value;
+		modCount++;
+	}
+
+	/**
+	 * 内部数组,只有前size()个元素有效
+	 */
+	public double[] elements() {
+		return _data;
+	}
+
+	public double[] toDoubleArray() {
+		return Arrays.copyOf(_data, _size);
+	}
+
+	public void ensureCapacity(int capacity) {
+		if (capacity > _data.length)
+			_data = Arrays.copyOf(_data,
+					Math.max(capacity, _data.length + (_data.length >> 1) + 8));
+	}
+
+	@Override
+	public Double get(int index) {
+		return getDouble(index);
+	}
+
+	@Override
+	public Double set(int index, Double value) {
+		return setDouble(index, value);
+	}
+
+	@Override
+	public boolean add(Double value) {
+		addDouble(value);
+		return true;
+	}
+
+	@Override
+	public void add(int index, Double value) {
+		if (index < 0 || index > _size)
+			throw new IndexOutOfBoundsException("index " + index + " size "
+					+ _size);
+		ensureCapacity(_size + 1);
+		System.arraycopy(_data, index, _data, index + 1, _size - index);
+		_data[index] = value;
+		_size++;
+		modCount++;
+	}
+
+	@Override
+	public Double remove(int index) {
+		checkIndex(index);
+		double old = _data[index];
+		System.arraycopy(_data, index + 1, _data, index, _size - index - 1);
+		_size--;
+		modCount++;
+		return old;
+	}
+
+	@Override
+	public void clear() {
+		_size = 0;
+		modCount++;
+	}
+
+	@Override
+	public int size() {
+		return _size;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= _size)
+			throw new IndexOutOfBoundsException("index " + index + " size "
+					+ _size);
+	}
+}
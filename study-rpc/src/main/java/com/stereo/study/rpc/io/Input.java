@@ -2,14 +2,20 @@ package com.stereo.study.rpc.io;
 
 import com.stereo.study.rpc.exc.ProtocolException;
 import com.stereo.study.rpc.exc.ServiceException;
+import com.stereo.study.rpc.io.deserializer.CollectionDeserializer;
 import com.stereo.study.rpc.io.deserializer.Deserializer;
 import com.stereo.study.rpc.io.factory.SerializerFactory;
 
 import java.io.*;
+import java.lang.reflect.Array;
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -29,6 +35,9 @@ public class Input extends AbstractInput implements Constants {
 	private static final int SIZE = 1024;
 	private static final int GAP = 16;
 
+	// 基本类型定长块初次分配和每次扩容的最小元素数
+	private static final int BLOCK_CHUNK = 8192;
+
 	protected SerializerFactory _defaultSerializerFactory;
 	protected SerializerFactory _serializerFactory;
 
@@ -47,7 +56,8 @@ public class Input extends AbstractInput implements Constants {
 	private String _method;
 	private Throwable _replyFault;
 
-	private StringBuilder _sbuf = new StringBuilder();
+	// 字符串解码的字符缓冲,按块长度扩容
+	private char[] _chars = new char[16];
 
 	private boolean _isLastChunk;
 	private int _chunkLength;
@@ -1729,13 +1739,7 @@ public class Input extends AbstractInput implements Constants {
 			_isLastChunk = tag == 'S';
 			_chunkLength = (read() << 8) + read();
 
-			_sbuf.setLength(0);
-			int ch;
-
-			while ((ch = parseChar()) >= 0)
-				_sbuf.append((char) ch);
-
-			return _sbuf.toString();
+			return parseStringValue();
 
 			// 0-byte string
 		case 0x00:
@@ -1774,13 +1778,7 @@ public class Input extends AbstractInput implements Constants {
 			_isLastChunk = true;
 			_chunkLength = tag - 0x00;
 
-			_sbuf.setLength(0);
-
-			while ((ch = parseChar()) >= 0) {
-				_sbuf.append((char) ch);
-			}
-
-			return _sbuf.toString();
+			return parseStringValue();
 
 		case 0x30:
 		case 0x31:
@@ -1789,12 +1787,7 @@ public class Input extends AbstractInput implements Constants {
 			_isLastChunk = true;
 			_chunkLength = (tag - 0x30) * 256 + read();
 
-			_sbuf.setLength(0);
-
-			while ((ch = parseChar()) >= 0)
-				_sbuf.append((char) ch);
-
-			return _sbuf.toString();
+			return parseStringValue();
 
 		default:
 			throw expect("string", tag);
@@ -1886,6 +1879,80 @@ public class Input extends AbstractInput implements Constants {
 		}
 	}
 
+	/**
+	 * 把一个完整的二进制值读入dst, 按块从内部缓冲区批量拷贝, 不分配中间byte[]
+	 * 
+	 * @return 读入的字节数, null值返回-1
+	 */
+	@Override
+	public int readBytes(ByteBuffer dst) throws IOException {
+		int tag = read();
+		if (tag == 'N')
+			return -1;
+
+		int readLength = 0;
+		while (true) {
+			boolean isLast;
+			int chunkLength;
+
+			// 分块之后的最后一块也可能是短格式
+			switch (tag) {
+			case BC_BINARY:
+			case BC_BINARY_CHUNK:
+				isLast = tag == BC_BINARY;
+				chunkLength = (read() << 8) + read();
+				break;
+
+			case 0x20:
+			case 0x21:
+			case 0x22:
+			case 0x23:
+			case 0x24:
+			case 0x25:
+			case 0x26:
+			case 0x27:
+			case 0x28:
+			case 0x29:
+			case 0x2a:
+			case 0x2b:
+			case 0x2c:
+			case 0x2d:
+			case 0x2e:
+			case 0x2f:
+				isLast = true;
+				chunkLength = tag - 0x20;
+				break;
+
+			case 0x34:
+			case 0x35:
+			case 0x36:
+			case 0x37:
+				isLast = true;
+				chunkLength = (tag - 0x34) * 256 + read();
+				break;
+
+			default:
+				throw expect("bytes", tag);
+			}
+
+			if (dst.remaining() < chunkLength)
+				throw error("binary data exceeds buffer capacity " + dst.capacity());
+			while (chunkLength > 0) {
+				if (_length <= _offset && !readBuffer())
+					throw new EOFException("unexpected end of binary data");
+				int sublen = Math.min(chunkLength, _length - _offset);
+				dst.put(_buffer, _offset, sublen);
+				_offset += sublen;
+				chunkLength -= sublen;
+				readLength += sublen;
+			}
+			if (isLast)
+				return readLength;
+
+			tag = read();
+		}
+	}
+
 	/**
 	 * Reads a byte from the stream.
 	 */
@@ -2263,6 +2330,17 @@ public class Input extends AbstractInput implements Constants {
 
 			return _refs.get(ref);
 		}
+
+		case BC_PRIMITIVE_BLOCK: {
+			int ref = _refs.size();
+			Object value = readPrimitiveBlock();
+			Object result = toBlockType(value, cl);
+
+			if (result != value)
+				setRef(ref, result);
+
+			return result;
+		}
 		}
 
 		if (tag >= 0)
@@ -2492,11 +2570,7 @@ public class Input extends AbstractInput implements Constants {
 			_isLastChunk = tag == 'S';
 			_chunkLength = (read() << 8) + read();
 
-			_sbuf.setLength(0);
-
-			parseString(_sbuf);
-
-			return _sbuf.toString();
+			return parseStringValue();
 		}
 
 		case 0x00:
@@ -2535,12 +2609,7 @@ public class Input extends AbstractInput implements Constants {
 			_isLastChunk = true;
 			_chunkLength = tag - 0x00;
 
-			int data;
-			_sbuf.setLength(0);
-
-			parseString(_sbuf);
-
-			return _sbuf.toString();
+			return parseStringValue();
 		}
 
 		case 0x30:
@@ -2550,11 +2619,7 @@ public class Input extends AbstractInput implements Constants {
 			_isLastChunk = true;
 			_chunkLength = (tag - 0x30) * 256 + read();
 
-			_sbuf.setLength(0);
-
-			parseString(_sbuf);
-
-			return _sbuf.toString();
+			return parseStringValue();
 		}
 
 		case BC_BINARY_CHUNK:
@@ -2745,6 +2810,9 @@ public class Input extends AbstractInput implements Constants {
 			return _refs.get(ref);
 		}
 
+		case BC_PRIMITIVE_BLOCK:
+			return readPrimitiveBlock();
+
 		default:
 			if (tag < 0)
 				throw new EOFException("readObject: unexpected end of file");
@@ -3109,20 +3177,82 @@ public class Input extends AbstractInput implements Constants {
 		throw new UnsupportedOperationException();
 	}
 
-	private void parseString(StringBuilder sbuf) throws IOException {
+	/**
+	 * 读取当前字符串的剩余部分(_isLastChunk/_chunkLength已设置).
+	 * 整串都在缓冲区内且全是ASCII时直接从缓冲区构造,只拷贝一次;
+	 * 否则逐块解码到_chars,缓冲区中字节足够时就地解码多字节字符,跨缓冲区边界的字符交给parseUTF8Char
+	 */
+	@SuppressWarnings("deprecation")
+	private String parseStringValue() throws IOException {
+		int length = _chunkLength;
+		int offset = _offset;
+
+		if (_isLastChunk && length <= _length - offset) {
+			byte[] buffer = _buffer;
+			int end = offset + length;
+			int i = offset;
+
+			while (i < end && buffer[i] >= 0)
+				i++;
+
+			if (i == end) {
+				_offset = end;
+				_chunkLength = 0;
+
+				// 高字节为0的构造不经过CharsetDecoder,每个字节直接成为一个char
+				return new String(buffer, 0, offset, length);
+			}
+		}
+
+		char[] chars = _chars;
+		int n = 0;
+
 		while (true) {
 			if (_chunkLength <= 0) {
 				if (!parseChunkLength())
-					return;
+					break;
+				continue;
 			}
 
-			int length = _chunkLength;
-			_chunkLength = 0;
+			if (chars.length - n < _chunkLength)
+				_chars = chars = Arrays.copyOf(chars, Math.max(chars.length * 2, n + _chunkLength));
+
+			byte[] buffer = _buffer;
+			int i = _offset;
+			// 3字节字符也完整在缓冲区内的范围
+			int limit = _length - 2;
+			int count = _chunkLength;
+
+			while (count > 0 && i < limit) {
+				int ch = buffer[i];
+
+				if (ch >= 0) {
+					chars[n++] = (char) ch;
+					i++;
+				} else if ((ch & 0xe0) == 0xc0) {
+					chars[n++] = (char) (((ch & 0x1f) << 6) + (buffer[i + 1] & 0x3f));
+					i += 2;
+				} else if ((ch & 0xf0) == 0xe0) {
+					chars[n++] = (char) (((ch & 0x0f) << 12) + ((buffer[i + 1] & 0x3f) << 6)
+							+ (buffer[i + 2] & 0x3f));
+					i += 3;
+				} else
+					break;
+
+				count--;
+			}
 
-			while (length-- > 0) {
-				sbuf.append((char) parseUTF8Char());
+			_offset = i;
+			_chunkLength = count;
+
+			// 缓冲区末尾的字符或非法字节
+			if (count > 0) {
+				_chunkLength--;
+				chars[n++] = (char) parseUTF8Char();
 			}
 		}
+
+		return new String(chars, 0, n);
 	}
 
 	/**
@@ -3425,6 +3555,171 @@ public class Input extends AbstractInput implements Constants {
 		return readLength;
 	}
 
+	/**
+	 * 读取基本类型定长块,数据整块从缓冲区解码到int[]/long[]/double[],不经过装箱
+	 */
+	private Object readPrimitiveBlock() throws IOException {
+		int kind = read();
+		int length = readInt();
+
+		if (length < 0)
+			throw error("invalid primitive block length " + length);
+
+		switch (kind) {
+		case BLOCK_INT:
+		case BLOCK_INT_LIST: {
+			int[] data = new int[Math.min(length, BLOCK_CHUNK)];
+
+			int offset = 0;
+			while (offset < length) {
+				if (offset == data.length)
+					data = Arrays.copyOf(data, growBlock(data.length, length));
+				int count = Math.min((_length - _offset) >> 2, data.length - offset);
+				if (count == 0) {
+					fillBlock();
+					continue;
+				}
+				ByteBuffer.wrap(_buffer, _offset, count << 2).asIntBuffer()
+						.get(data, offset, count);
+				_offset += count << 2;
+				offset += count;
+			}
+
+			// 块内只有数值,读完后登记引用与读之前的序号相同
+			Object value = kind == BLOCK_INT ? data : new IntList(data);
+			addRef(value);
+			return value;
+		}
+
+		case BLOCK_LONG:
+		case BLOCK_LONG_LIST: {
+			long[] data = new long[Math.min(length, BLOCK_CHUNK)];
+
+			int offset = 0;
+			while (offset < length) {
+				if (offset == data.length)
+					data = Arrays.copyOf(data, growBlock(data.length, length));
+				int count = Math.min((_length - _offset) >> 3, data.length - offset);
+				if (count == 0) {
+					fillBlock();
+					continue;
+				}
+				ByteBuffer.wrap(_buffer, _offset, count << 3).asLongBuffer()
+						.get(data, offset, count);
+				_offset += count << 3;
+				offset += count;
+			}
+
+			// 块内只有数值,读完后登记引用与读之前的序号相同
+			Object value = kind == BLOCK_LONG ? data : new LongList(data);
+			addRef(value);
+			return value;
+		}
+
+		case BLOCK_DOUBLE:
+		case BLOCK_DOUBLE_LIST: {
+			double[] data = new double[Math.min(length, BLOCK_CHUNK)];
+
+			int offset = 0;
+			while (offset < length) {
+				if (offset == data.length)
+					data = Arrays.copyOf(data, growBlock(data.length, length));
+				int count = Math.min((_length - _offset) >> 3, data.length - offset);
+				if (count == 0) {
+					fillBlock();
+					continue;
+				}
+				ByteBuffer.wrap(_buffer, _offset, count << 3).asDoubleBuffer()
+						.get(data, offset, count);
+				_offset += count << 3;
+				offset += count;
+			}
+
+			// 块内只有数值,读完后登记引用与读之前的序号相同
+			Object value = kind == BLOCK_DOUBLE ? data : new DoubleList(data);
+			addRef(value);
+			return value;
+		}
+
+		default:
+			throw error("unknown primitive block type 0x"
+					+ Integer.toHexString(kind));
+		}
+	}
+
+	/**
+	 * 定长块按实际读到的数据分段扩容,长度字段本身不决定分配大小,
+	 * 伪造的超大长度在数据不足时以EOF结束而不会先分配整块内存
+	 */
+	private static int growBlock(int capacity, int length) {
+		return (int) Math.min(length, Math.max((long) capacity << 1, BLOCK_CHUNK));
+	}
+
+	/**
+	 * 缓冲区剩余不足一个元素时读入更多数据
+	 */
+	private void fillBlock() throws IOException {
+		int available = _length - _offset;
+
+		if (!readBuffer() || _length - _offset == available)
+			throw new EOFException("primitive block: unexpected end of file");
+	}
+
+	/**
+	 * 把定长块转换为期望的类型: 数组和对应的基本类型列表互相转换,
+	 * 其它数组和集合类型按元素装箱转换
+	 */
+	private Object toBlockType(Object value, Class cl) throws IOException {
+		if (cl.isInstance(value))
+			return value;
+
+		List list;
+		if (value instanceof int[]) {
+			list = new IntList((int[]) value);
+		} else if (value instanceof long[]) {
+			list = new LongList((long[]) value);
+		} else if (value instanceof double[]) {
+			list = new DoubleList((double[]) value);
+		} else if (cl == int[].class && value instanceof IntList) {
+			return ((IntList) value).toIntArray();
+		} else if (cl == long[].class && value instanceof LongList) {
+			return ((LongList) value).toLongArray();
+		} else if (cl == double[].class && value instanceof DoubleList) {
+			return ((DoubleList) value).toDoubleArray();
+		} else
+			list = (List) value;
+
+		if (cl.isInstance(list))
+			return list;
+
+		try {
+			if (cl.isArray()) {
+				Object array = Array.newInstance(cl.getComponentType(),
+						list.size());
+
+				for (int i = 0; i < list.size(); i++)
+					Array.set(array, i, list.get(i));
+
+				return array;
+			}
+
+			Deserializer reader = findSerializerFactory().getDeserializer(cl);
+
+			if (reader instanceof CollectionDeserializer) {
+				Collection collection = ((CollectionDeserializer) reader)
+						.createList();
+				collection.addAll(list);
+
+				return collection;
+			}
+		} catch (IllegalArgumentException e) {
+			throw error("can't convert primitive block to " + cl.getName()
+					+ ": " + e);
+		}
+
+		throw error("can't convert primitive block to " + cl.getName());
+	}
+
 	/**
 	 * Normally, shouldn't be called externally, but needed for QA, e.g.
 	 * ejb/3b01.
@@ -3547,8 +3842,19 @@ public class Input extends AbstractInput implements Constants {
 			return new ProtocolException(message);
 	}
 
+	/**
+	 * 归还到池前调用: 清空引用表和读缓冲状态,表本身保留复用
+	 */
 	public void free() {
 		reset();
+
+		_is = null;
+		_offset = 0;
+		_length = 0;
+		_method = null;
+		_replyFault = null;
+		_isLastChunk = false;
+		_chunkLength = 0;
 	}
 
 	@Override
@@ -0,0 +1,135 @@
+package com.stereo.study.rpc.io;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * 以int[]为存储的List,按int存取时不装箱.
+ * SerializerFactory开启基本类型块时整体写为定长块,读取端批量解码到int[]
+ *
+ * @author stereo
+ */
+public class IntList extends AbstractList<Integer> implements RandomAccess,
+		Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private static final int[] EMPTY = new int[0];
+
+	private int[] _data;
+	private int _size;
+
+	public IntList() {
+		_data = EMPTY;
+	}
+
+	public IntList(int capacity) {
+		_data = capacity > 0 ? new int[capacity] : EMPTY;
+	}
+
+	/**
+	 * 直接包装数组,不复制
+	 */
+	public IntList(int[] data) {
+		this(data, data.length);
+	}
+
+	public IntList(int[] data, int size) {
+		if (size < 0 || size > data.length)
+			throw new IndexOutOfBoundsException("size " + size + " of "
+					+ data.length);
+		_data = data;
+		_size = size;
+	}
+
+	public int getInt(int index) {
+		checkIndex(index);
+		return _data[index];
+	}
+
+	public int setInt(int index, int value) {
+		checkIndex(index);
+		int old = _data[index];
+		_data[index] = value;
+		return old;
+	}
+
+	public void addInt(int value) {
+		ensureCapacity(_size + 1);
+		_data[_size++] = value;
+		modCount++;
+	}
+
+	/**
+	 * 内部数组,只有前size()个元素有效
+	 */
+	public int[] elements() {
+		return _data;
+	}
+
+	public int[] toIntArray() {
+		return Arrays.copyOf(_data, _size);
+	}
+
+	public void ensureCapacity(int capacity) {
+		if (capacity > _data.length)
+			_data = Arrays.copyOf(_data,
+					Math.max(capacity, _data.length + (_data.length >> 1) + 8));
+	}
+
+	@Override
+	public Integer get(int index) {
+		return getInt(index);
+	}
+
+	@Override
+	public Integer set(int index, Integer value) {
+		return setInt(index, value);
+	}
+
+	@Override
+	public boolean add(Integer value) {
+		addInt(value);
+		return true;
+	}
+
+	@Override
+	public void add(int index, Integer value) {
+		if (index < 0 || index > _size)
+			throw new IndexOutOfBoundsException("index " + index + " size "
+					+ _size);
+		ensureCapacity(_size + 1);
+		System.arraycopy(_data, index, _data, index + 1, _size - index);
+		_data[index] = value;
+		_size++;
+		modCount++;
+	}
+
+	@Override
+	public Integer remove(int index) {
+		checkIndex(index);
+		int old = _data[index];
+		System.arraycopy(_data, index + 1, _data, index, _size - index - 1);
+		_size--;
+		modCount++;
+		return old;
+	}
+
+	@Override
+	public void clear() {
+		_size = 0;
+		modCount++;
+	}
+
+	@Override
+	public int size() {
+		return _size;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= _size)
+			throw new IndexOutOfBoundsException("index " + index + " size "
+					+ _size);
+	}
+}
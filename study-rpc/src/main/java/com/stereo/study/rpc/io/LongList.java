@@ -0,0 +1,135 @@
+package com.stereo.study.rpc.io;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * 以long[]为存储的List,按long存取时不装箱.
+ * SerializerFactory开启基本类型块时整体写为定长块,读取端批量解码到long[]
+ *
+ * @author stereo
+ */
+public class LongList extends AbstractList<Long> implements RandomAccess,
+		Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private static final long[] EMPTY = new long[0];
+
+	private long[] _data;
+	private int _size;
+
+	public LongList() {
+		_data = EMPTY;
+	}
+
+	public LongList(int capacity) {
+		_data = capacity > 0 ? new long[capacity] : EMPTY;
+	}
+
+	/**
+	 * 直接包装数组,不复制
+	 */
+	public LongList(long[] data) {
+		this(data, data.length);
+	}
+
+	public LongList(long[] data, int size) {
+		if (size < 0 || size > data.length)
+			throw new IndexOutOfBoundsException("size " + size + " of "
+					+ data.length);
+		_data = data;
+		_size = size;
+	}
+
+	public long getLong(int index) {
+		checkIndex(index);
+		return _data[index];
+	}
+
+	public long setLong(int index, long value) {
+		checkIndex(index);
+		long old = _data[index];
+		_data[index] = value;
+		return old;
+	}
+
+	public void addLong(long value) {
+		ensureCapacity(_size + 1);
+		_data[_size++] = value;
+		modCount++;
+	}
+
+	/**
+	 * 内部数组,只有前size()个元素有效
+	 */
+	public long[] elements() {
+		return _data;
+	}
+
+	public long[] toLongArray() {
+		return Arrays.copyOf(_data, _size);
+	}
+
+	public void ensureCapacity(int capacity) {
+		if (capacity > _data.length)
+			_data = Arrays.copyOf(_data,
+					Math.max(capacity, _data.length + (_data.length >> 1) + 8));
+	}
+
+	@Override
+	public Long get(int index) {
+		return getLong(index);
+	}
+
+	@Override
+	public Long set(int index, Long value) {
+		return setLong(index, value);
+	}
+
+	@Override
+	public boolean add(Long value) {
+		addLong(value);
+		return true;
+	}
+
+	@Override
+	public void add(int index, Long value) {
+		if (index < 0 || index > _size)
+			throw new IndexOutOfBoundsException("index " + index + " size "
+					+ _size);
+		ensureCapacity(_size + 1);
+		System.arraycopy(_data, index, _data, index + 1, _size - index);
+		_data[index] = value;
+		_size++;
+		modCount++;
+	}
+
+	@Override
+	public Long remove(int index) {
+		checkIndex(index);
+		long old = _data[index];
+		System.arraycopy(_data, index + 1, _data, index, _size - index - 1);
+		_size--;
+		modCount++;
+		return old;
+	}
+
+	@Override
+	public void clear() {
+		_size = 0;
+		modCount++;
+	}
+
+	@Override
+	public int size() {
+		return _size;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= _size)
+			throw new IndexOutOfBoundsException("index " + index + " size "
+					+ _size);
+	}
+}
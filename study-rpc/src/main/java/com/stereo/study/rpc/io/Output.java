@@ -1,11 +1,14 @@
 package com.stereo.study.rpc.io;
 
+import com.stereo.study.rpc.exc.ProtocolException;
+import com.stereo.study.rpc.io.factory.SerializerFactory;
 import com.stereo.study.rpc.io.serializer.Serializer;
 import com.stereo.study.rpc.utils.IdentityIntMap;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 
 /**
@@ -35,6 +38,10 @@ public class Output extends AbstractOutput implements Constants {
 
 	private boolean _isUnshared;
 
+	// 不跟踪引用时的嵌套深度和上限
+	private int _depth;
+	private int _unsharedDepthLimit = SerializerFactory.DEFAULT_UNSHARED_DEPTH_LIMIT;
+
 	public Output() {
 	}
 
@@ -63,6 +70,25 @@ public class Output extends AbstractOutput implements Constants {
 		return _isCloseStreamOnClose;
 	}
 
+	/**
+	 * 工厂设置为不跟踪引用时,该Output默认不跟踪引用
+	 */
+	@Override
+	public void setSerializerFactory(SerializerFactory factory) {
+		super.setSerializerFactory(factory);
+
+		_isUnshared = isFactoryUnshared();
+		if (factory != null)
+			_unsharedDepthLimit = factory.getUnsharedDepthLimit();
+	}
+
+	private boolean isFactoryUnshared() {
+		return _serializerFactory != null && _serializerFactory.isUnshared();
+	}
+
+	/**
+	 * 单次调用的不跟踪引用模式,返回原来的设置用于恢复
+	 */
 	public boolean setUnshared(boolean isUnshared) {
 		boolean oldIsUnshared = _isUnshared;
 
@@ -327,7 +353,39 @@ public class Output extends AbstractOutput implements Constants {
 		}
 		Serializer serializer = findSerializerFactory().getObjectSerializer(
 				object.getClass());
-		serializer.writeObject(object, this);
+
+		if (!_isUnshared || _unsharedDepthLimit <= 0) {
+			serializer.writeObject(object, this);
+			return;
+		}
+
+		// 不跟踪引用时循环引用会无限递归,用嵌套深度兜底
+		if (++_depth > _unsharedDepthLimit) {
+			_depth = 0;
+			throw new ProtocolException("object graph deeper than "
+					+ _unsharedDepthLimit + " in unshared mode, possible cycle at "
+					+ object.getClass().getName());
+		}
+
+		try {
+			serializer.writeObject(object, this);
+		} finally {
+			if (_depth > 0)
+				_depth--;
+		}
+	}
+
+	/**
+	 * 不跟踪引用写出一个对象图
+	 */
+	public void writeObjectUnshared(Object object) throws IOException {
+		boolean oldUnshared = setUnshared(true);
+
+		try {
+			writeObject(object);
+		} finally {
+			setUnshared(oldUnshared);
+		}
 	}
 
 	/**
@@ -1006,6 +1064,86 @@ public class Output extends AbstractOutput implements Constants {
 		}
 	}
 
+	/**
+	 * 写出int定长块,数据按大端4字节整块拷贝进缓冲区
+	 * 
+	 * <code><pre>
+	 * x40 ('I' | 'i') length b3 b2 b1 b0 ...
+	 * </pre></code>
+	 */
+	@Override
+	public void writeIntBlock(int[] data, int length, String type)
+			throws IOException {
+		writeBlockBegin(type == null ? BLOCK_INT : BLOCK_INT_LIST, length);
+
+		int offset = 0;
+		while (offset < length) {
+			int count = Math.min((SIZE - _offset) >> 2, length - offset);
+			if (count == 0) {
+				flushBuffer();
+				continue;
+			}
+			ByteBuffer.wrap(_buffer, _offset, count << 2).asIntBuffer()
+					.put(data, offset, count);
+			_offset += count << 2;
+			offset += count;
+		}
+	}
+
+	/**
+	 * 写出long定长块,大端8字节
+	 */
+	@Override
+	public void writeLongBlock(long[] data, int length, String type)
+			throws IOException {
+		writeBlockBegin(type == null ? BLOCK_LONG : BLOCK_LONG_LIST, length);
+
+		int offset = 0;
+		while (offset < length) {
+			int count = Math.min((SIZE - _offset) >> 3, length - offset);
+			if (count == 0) {
+				flushBuffer();
+				continue;
+			}
+			ByteBuffer.wrap(_buffer, _offset, count << 3).asLongBuffer()
+					.put(data, offset, count);
+			_offset += count << 3;
+			offset += count;
+		}
+	}
+
+	/**
+	 * 写出double定长块,IEEE 754大端8字节
+	 */
+	@Override
+	public void writeDoubleBlock(double[] data, int length, String type)
+			throws IOException {
+		writeBlockBegin(type == null ? BLOCK_DOUBLE : BLOCK_DOUBLE_LIST,
+				length);
+
+		int offset = 0;
+		while (offset < length) {
+			int count = Math.min((SIZE - _offset) >> 3, length - offset);
+			if (count == 0) {
+				flushBuffer();
+				continue;
+			}
+			ByteBuffer.wrap(_buffer, _offset, count << 3).asDoubleBuffer()
+					.put(data, offset, count);
+			_offset += count << 3;
+			offset += count;
+		}
+	}
+
+	private void writeBlockBegin(int kind, int length) throws IOException {
+		if (SIZE < _offset + 16)
+			flushBuffer();
+
+		_buffer[_offset++] = (byte) BC_PRIMITIVE_BLOCK;
+		_buffer[_offset++] = (byte) kind;
+		writeInt(length);
+	}
+
 	/**
 	 * Writes a byte buffer to the stream.
 	 * 
@@ -1446,10 +1584,12 @@ public class Output extends AbstractOutput implements Constants {
 		}
 
 		_classRefs.clear();
-		_typeRefs = null;
+		if (_typeRefs != null)
+			_typeRefs.clear();
 		_offset = 0;
 		_isPacket = false;
-		_isUnshared = false;
+		_isUnshared = isFactoryUnshared();
+		_depth = 0;
 	}
 
 	class BytesOutputStream extends OutputStream {
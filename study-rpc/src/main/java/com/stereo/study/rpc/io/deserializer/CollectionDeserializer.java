@@ -2,6 +2,9 @@ package com.stereo.study.rpc.io.deserializer;
 
 import com.stereo.study.rpc.exc.IOExceptionWrapper;
 import com.stereo.study.rpc.io.AbstractInput;
+import com.stereo.study.rpc.io.DoubleList;
+import com.stereo.study.rpc.io.IntList;
+import com.stereo.study.rpc.io.LongList;
 
 import java.io.IOException;
 import java.util.*;
@@ -40,13 +43,34 @@ public class CollectionDeserializer extends AbstractListDeserializer {
 
 		in.addRef(list);
 
-		for (; length > 0; length--)
-			list.add(in.readObject());
+		// 基本类型列表按普通列表写出时,元素直接读为基本类型
+		if (list instanceof IntList) {
+			IntList ints = (IntList) list;
+			ints.ensureCapacity(length);
+			for (; length > 0; length--)
+				ints.addInt(in.readInt());
+		} else if (list instanceof LongList) {
+			LongList longs = (LongList) list;
+			longs.ensureCapacity(length);
+			for (; length > 0; length--)
+				longs.addLong(in.readLong());
+		} else if (list instanceof DoubleList) {
+			DoubleList doubles = (DoubleList) list;
+			doubles.ensureCapacity(length);
+			for (; length > 0; length--)
+				doubles.addDouble(in.readDouble());
+		} else {
+			for (; length > 0; length--)
+				list.add(in.readObject());
+		}
 
 		return list;
 	}
 
-	private Collection createList() throws IOException {
+	/**
+	 * 创建目标类型的集合,接口和无法实例化的类型使用对应的默认实现
+	 */
+	public Collection createList() throws IOException {
 		Collection list = null;
 
 		if (_type == null)
@@ -0,0 +1,256 @@
+package com.stereo.study.rpc.io.deserializer;
+
+import com.stereo.study.rpc.exc.IOExceptionWrapper;
+import com.stereo.study.rpc.io.AbstractInput;
+import sun.misc.Unsafe;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 字节码生成的反序列化器基类
+ * 子类由SerializerGenerator生成两个方法: readInstance按声明顺序直接读全部字段,
+ * readField按字段序号读单个字段.对端字段顺序与本地一致时(同一个类)走readInstance
+ *
+ * @author stereo
+ */
+public abstract class GeneratedDeserializer extends AbstractMapDeserializer {
+
+	private static final Logger log = Logger.getLogger(GeneratedDeserializer.class
+			.getName());
+
+	protected static final Unsafe UNSAFE;
+
+	// 对端有而本地没有的字段
+	private static final Integer UNKNOWN_FIELD = -1;
+
+	private Class<?> _type;
+	private Class<?>[] _fieldTypes;
+	private Integer[] _fieldIndexes;
+	private HashMap<String, Integer> _fieldMap;
+	private Method _readResolve;
+
+	public static boolean isEnabled() {
+		return UNSAFE != null;
+	}
+
+	/**
+	 * 生成器把字段偏移写成常量
+	 */
+	public static long fieldOffset(Field field) {
+		return UNSAFE.objectFieldOffset(field);
+	}
+
+	/**
+	 * 生成类只有无参构造,实例化后由生成器初始化
+	 */
+	public void init(Class<?> type, Field[] fields) {
+		_type = type;
+		_fieldTypes = new Class<?>[fields.length];
+		_fieldIndexes = new Integer[fields.length];
+		_fieldMap = new HashMap<String, Integer>();
+		for (int i = 0; i < fields.length; i++) {
+			_fieldTypes[i] = fields[i].getType();
+			_fieldIndexes[i] = i;
+			// 子类字段在前,同名时以子类为准
+			if (!_fieldMap.containsKey(fields[i].getName()))
+				_fieldMap.put(fields[i].getName(), _fieldIndexes[i]);
+		}
+		_readResolve = getReadResolve(type);
+		if (_readResolve != null)
+			_readResolve.setAccessible(true);
+	}
+
+	@Override
+	public Class<?> getType() {
+		return _type;
+	}
+
+	@Override
+	public boolean isReadResolve() {
+		return _readResolve != null;
+	}
+
+	@Override
+	public Object[] createFields(int len) {
+		return new Integer[len];
+	}
+
+	@Override
+	public Object createField(String name) {
+		Integer index = _fieldMap.get(name);
+
+		return index != null ? index : UNKNOWN_FIELD;
+	}
+
+	public Object readMap(AbstractInput in) throws IOException {
+		try {
+			Object obj = instantiate();
+			int ref = in.addRef(obj);
+
+			while (!in.isEnd()) {
+				Integer index = _fieldMap.get(in.readObject());
+
+				if (index != null)
+					readField(in, obj, index);
+				else
+					in.readObject();
+			}
+
+			in.readMapEnd();
+
+			return resolve(in, obj, ref);
+		} catch (IOException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOExceptionWrapper(
+					_type.getName() + ":" + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public Object readObject(AbstractInput in, Object[] fields)
+			throws IOException {
+		try {
+			Object obj = instantiate();
+			int ref = in.addRef(obj);
+
+			if (isDeclaredOrder(fields))
+				readInstance(in, obj);
+			else {
+				for (int i = 0; i < fields.length; i++)
+					readField(in, obj, (Integer) fields[i]);
+			}
+
+			return resolve(in, obj, ref);
+		} catch (IOException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOExceptionWrapper(
+					_type.getName() + ":" + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public Object readObject(AbstractInput in, String[] fieldNames)
+			throws IOException {
+		Object[] fields = createFields(fieldNames.length);
+
+		for (int i = 0; i < fieldNames.length; i++)
+			fields[i] = createField(fieldNames[i]);
+
+		return readObject(in, fields);
+	}
+
+	/**
+	 * createField返回的是缓存的Integer,按引用比较即可
+	 */
+	private boolean isDeclaredOrder(Object[] fields) {
+		Integer[] indexes = _fieldIndexes;
+
+		if (fields.length != indexes.length)
+			return false;
+
+		for (int i = 0; i < fields.length; i++) {
+			if (fields[i] != indexes[i])
+				return false;
+		}
+
+		return true;
+	}
+
+	private Object resolve(AbstractInput in, Object obj, int ref)
+			throws Exception {
+		if (_readResolve == null)
+			return obj;
+
+		Object resolve;
+
+		try {
+			resolve = _readResolve.invoke(obj, new Object[0]);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			else
+				throw e;
+		}
+
+		if (obj != resolve)
+			in.setRef(ref, resolve);
+
+		return resolve;
+	}
+
+	/**
+	 * Returns the readResolve method
+	 */
+	protected Method getReadResolve(Class<?> cl) {
+		for (; cl != null; cl = cl.getSuperclass()) {
+			Method[] methods = cl.getDeclaredMethods();
+
+			for (int i = 0; i < methods.length; i++) {
+				Method method = methods[i];
+
+				if (method.getName().equals("readResolve")
+						&& method.getParameterTypes().length == 0)
+					return method;
+			}
+		}
+
+		return null;
+	}
+
+	protected Object instantiate() throws Exception {
+		return UNSAFE.allocateInstance(_type);
+	}
+
+	/**
+	 * 生成代码读取对象字段时用于确定期望类型
+	 */
+	protected final Class<?> fieldType(int index) {
+		return _fieldTypes[index];
+	}
+
+	/**
+	 * 按声明顺序读全部字段
+	 */
+	protected abstract void readInstance(AbstractInput in, Object obj)
+			throws Exception;
+
+	/**
+	 * 读第index个字段,index为-1时丢弃该值
+	 */
+	protected abstract void readField(AbstractInput in, Object obj, int index)
+			throws Exception;
+
+	static {
+		Unsafe unsafe = null;
+
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field theUnsafe = null;
+			for (Field field : unsafeClass.getDeclaredFields()) {
+				if (field.getName().equals("theUnsafe"))
+					theUnsafe = field;
+			}
+
+			if (theUnsafe != null) {
+				theUnsafe.setAccessible(true);
+				unsafe = (Unsafe) theUnsafe.get(null);
+			}
+		} catch (Throwable e) {
+			log.log(Level.FINER, e.toString(), e);
+		}
+
+		UNSAFE = unsafe;
+	}
+}
@@ -8,6 +8,7 @@ import com.stereo.study.rpc.io.Output;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 /**
@@ -26,6 +27,12 @@ public class IOFactory {
 	private final FreeList<Input> _freeRPCInput = new FreeList<Input>(32);
 	private final FreeList<Output> _freeRPCOutput = new FreeList<Output>(32);
 
+	// 池命中统计
+	private final AtomicLong _inputHits = new AtomicLong();
+	private final AtomicLong _inputMisses = new AtomicLong();
+	private final AtomicLong _outputHits = new AtomicLong();
+	private final AtomicLong _outputMisses = new AtomicLong();
+
 	private final FreeList<GeneralInput> _freeRPCGenInput = new FreeList<GeneralInput>(
 			32);
 	private final FreeList<GeneralOutput> _freeRPCGenOutput = new FreeList<GeneralOutput>(
@@ -56,9 +63,12 @@ public class IOFactory {
 	public Input createRPCInput() {
 		Input in = _freeRPCInput.allocate();
 		if (in == null) {
+			_inputMisses.incrementAndGet();
 			in = new Input();
-			in.setSerializerFactory(getSerializerFactory());
-		}
+		} else
+			_inputHits.incrementAndGet();
+		// 上次使用者可能换过SerializerFactory
+		in.setSerializerFactory(getSerializerFactory());
 		return in;
 	}
 
@@ -71,9 +81,11 @@ public class IOFactory {
 	public Output createRPCOutput() {
 		Output out = _freeRPCOutput.allocate();
 		if (out == null) {
+			_outputMisses.incrementAndGet();
 			out = new Output();
-			out.setSerializerFactory(getSerializerFactory());
-		}
+		} else
+			_outputHits.incrementAndGet();
+		out.setSerializerFactory(getSerializerFactory());
 		return out;
 	}
 
@@ -90,4 +102,33 @@ public class IOFactory {
 		out.free();
 		_freeRPCOutput.free(out);
 	}
+
+	/**
+	 * 从池中取到Input的次数
+	 */
+	public long getInputPoolHits() {
+		return _inputHits.get();
+	}
+
+	/**
+	 * 池空时新建Input的次数
+	 */
+	public long getInputPoolMisses() {
+		return _inputMisses.get();
+	}
+
+	public long getOutputPoolHits() {
+		return _outputHits.get();
+	}
+
+	public long getOutputPoolMisses() {
+		return _outputMisses.get();
+	}
+
+	@Override
+	public String toString() {
+		return "IOFactory[input hits=" + _inputHits.get() + " misses="
+				+ _inputMisses.get() + ", output hits=" + _outputHits.get()
+				+ " misses=" + _outputMisses.get() + "]";
+	}
 }
\ No newline at end of file
@@ -30,6 +30,9 @@ public class SerializerFactory extends AbstractSerializerFactory {
 	private static final Deserializer OBJECT_DESERIALIZER = new BasicDeserializer(
 			BasicDeserializer.OBJECT);
 
+	// 不跟踪引用时默认的嵌套深度上限
+	public static final int DEFAULT_UNSHARED_DEPTH_LIMIT = 512;
+
 	private static final ClassLoader _systemClassLoader;
 
 	private static final HashMap _staticTypeMap;
@@ -55,6 +58,10 @@ public class SerializerFactory extends AbstractSerializerFactory {
 	private boolean _isAllowNonSerializable;
 	private boolean _isEnableUnsafeSerializer = (UnsafeSerializer.isEnabled() && UnsafeDeserializer
 			.isEnabled());
+	private boolean _isEnableGeneratedSerializer;
+	private boolean _isUnshared;
+	private boolean _isPrimitiveBlock;
+	private int _unsharedDepthLimit = DEFAULT_UNSHARED_DEPTH_LIMIT;
 
 	public SerializerFactory() {
 		this(Thread.currentThread().getContextClassLoader());
@@ -129,6 +136,70 @@ public class SerializerFactory extends AbstractSerializerFactory {
 		return _isAllowNonSerializable;
 	}
 
+	/**
+	 * 不跟踪对象引用: 同一对象出现多次时重复写出,不支持循环引用.
+	 * 适用于无共享引用的DTO,省去每个对象的引用表开销,对使用该工厂的所有Output生效
+	 */
+	public void setUnshared(boolean isUnshared) {
+		_isUnshared = isUnshared;
+	}
+
+	public boolean isUnshared() {
+		return _isUnshared;
+	}
+
+	/**
+	 * 不跟踪引用时对象嵌套深度上限,超过时视为循环引用报错,0为不检查
+	 */
+	public void setUnsharedDepthLimit(int unsharedDepthLimit) {
+		_unsharedDepthLimit = unsharedDepthLimit;
+	}
+
+	public int getUnsharedDepthLimit() {
+		return _unsharedDepthLimit;
+	}
+
+	/**
+	 * int[]/long[]/double[]和IntList/LongList/DoubleList写为定长块,读取端整块解码不装箱.
+	 * 与对端之间没有协商: 开启后无论对端版本都直接写出定长块,旧版本读取端遇到保留字节码0x40会解析失败,
+	 * 只有确认所有读取端都已升级时才能开启
+	 */
+	public void setPrimitiveBlock(boolean isPrimitiveBlock) {
+		if (_isPrimitiveBlock != isPrimitiveBlock) {
+			_isPrimitiveBlock = isPrimitiveBlock;
+			// 已缓存的数组序列化器随之失效
+			_cachedSerializerMap = null;
+		}
+	}
+
+	public boolean isPrimitiveBlock() {
+		return _isPrimitiveBlock;
+	}
+
+	/**
+	 * 普通bean使用javassist生成的专用序列化器/反序列化器,生成失败的类型退回原有方式.
+	 * 运行环境没有Unsafe时设置无效
+	 */
+	public void setEnableGeneratedSerializer(boolean isEnable) {
+		_isEnableGeneratedSerializer = isEnable && SerializerGenerator.isEnabled();
+	}
+
+	public boolean isEnableGeneratedSerializer() {
+		return _isEnableGeneratedSerializer;
+	}
+
+	/**
+	 * 普通bean使用UnsafeSerializer/UnsafeDeserializer.
+	 * 默认关闭(UnsafeSerializer.isEnabled()恒为false),这里显式打开,运行环境没有Unsafe时设置无效
+	 */
+	public void setEnableUnsafeSerializer(boolean isEnable) {
+		_isEnableUnsafeSerializer = isEnable && UnsafeDeserializer.isEnabled();
+	}
+
+	public boolean isEnableUnsafeSerializer() {
+		return _isEnableUnsafeSerializer;
+	}
+
 	/**
 	 * Returns the serializer for a class.
 	 * 
@@ -191,6 +262,9 @@ public class SerializerFactory extends AbstractSerializerFactory {
 				return serializer;
 		}
 
+		if (_isPrimitiveBlock && PrimitiveBlockSerializer.isSupported(cl))
+			return PrimitiveBlockSerializer.SER;
+
 		serializer = _contextFactory.getSerializer(cl.getName());
 
 		if (serializer != null)
@@ -280,6 +354,14 @@ public class SerializerFactory extends AbstractSerializerFactory {
 					+ " must implement java.io.Serializable");
 		}
 
+		if (_isEnableGeneratedSerializer
+				&& JavaSerializer.getWriteReplace(cl) == null) {
+			Serializer serializer = SerializerGenerator.getSerializer(cl);
+
+			if (serializer != null)
+				return serializer;
+		}
+
 		if (_isEnableUnsafeSerializer
 				&& JavaSerializer.getWriteReplace(cl) == null) {
 			return UnsafeSerializer.create(cl);
@@ -414,6 +496,13 @@ public class SerializerFactory extends AbstractSerializerFactory {
 		if (InputStream.class.equals(cl))
 			return InputStreamDeserializer.DESER;
 
+		if (_isEnableGeneratedSerializer) {
+			Deserializer deserializer = SerializerGenerator.getDeserializer(cl);
+
+			if (deserializer != null)
+				return deserializer;
+		}
+
 		if (_isEnableUnsafeSerializer) {
 			return new UnsafeDeserializer(cl);
 		} else
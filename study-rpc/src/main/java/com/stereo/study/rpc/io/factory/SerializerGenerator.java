@@ -0,0 +1,347 @@
+package com.stereo.study.rpc.io.factory;
+
+import com.stereo.study.rpc.io.deserializer.GeneratedDeserializer;
+import com.stereo.study.rpc.io.serializer.GeneratedSerializer;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 用javassist为每个bean类型生成专用的序列化器和反序列化器
+ * 生成的方法逐字段展开,字段偏移写成常量,通过Unsafe直接读写.
+ * 结果挂在ClassValue上,查找不加锁,随bean类一起回收;生成类定义在按bean所属ClassLoader划分的子加载器中.
+ * 不能生成时返回null,由调用方退回反射或Unsafe方式
+ *
+ * @author stereo
+ */
+public final class SerializerGenerator {
+
+	private static final Logger log = Logger.getLogger(SerializerGenerator.class
+			.getName());
+
+	private static final String PACKAGE = "com.stereo.study.rpc.io.generated.";
+
+	private static final String OUTPUT = "com.stereo.study.rpc.io.AbstractOutput";
+
+	private static final String INPUT = "com.stereo.study.rpc.io.AbstractInput";
+
+	private static final AtomicInteger COUNTER = new AtomicInteger();
+
+	private static final ClassValue<Generated> SERIALIZERS = new ClassValue<Generated>() {
+		@Override
+		protected Generated computeValue(Class<?> type) {
+			return new Generated(generateSerializer(type));
+		}
+	};
+
+	private static final ClassValue<Generated> DESERIALIZERS = new ClassValue<Generated>() {
+		@Override
+		protected Generated computeValue(Class<?> type) {
+			return new Generated(generateDeserializer(type));
+		}
+	};
+
+	// bean的ClassLoader -> 生成类的加载器,只在生成时访问
+	private static final WeakHashMap<ClassLoader, GeneratedClassLoader> _loaderMap = new WeakHashMap<ClassLoader, GeneratedClassLoader>();
+
+	private static ClassPool _pool;
+
+	private SerializerGenerator() {
+	}
+
+	public static boolean isEnabled() {
+		return GeneratedSerializer.isEnabled() && GeneratedDeserializer.isEnabled();
+	}
+
+	/**
+	 * 取cl的生成序列化器,不能生成时返回null
+	 */
+	public static GeneratedSerializer getSerializer(Class<?> cl) {
+		if (!isSupported(cl))
+			return null;
+
+		return (GeneratedSerializer) SERIALIZERS.get(cl).value;
+	}
+
+	/**
+	 * 取cl的生成反序列化器,不能生成时返回null
+	 */
+	public static GeneratedDeserializer getDeserializer(Class<?> cl) {
+		if (!isSupported(cl))
+			return null;
+
+		return (GeneratedDeserializer) DESERIALIZERS.get(cl).value;
+	}
+
+	private static boolean isSupported(Class<?> cl) {
+		return isEnabled() && !cl.isInterface() && !cl.isArray()
+				&& !cl.isPrimitive() && !Modifier.isAbstract(cl.getModifiers());
+	}
+
+	/**
+	 * 字段顺序与UnsafeSerializer一致: 基本类型和java.lang类型在前,其余在后,包含父类字段
+	 */
+	static Field[] getFields(Class<?> cl) {
+		ArrayList<Field> primitiveFields = new ArrayList<Field>();
+		ArrayList<Field> compoundFields = new ArrayList<Field>();
+
+		for (; cl != null; cl = cl.getSuperclass()) {
+			Field[] fields = cl.getDeclaredFields();
+			for (int i = 0; i < fields.length; i++) {
+				Field field = fields[i];
+
+				if (Modifier.isTransient(field.getModifiers())
+						|| Modifier.isStatic(field.getModifiers()))
+					continue;
+
+				if (field.getType().isPrimitive()
+						|| (field.getType().getName().startsWith("java.lang.") && !field
+								.getType().equals(Object.class)))
+					primitiveFields.add(field);
+				else
+					compoundFields.add(field);
+			}
+		}
+
+		ArrayList<Field> fields = new ArrayList<Field>();
+		fields.addAll(primitiveFields);
+		fields.addAll(compoundFields);
+
+		return fields.toArray(new Field[fields.size()]);
+	}
+
+	private static Object generateSerializer(Class<?> cl) {
+		try {
+			Field[] fields = getFields(cl);
+			String[] fieldNames = new String[fields.length];
+			for (int i = 0; i < fields.length; i++)
+				fieldNames[i] = fields[i].getName();
+
+			String[] methods = {
+					"protected void writeInstance(Object obj, " + OUTPUT + " out) throws java.io.IOException {\n"
+							+ writeSource(fields, false) + "}",
+					"protected void writeNamedInstance(Object obj, " + OUTPUT + " out) throws java.io.IOException {\n"
+							+ writeSource(fields, true) + "}"
+			};
+			GeneratedSerializer serializer = (GeneratedSerializer) define(cl,
+					GeneratedSerializer.class, "Serializer", methods);
+			serializer.init(cl, fieldNames);
+
+			return serializer;
+		} catch (Throwable e) {
+			log.log(Level.WARNING, "generate serializer for " + cl.getName() + " failed: " + e, e);
+
+			return null;
+		}
+	}
+
+	private static Object generateDeserializer(Class<?> cl) {
+		try {
+			Field[] fields = getFields(cl);
+
+			String[] methods = {
+					"protected void readInstance(" + INPUT + " in, Object obj) throws Exception {\n"
+							+ readInstanceSource(fields) + "}",
+					"protected void readField(" + INPUT + " in, Object obj, int index) throws Exception {\n"
+							+ readFieldSource(fields) + "}"
+			};
+			GeneratedDeserializer deserializer = (GeneratedDeserializer) define(cl,
+					GeneratedDeserializer.class, "Deserializer", methods);
+			deserializer.init(cl, fields);
+
+			return deserializer;
+		} catch (Throwable e) {
+			log.log(Level.WARNING, "generate deserializer for " + cl.getName() + " failed: " + e, e);
+
+			return null;
+		}
+	}
+
+	static String writeSource(Field[] fields, boolean isNamed) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("sun.misc.Unsafe u = ").append(GeneratedSerializer.class.getName()).append(".UNSAFE;\n");
+
+		for (int i = 0; i < fields.length; i++) {
+			Field field = fields[i];
+			Class<?> type = field.getType();
+			String offset = GeneratedSerializer.fieldOffset(field) + "L";
+
+			if (isNamed)
+				sb.append("out.writeString(\"").append(field.getName()).append("\");\n");
+
+			if (boolean.class.equals(type))
+				sb.append("out.writeBoolean(u.getBoolean(obj, ").append(offset).append("));\n");
+			else if (byte.class.equals(type))
+				sb.append("out.writeInt((int) u.getByte(obj, ").append(offset).append("));\n");
+			else if (char.class.equals(type))
+				sb.append("out.writeString(String.valueOf(u.getChar(obj, ").append(offset).append(")));\n");
+			else if (short.class.equals(type))
+				sb.append("out.writeInt((int) u.getShort(obj, ").append(offset).append("));\n");
+			else if (int.class.equals(type))
+				sb.append("out.writeInt(u.getInt(obj, ").append(offset).append("));\n");
+			else if (long.class.equals(type))
+				sb.append("out.writeLong(u.getLong(obj, ").append(offset).append("));\n");
+			else if (float.class.equals(type))
+				sb.append("out.writeDouble((double) u.getFloat(obj, ").append(offset).append("));\n");
+			else if (double.class.equals(type))
+				sb.append("out.writeDouble(u.getDouble(obj, ").append(offset).append("));\n");
+			else if (String.class.equals(type))
+				sb.append("out.writeString((String) u.getObject(obj, ").append(offset).append("));\n");
+			else if (java.util.Date.class.equals(type)
+					|| java.sql.Date.class.equals(type)
+					|| java.sql.Timestamp.class.equals(type)
+					|| java.sql.Time.class.equals(type)) {
+				String local = "d" + i;
+				sb.append("java.util.Date ").append(local).append(" = (java.util.Date) u.getObject(obj, ")
+						.append(offset).append(");\n");
+				sb.append("if (").append(local).append(" == null) out.writeNull();\n");
+				sb.append("else out.writeUTCDate(").append(local).append(".getTime());\n");
+			} else
+				sb.append("out.writeObject(u.getObject(obj, ").append(offset).append("));\n");
+		}
+
+		return sb.toString();
+	}
+
+	static String readInstanceSource(Field[] fields) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("sun.misc.Unsafe u = ").append(GeneratedDeserializer.class.getName()).append(".UNSAFE;\n");
+
+		for (int i = 0; i < fields.length; i++)
+			sb.append(readSource(fields[i], i));
+
+		return sb.toString();
+	}
+
+	static String readFieldSource(Field[] fields) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("sun.misc.Unsafe u = ").append(GeneratedDeserializer.class.getName()).append(".UNSAFE;\n");
+		sb.append("switch (index) {\n");
+
+		for (int i = 0; i < fields.length; i++)
+			sb.append("case ").append(i).append(": {\n").append(readSource(fields[i], i)).append("} break;\n");
+
+		sb.append("default: in.readObject();\n");
+		sb.append("}\n");
+
+		return sb.toString();
+	}
+
+	private static String readSource(Field field, int index) {
+		Class<?> type = field.getType();
+		String offset = GeneratedDeserializer.fieldOffset(field) + "L";
+		String local = "v" + index;
+		StringBuilder sb = new StringBuilder();
+
+		if (boolean.class.equals(type))
+			sb.append("u.putBoolean(obj, ").append(offset).append(", in.readBoolean());\n");
+		else if (byte.class.equals(type))
+			sb.append("u.putByte(obj, ").append(offset).append(", (byte) in.readInt());\n");
+		else if (char.class.equals(type)) {
+			sb.append("String ").append(local).append(" = in.readString();\n");
+			sb.append("if (").append(local).append(" != null && ").append(local).append(".length() > 0) u.putChar(obj, ")
+					.append(offset).append(", ").append(local).append(".charAt(0));\n");
+			sb.append("else u.putChar(obj, ").append(offset).append(", (char) 0);\n");
+		} else if (short.class.equals(type))
+			sb.append("u.putShort(obj, ").append(offset).append(", (short) in.readInt());\n");
+		else if (int.class.equals(type))
+			sb.append("u.putInt(obj, ").append(offset).append(", in.readInt());\n");
+		else if (long.class.equals(type))
+			sb.append("u.putLong(obj, ").append(offset).append(", in.readLong());\n");
+		else if (float.class.equals(type))
+			sb.append("u.putFloat(obj, ").append(offset).append(", (float) in.readDouble());\n");
+		else if (double.class.equals(type))
+			sb.append("u.putDouble(obj, ").append(offset).append(", in.readDouble());\n");
+		else if (String.class.equals(type))
+			sb.append("u.putObject(obj, ").append(offset).append(", in.readString());\n");
+		else if (java.sql.Date.class.equals(type)
+				|| java.sql.Timestamp.class.equals(type)
+				|| java.sql.Time.class.equals(type)) {
+			sb.append("java.util.Date ").append(local).append(" = (java.util.Date) in.readObject();\n");
+			sb.append("if (").append(local).append(" != null) u.putObject(obj, ").append(offset)
+					.append(", new ").append(type.getName()).append("(").append(local).append(".getTime()));\n");
+			sb.append("else u.putObject(obj, ").append(offset).append(", null);\n");
+		} else
+			sb.append("u.putObject(obj, ").append(offset).append(", in.readObject(fieldType(").append(index)
+					.append(")));\n");
+
+		return sb.toString();
+	}
+
+	private static Object define(Class<?> cl, Class<?> base, String suffix, String[] methods)
+			throws Exception {
+		String name = PACKAGE + cl.getName().replace('.', '_').replace('$', '_')
+				+ "$" + suffix + COUNTER.incrementAndGet();
+		byte[] bytecode;
+
+		// ClassPool不是线程安全的,生成只发生在每个类第一次使用时
+		synchronized (SerializerGenerator.class) {
+			ClassPool pool = getPool();
+			CtClass ctClass = pool.makeClass(name);
+			try {
+				ctClass.setSuperclass(pool.get(base.getName()));
+				ctClass.addConstructor(CtNewConstructor.defaultConstructor(ctClass));
+				for (String method : methods)
+					ctClass.addMethod(CtNewMethod.make(method, ctClass));
+				bytecode = ctClass.toBytecode();
+			} finally {
+				ctClass.detach();
+			}
+		}
+
+		return getClassLoader(cl).define(name, bytecode).newInstance();
+	}
+
+	private static ClassPool getPool() {
+		if (_pool == null) {
+			ClassPool pool = new ClassPool(true);
+			pool.insertClassPath(new LoaderClassPath(SerializerGenerator.class.getClassLoader()));
+			_pool = pool;
+		}
+		return _pool;
+	}
+
+	private static GeneratedClassLoader getClassLoader(Class<?> cl) {
+		ClassLoader loader = cl.getClassLoader();
+
+		synchronized (_loaderMap) {
+			GeneratedClassLoader generatedLoader = _loaderMap.get(loader);
+			if (generatedLoader == null) {
+				generatedLoader = new GeneratedClassLoader(SerializerGenerator.class.getClassLoader());
+				_loaderMap.put(loader, generatedLoader);
+			}
+			return generatedLoader;
+		}
+	}
+
+	private static final class Generated {
+		final Object value;
+
+		Generated(Object value) {
+			this.value = value;
+		}
+	}
+
+	/**
+	 * 生成类只引用rpc和jdk的类,父加载器为rpc所在的加载器
+	 */
+	private static final class GeneratedClassLoader extends ClassLoader {
+		GeneratedClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		Class<?> define(String name, byte[] bytecode) {
+			return defineClass(name, bytecode, 0, bytecode.length);
+		}
+	}
+}
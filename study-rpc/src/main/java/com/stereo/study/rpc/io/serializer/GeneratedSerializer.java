@@ -0,0 +1,136 @@
+package com.stereo.study.rpc.io.serializer;
+
+import com.stereo.study.rpc.exc.IOExceptionWrapper;
+import com.stereo.study.rpc.io.AbstractOutput;
+import com.stereo.study.rpc.io.Unshared;
+import sun.misc.Unsafe;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 字节码生成的序列化器基类
+ * 子类由SerializerGenerator按字段展开生成: 字段偏移是常量,逐字段直接读写,没有FieldSerializer的虚调用.
+ * 输出格式与UnsafeSerializer相同
+ *
+ * @author stereo
+ */
+public abstract class GeneratedSerializer extends AbstractSerializer {
+
+	private static final Logger log = Logger.getLogger(GeneratedSerializer.class
+			.getName());
+
+	protected static final Unsafe UNSAFE;
+
+	private Class<?> _type;
+	private String[] _fieldNames;
+	private boolean _isUnshared;
+
+	public static boolean isEnabled() {
+		return UNSAFE != null;
+	}
+
+	/**
+	 * 生成器把字段偏移写成常量
+	 */
+	public static long fieldOffset(Field field) {
+		return UNSAFE.objectFieldOffset(field);
+	}
+
+	/**
+	 * 生成类只有无参构造,实例化后由生成器初始化
+	 */
+	public void init(Class<?> type, String[] fieldNames) {
+		_type = type;
+		_fieldNames = fieldNames;
+		_isUnshared = type.isAnnotationPresent(Unshared.class);
+	}
+
+	public Class<?> getType() {
+		return _type;
+	}
+
+	@Override
+	public void writeObject(Object obj, AbstractOutput out) throws IOException {
+		if (!_isUnshared) {
+			write(obj, out);
+			return;
+		}
+		boolean oldUnshared = out.setUnshared(true);
+
+		try {
+			write(obj, out);
+		} finally {
+			out.setUnshared(oldUnshared);
+		}
+	}
+
+	private void write(Object obj, AbstractOutput out) throws IOException {
+		if (out.addRef(obj)) {
+			return;
+		}
+
+		String type = obj.getClass().getName();
+
+		int ref = out.writeObjectBegin(type);
+
+		try {
+			if (ref >= 0) {
+				writeInstance(obj, out);
+			} else if (ref == -1) {
+				out.writeClassFieldLength(_fieldNames.length);
+
+				for (int i = 0; i < _fieldNames.length; i++)
+					out.writeString(_fieldNames[i]);
+
+				out.writeObjectBegin(type);
+				writeInstance(obj, out);
+			} else {
+				writeNamedInstance(obj, out);
+				out.writeMapEnd();
+			}
+		} catch (RuntimeException e) {
+			throw new RuntimeException(e.getMessage() + "\n class: "
+					+ type + " (object=" + obj + ")", e);
+		} catch (IOException e) {
+			throw new IOExceptionWrapper(e.getMessage() + "\n class: "
+					+ type + " (object=" + obj + ")", e);
+		}
+	}
+
+	/**
+	 * 按字段顺序写出字段值
+	 */
+	protected abstract void writeInstance(Object obj, AbstractOutput out)
+			throws IOException;
+
+	/**
+	 * 按字段顺序写出字段名和值(map格式)
+	 */
+	protected abstract void writeNamedInstance(Object obj, AbstractOutput out)
+			throws IOException;
+
+	static {
+		Unsafe unsafe = null;
+
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field theUnsafe = null;
+			for (Field field : unsafeClass.getDeclaredFields()) {
+				if (field.getName().equals("theUnsafe"))
+					theUnsafe = field;
+			}
+
+			if (theUnsafe != null) {
+				theUnsafe.setAccessible(true);
+				unsafe = (Unsafe) theUnsafe.get(null);
+			}
+		} catch (Throwable e) {
+			log.log(Level.FINER, e.toString(), e);
+		}
+
+		UNSAFE = unsafe;
+	}
+}
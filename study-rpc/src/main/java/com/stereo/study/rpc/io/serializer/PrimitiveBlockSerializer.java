@@ -0,0 +1,72 @@
+package com.stereo.study.rpc.io.serializer;
+
+import com.stereo.study.rpc.io.AbstractOutput;
+import com.stereo.study.rpc.io.DoubleList;
+import com.stereo.study.rpc.io.IntList;
+import com.stereo.study.rpc.io.LongList;
+
+import java.io.IOException;
+
+/**
+ * int[]/long[]/double[]和IntList/LongList/DoubleList写为基本类型定长块.
+ * Output写出定长块,其它AbstractOutput按普通类型列表写出
+ *
+ * @author stereo
+ */
+public class PrimitiveBlockSerializer extends AbstractSerializer implements
+		ObjectSerializer {
+	public static final PrimitiveBlockSerializer SER = new PrimitiveBlockSerializer();
+
+	private PrimitiveBlockSerializer() {
+	}
+
+	/**
+	 * 只处理这几个确切的类型,基本类型列表的子类仍按普通集合写出
+	 */
+	public static boolean isSupported(Class<?> cl) {
+		return cl == int[].class || cl == long[].class
+				|| cl == double[].class || cl == IntList.class
+				|| cl == LongList.class || cl == DoubleList.class;
+	}
+
+	@Override
+	public Serializer getObjectSerializer() {
+		return this;
+	}
+
+	@Override
+	public void writeObject(Object obj, AbstractOutput out) throws IOException {
+		if (obj == null) {
+			out.writeNull();
+			return;
+		}
+
+		if (out.addRef(obj))
+			return;
+
+		if (obj instanceof int[]) {
+			int[] data = (int[]) obj;
+			out.writeIntBlock(data, data.length, null);
+		} else if (obj instanceof long[]) {
+			long[] data = (long[]) obj;
+			out.writeLongBlock(data, data.length, null);
+		} else if (obj instanceof double[]) {
+			double[] data = (double[]) obj;
+			out.writeDoubleBlock(data, data.length, null);
+		} else if (obj instanceof IntList) {
+			IntList list = (IntList) obj;
+			out.writeIntBlock(list.elements(), list.size(), obj.getClass()
+					.getName());
+		} else if (obj instanceof LongList) {
+			LongList list = (LongList) obj;
+			out.writeLongBlock(list.elements(), list.size(), obj.getClass()
+					.getName());
+		} else if (obj instanceof DoubleList) {
+			DoubleList list = (DoubleList) obj;
+			out.writeDoubleBlock(list.elements(), list.size(), obj.getClass()
+					.getName());
+		} else
+			throw new IllegalArgumentException("not a primitive block: "
+					+ obj.getClass().getName());
+	}
+}
@@ -0,0 +1,166 @@
+package com.stereo.study.rpc.server;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * 按需压缩的应答流
+ * 先缓存阈值以内的数据,应答在阈值内结束时原样写出;超过阈值时设置Content-Encoding: deflate,
+ * 之后边写边压缩.客户端使用Inflater(true)解压,这里相应输出不带zlib头的原始deflate流.
+ * Deflater按线程缓存复用
+ *
+ * @author stereo
+ */
+final class DeflateResponseStream extends OutputStream {
+
+    // 每个线程缓存一个Deflater,借出期间置空,嵌套使用时另建
+    private static final ThreadLocal<Deflater> _localDeflater = new ThreadLocal<Deflater>();
+
+    private final HttpServletResponse _res;
+    private final OutputStream _os;
+    private final int _level;
+
+    private byte[] _buffer;
+    private int _length;
+
+    private Deflater _deflater;
+    private byte[] _deflateBuffer;
+
+    private long _rawBytes;
+    private long _compressedBytes;
+    private boolean _isCompressed;
+    private boolean _isFinished;
+
+    DeflateResponseStream(HttpServletResponse res, OutputStream os, int threshold, int level) {
+        _res = res;
+        _os = os;
+        _level = level;
+        _buffer = new byte[Math.max(threshold, 1)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (_isFinished)
+            throw new IOException("response stream already finished");
+        _rawBytes += len;
+        if (_deflater != null) {
+            deflate(b, off, len);
+            return;
+        }
+        if (_length + len <= _buffer.length) {
+            System.arraycopy(b, off, _buffer, _length, len);
+            _length += len;
+            return;
+        }
+        // 超过阈值,开始压缩
+        _res.setHeader("Content-Encoding", "deflate");
+        _res.setHeader("Vary", "Accept-Encoding");
+        _isCompressed = true;
+        _deflater = allocate(_level);
+        _deflateBuffer = new byte[8192];
+        if (_length > 0)
+            deflate(_buffer, 0, _length);
+        _buffer = null;
+        _length = 0;
+        deflate(b, off, len);
+    }
+
+    /**
+     * 阈值内的数据不能提前写出,否则响应头已提交
+     */
+    @Override
+    public void flush() throws IOException {
+        if (_deflater != null)
+            _os.flush();
+    }
+
+    /**
+     * 结束应答: 未超过阈值时原样写出缓存,否则写完压缩尾部
+     */
+    void finish() throws IOException {
+        if (_isFinished)
+            return;
+        _isFinished = true;
+        try {
+            if (_deflater == null) {
+                if (_length > 0)
+                    _os.write(_buffer, 0, _length);
+                _compressedBytes = _length;
+            } else {
+                _deflater.finish();
+                while (!_deflater.finished())
+                    drain();
+                _compressedBytes = _deflater.getBytesWritten();
+            }
+            _os.flush();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * 归还Deflater,可重复调用
+     */
+    void release() {
+        _isFinished = true;
+        Deflater deflater = _deflater;
+        _deflater = null;
+        _buffer = null;
+        if (deflater != null)
+            free(deflater);
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+    boolean isCompressed() {
+        return _isCompressed;
+    }
+
+    long getRawBytes() {
+        return _rawBytes;
+    }
+
+    long getCompressedBytes() {
+        return _compressedBytes;
+    }
+
+    private void deflate(byte[] b, int off, int len) throws IOException {
+        _deflater.setInput(b, off, len);
+        while (!_deflater.needsInput())
+            drain();
+    }
+
+    private void drain() throws IOException {
+        int len = _deflater.deflate(_deflateBuffer, 0, _deflateBuffer.length);
+        if (len > 0)
+            _os.write(_deflateBuffer, 0, len);
+    }
+
+    private static Deflater allocate(int level) {
+        Deflater deflater = _localDeflater.get();
+        if (deflater != null)
+            _localDeflater.set(null);
+        else
+            deflater = new Deflater(level, true);
+        deflater.setLevel(level);
+        return deflater;
+    }
+
+    private static void free(Deflater deflater) {
+        deflater.reset();
+        if (_localDeflater.get() == null)
+            _localDeflater.set(deflater);
+        else
+            deflater.end();
+    }
+}
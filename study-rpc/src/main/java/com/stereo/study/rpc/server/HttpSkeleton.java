@@ -9,6 +9,7 @@ import com.stereo.study.rpc.core.SkeletonContext;
 import com.stereo.study.rpc.core.context.ActionContext;
 import com.stereo.study.rpc.io.AbstractInput;
 import com.stereo.study.rpc.io.AbstractOutput;
+import com.stereo.study.rpc.io.factory.IOFactory;
 import com.stereo.study.rpc.io.factory.SerializerFactory;
 import com.stereo.study.rpc.core.IHandler;
 import com.stereo.study.rpc.transport.Packet;
@@ -23,6 +24,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.util.Enumeration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
 
 /**
  * 基于RPC二进制传输Http骨架
@@ -39,6 +49,12 @@ public abstract class HttpSkeleton extends HttpServlet implements
 
     private static final Logger log = LoggerFactory.getLogger(HttpSkeleton.class);
 
+    public static final int DEFAULT_ASYNC_THREADS = 64;
+    public static final int DEFAULT_ASYNC_QUEUE_SIZE = 1024;
+    public static final long DEFAULT_ASYNC_TIMEOUT = 60000;
+
+    public static final int DEFAULT_COMPRESS_THRESHOLD = 4096;
+
     private Class<?> _homeAPI;
     private Object _homeImpl;
 
@@ -50,6 +66,24 @@ public abstract class HttpSkeleton extends HttpServlet implements
 
     private SerializerFactory _serializerFactory;
 
+    // 两个骨架共用一个Input/Output池
+    private final IOFactory _ioFactory = new IOFactory();
+
+    // 异步模式: 调用交给有界线程池执行,容器线程立即返回
+    private boolean _isAsync;
+    private int _asyncThreads = DEFAULT_ASYNC_THREADS;
+    private int _asyncQueueSize = DEFAULT_ASYNC_QUEUE_SIZE;
+    private long _asyncTimeout = DEFAULT_ASYNC_TIMEOUT;
+    private ThreadPoolExecutor _asyncExecutor;
+
+    // 应答压缩: 客户端声明Accept-Encoding: deflate且应答超过阈值时压缩
+    private boolean _isCompress = true;
+    private int _compressThreshold = DEFAULT_COMPRESS_THRESHOLD;
+    private int _compressLevel = Deflater.DEFAULT_COMPRESSION;
+    private final AtomicLong _compressedResponses = new AtomicLong();
+    private final AtomicLong _compressRawBytes = new AtomicLong();
+    private final AtomicLong _compressOutBytes = new AtomicLong();
+
     protected IActionContext actionContext;
 
     public HttpSkeleton() {
@@ -97,6 +131,116 @@ public abstract class HttpSkeleton extends HttpServlet implements
         return _serializerFactory;
     }
 
+    /**
+     * Input/Output池,可查看池命中统计
+     */
+    public IOFactory getIOFactory() {
+        return _ioFactory;
+    }
+
+    /**
+     * 开启Servlet 3异步处理,servlet需要声明async-supported
+     */
+    public void setAsync(boolean isAsync) {
+        _isAsync = isAsync;
+    }
+
+    public boolean isAsync() {
+        return _isAsync;
+    }
+
+    /**
+     * 异步模式下执行调用的线程数
+     */
+    public void setAsyncThreads(int asyncThreads) {
+        if (asyncThreads < 1)
+            throw new IllegalArgumentException("asyncThreads " + asyncThreads);
+        _asyncThreads = asyncThreads;
+    }
+
+    public int getAsyncThreads() {
+        return _asyncThreads;
+    }
+
+    /**
+     * 异步模式下等待执行的调用上限,超出时返回503
+     */
+    public void setAsyncQueueSize(int asyncQueueSize) {
+        if (asyncQueueSize < 1)
+            throw new IllegalArgumentException("asyncQueueSize " + asyncQueueSize);
+        _asyncQueueSize = asyncQueueSize;
+    }
+
+    public int getAsyncQueueSize() {
+        return _asyncQueueSize;
+    }
+
+    /**
+     * 异步调用的排队超时(毫秒),超时仍未开始执行返回504;已开始执行的调用不受限制,0表示不限
+     */
+    public void setAsyncTimeout(long asyncTimeout) {
+        _asyncTimeout = asyncTimeout;
+    }
+
+    public long getAsyncTimeout() {
+        return _asyncTimeout;
+    }
+
+    /**
+     * 是否压缩应答
+     */
+    public void setCompress(boolean isCompress) {
+        _isCompress = isCompress;
+    }
+
+    public boolean isCompress() {
+        return _isCompress;
+    }
+
+    /**
+     * 应答超过该字节数才压缩
+     */
+    public void setCompressThreshold(int compressThreshold) {
+        if (compressThreshold < 0)
+            throw new IllegalArgumentException("compressThreshold " + compressThreshold);
+        _compressThreshold = compressThreshold;
+    }
+
+    public int getCompressThreshold() {
+        return _compressThreshold;
+    }
+
+    /**
+     * 压缩级别0-9,-1为Deflater默认级别
+     */
+    public void setCompressLevel(int compressLevel) {
+        if (compressLevel < -1 || compressLevel > 9)
+            throw new IllegalArgumentException("compressLevel " + compressLevel);
+        _compressLevel = compressLevel;
+    }
+
+    public int getCompressLevel() {
+        return _compressLevel;
+    }
+
+    /**
+     * 已压缩的应答数
+     */
+    public long getCompressedResponses() {
+        return _compressedResponses.get();
+    }
+
+    /**
+     * 已压缩应答压缩前后的字节数
+     */
+    public long getCompressRawBytes() {
+        return _compressRawBytes.get();
+    }
+
+    public long getCompressOutBytes() {
+        return _compressOutBytes.get();
+    }
+
     public void setSendCollectionType(boolean sendType) {
         getSerializerFactory().setSendCollectionType(sendType);
     }
@@ -171,11 +315,13 @@ public abstract class HttpSkeleton extends HttpServlet implements
 
             // 服务端代理
             _homeSkeleton = new Skeleton(_homeImpl, _homeAPI);
+            _homeSkeleton.setFactory(_ioFactory);
             if (_objectAPI != null)
                 _homeSkeleton.setObjectClass(_objectAPI);
 
             if (_objectImpl != null) {
                 _objectSkeleton = new Skeleton(_objectImpl, _objectAPI);
+                _objectSkeleton.setFactory(_ioFactory);
                 _objectSkeleton.setHomeClass(_homeAPI);
             } else
                 _objectSkeleton = _homeSkeleton;
@@ -184,6 +330,26 @@ public abstract class HttpSkeleton extends HttpServlet implements
             }
             if ("false".equals(getInitParameter("send-collection-type")))
                 setSendCollectionType(false);
+
+            // 异步模式
+            if ("true".equals(getInitParameter("async")))
+                setAsync(true);
+            if (getInitParameter("async-threads") != null)
+                setAsyncThreads(Integer.parseInt(getInitParameter("async-threads")));
+            if (getInitParameter("async-queue-size") != null)
+                setAsyncQueueSize(Integer.parseInt(getInitParameter("async-queue-size")));
+            if (getInitParameter("async-timeout") != null)
+                setAsyncTimeout(Long.parseLong(getInitParameter("async-timeout")));
+            if (_isAsync)
+                _asyncExecutor = createAsyncExecutor();
+
+            // 应答压缩
+            if ("false".equals(getInitParameter("compress")))
+                setCompress(false);
+            if (getInitParameter("compress-threshold") != null)
+                setCompressThreshold(Integer.parseInt(getInitParameter("compress-threshold")));
+            if (getInitParameter("compress-level") != null)
+                setCompressLevel(Integer.parseInt(getInitParameter("compress-level")));
         } catch (ServletException e) {
             throw e;
         } catch (Exception e) {
@@ -243,14 +409,15 @@ public abstract class HttpSkeleton extends HttpServlet implements
         if (objectId == null)
             objectId = req.getParameter("ejbid");
 
+        if (_isAsync && _asyncExecutor != null && req.isAsyncSupported()) {
+            serviceAsync(req, res, serviceId, objectId);
+            return;
+        }
+
         SkeletonContext.begin(req, res, serviceId, objectId);
         try
         {
-            InputStream is = request.getInputStream();
-            OutputStream os = response.getOutputStream();
-            response.setContentType("x-application/rpc");
-            SerializerFactory serializerFactory = getSerializerFactory();
-            invoke(is, os, objectId, serializerFactory);
+            invoke(req, res, objectId);
         } catch (RuntimeException e) {
             throw e;
         } catch (ServletException e) {
@@ -262,6 +429,124 @@ public abstract class HttpSkeleton extends HttpServlet implements
         }
     }
 
+    /**
+     * 容器线程只负责startAsync和入队,解码、调用和回写都在线程池中完成
+     */
+    private void serviceAsync(HttpServletRequest req, HttpServletResponse res,
+                              String serviceId, String objectId) throws IOException {
+        AsyncContext async = req.startAsync(req, res);
+        // 超时由工作线程判断,容器不再超时结束请求
+        async.setTimeout(0);
+        AsyncCall call = new AsyncCall(async, req, res, serviceId, objectId, _asyncTimeout);
+        async.addListener(call);
+        try {
+            _asyncExecutor.execute(call);
+        } catch (RejectedExecutionException e) {
+            log.warn("rpc async executor is full, reject request " + serviceId);
+            call.fail(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "RPC Server Busy");
+        }
+    }
+
+    /**
+     * 执行调用,客户端接受deflate时应答经DeflateResponseStream按阈值压缩
+     */
+    private void invoke(HttpServletRequest req, HttpServletResponse res, String objectId)
+            throws Exception {
+        InputStream is = req.getInputStream();
+        OutputStream os = res.getOutputStream();
+        res.setContentType("x-application/rpc");
+        if (!_isCompress || !isAcceptDeflate(req)) {
+            invoke(is, os, objectId, getSerializerFactory());
+            return;
+        }
+        DeflateResponseStream deflateStream = new DeflateResponseStream(res, os,
+                _compressThreshold, _compressLevel);
+        try {
+            invoke(is, deflateStream, objectId, getSerializerFactory());
+            deflateStream.finish();
+        } finally {
+            deflateStream.release();
+        }
+        if (deflateStream.isCompressed()) {
+            _compressedResponses.incrementAndGet();
+            _compressRawBytes.addAndGet(deflateStream.getRawBytes());
+            _compressOutBytes.addAndGet(deflateStream.getCompressedBytes());
+            if (log.isDebugEnabled())
+                log.debug("deflate response " + req.getPathInfo() + " " + deflateStream.getRawBytes()
+                        + " -> " + deflateStream.getCompressedBytes() + " bytes");
+        }
+    }
+
+    /**
+     * 按逗号拆分Accept-Encoding,显式的deflate优先于*,q=0表示不接受
+     */
+    private boolean isAcceptDeflate(HttpServletRequest req) {
+        Enumeration<String> headers = req.getHeaders("Accept-Encoding");
+        if (headers == null)
+            return false;
+        boolean isWildcard = false;
+        while (headers.hasMoreElements()) {
+            String header = headers.nextElement();
+            if (header == null)
+                continue;
+            for (String token : header.split(",")) {
+                String[] parts = token.split(";");
+                String coding = parts[0].trim();
+                boolean isAccepted = qvalue(parts) > 0;
+                if ("deflate".equalsIgnoreCase(coding))
+                    return isAccepted;
+                if ("*".equals(coding))
+                    isWildcard = isAccepted;
+            }
+        }
+        return isWildcard;
+    }
+
+    //取q参数,缺省为1,格式不对按0处理
+    private static float qvalue(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String param = parts[i].trim();
+            if (param.length() > 1 && (param.charAt(0) == 'q' || param.charAt(0) == 'Q')) {
+                String value = param.substring(1).trim();
+                if (!value.startsWith("="))
+                    continue;
+                try {
+                    return Float.parseFloat(value.substring(1).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private ThreadPoolExecutor createAsyncExecutor() {
+        final String name = getClass().getSimpleName();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(_asyncThreads,
+                _asyncThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(_asyncQueueSize), new ThreadFactory() {
+            private final AtomicInteger _count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + "-async-" + _count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Override
+    public void destroy() {
+        ThreadPoolExecutor executor = _asyncExecutor;
+        _asyncExecutor = null;
+        if (executor != null)
+            executor.shutdown();
+        super.destroy();
+    }
+
     public void invoke(InputStream is, OutputStream os, String objectId,
                        SerializerFactory serializerFactory) throws Exception {
         if (objectId != null)
@@ -294,7 +579,143 @@ public abstract class HttpSkeleton extends HttpServlet implements
         handleUpload(new Uploader(in, out));
     }
 
+    /**
+     * 续传偏移查询同样交给handleUpload(IUpload), Uploader按方法名区分
+     */
+    @Override
+    public void uploadOffset(AbstractInput in, AbstractOutput out)
+            throws Exception
+    {
+        handleUpload(new Uploader(in, out));
+    }
+
+    @Override
+    public void handleResumableUpload(AbstractInput in, AbstractOutput out)
+            throws Exception
+    {
+        handleUpload(new Uploader(in, out));
+    }
+
+    @Override
+    public void handlePartUpload(AbstractInput in, AbstractOutput out)
+            throws Exception
+    {
+        handleUpload(new Uploader(in, out));
+    }
+
+    @Override
+    public void commitUpload(AbstractInput in, AbstractOutput out)
+            throws Exception
+    {
+        handleUpload(new Uploader(in, out));
+    }
+
     @Override
     public void handleUpload(IUpload upload) throws Exception {
     }
-}
\ No newline at end of file
+
+    /**
+     * 一次异步调用
+     * 容器的异步超时关闭,请求和应答只由工作线程回写和complete,避免被容器回收后仍在使用;
+     * 超时只约束排队时间,开始执行前已过期的调用回写504,已开始执行的调用(包括上传)不会被中断
+     */
+    private final class AsyncCall implements Runnable, AsyncListener {
+        private static final int QUEUED = 0;
+        private static final int RUNNING = 1;
+        private static final int DONE = 2;
+
+        private final AsyncContext _async;
+        private final HttpServletRequest _req;
+        private final HttpServletResponse _res;
+        private final String _serviceId;
+        private final String _objectId;
+        private final long _deadline;
+        private final AtomicInteger _state = new AtomicInteger(QUEUED);
+
+        AsyncCall(AsyncContext async, HttpServletRequest req, HttpServletResponse res,
+                  String serviceId, String objectId, long timeout) {
+            _async = async;
+            _req = req;
+            _res = res;
+            _serviceId = serviceId;
+            _objectId = objectId;
+            _deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+        }
+
+        @Override
+        public void run() {
+            // 排队期间连接已出错并结束
+            if (!_state.compareAndSet(QUEUED, RUNNING))
+                return;
+            if (_deadline > 0 && System.currentTimeMillis() > _deadline) {
+                log.warn("rpc async call " + _serviceId + " waited in queue beyond timeout");
+                abort(HttpServletResponse.SC_GATEWAY_TIMEOUT, "RPC Call Timeout");
+                return;
+            }
+            try {
+                SkeletonContext.begin(_req, _res, _serviceId, _objectId);
+                try {
+                    invoke(_req, _res, _objectId);
+                } finally {
+                    SkeletonContext.end();
+                }
+            } catch (Throwable e) {
+                log.error("rpc async call " + _serviceId + " failed", e);
+                abort(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.toString());
+                return;
+            }
+            if (_state.compareAndSet(RUNNING, DONE))
+                _async.complete();
+        }
+
+        /**
+         * 工作线程上结束执行中的调用
+         */
+        private void abort(int status, String message) {
+            if (_state.compareAndSet(RUNNING, DONE))
+                sendError(status, message);
+        }
+
+        /**
+         * 还没开始执行时直接应答,只能由排队中的调用使用
+         */
+        void fail(int status, String message) {
+            if (_state.compareAndSet(QUEUED, DONE))
+                sendError(status, message);
+        }
+
+        private void sendError(int status, String message) {
+            try {
+                if (!_res.isCommitted())
+                    _res.sendError(status, message);
+            } catch (Exception e) {
+                log.debug("send error " + status + " failed", e);
+            } finally {
+                _async.complete();
+            }
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) throws IOException {
+            // 容器超时已关闭(setTimeout(0)),仅在容器仍触发时应答排队中的调用
+            fail(HttpServletResponse.SC_GATEWAY_TIMEOUT, "RPC Call Timeout");
+        }
+
+        @Override
+        public void onError(AsyncEvent event) throws IOException {
+            if (event.getThrowable() != null)
+                log.warn("rpc async call " + _serviceId + " error", event.getThrowable());
+            if (_state.compareAndSet(QUEUED, DONE))
+                _async.complete();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) throws IOException {
+            _state.set(DONE);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) throws IOException {
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.stereo.study.rpc.server;
+
+import com.stereo.study.rpc.core.Skeleton;
+import com.stereo.study.rpc.core.SkeletonContext;
+import com.stereo.study.rpc.io.factory.IOFactory;
+import com.stereo.study.rpc.io.factory.SerializerFactory;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutorGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 基于Netty的内嵌HTTP服务
+ * 不经过Servlet容器直接托管Skeleton: 请求体聚合在池化ByteBuf中解码,应答编码到池化ByteBuf后整体写出.
+ * 调用在业务线程组中执行,同一连接上的请求固定由一个线程顺序处理,
+ * 因此HTTP/1.1长连接和管线化请求的应答顺序与请求一致
+ *
+ * @author stereo
+ */
+public class NettyRpcServer {
+
+    private static final Logger log = LoggerFactory.getLogger(NettyRpcServer.class);
+
+    public static final int DEFAULT_MAX_CONTENT_LENGTH = 64 * 1024 * 1024;
+
+    public static final int DEFAULT_ACTION_THREADS = 64;
+
+    private static final String CONTENT_TYPE = "x-application/rpc";
+
+    private final String _host;
+    private final int _port;
+
+    // 路径 -> 骨架, 与HttpSkeleton的pathInfo对应
+    private final ConcurrentMap<String, Skeleton> _skeletons = new ConcurrentHashMap<String, Skeleton>();
+    private volatile Skeleton _defaultSkeleton;
+
+    // 所有骨架共用一个Input/Output池
+    private final IOFactory _ioFactory = new IOFactory();
+
+    private SerializerFactory _serializerFactory;
+
+    private int _workerThreads;
+    private int _actionThreads = DEFAULT_ACTION_THREADS;
+    private int _maxContentLength = DEFAULT_MAX_CONTENT_LENGTH;
+
+    private EventLoopGroup _bossGroup;
+    private EventLoopGroup _workerGroup;
+    private EventExecutorGroup _actionGroup;
+    private Channel _channel;
+
+    public NettyRpcServer(int port) {
+        this(null, port);
+    }
+
+    public NettyRpcServer(String host, int port) {
+        _host = host;
+        _port = port;
+    }
+
+    /**
+     * 发布服务,path为空或"/"时作为默认服务
+     */
+    public NettyRpcServer addService(String path, Object service, Class<?> api) {
+        return addSkeleton(path, new Skeleton(service, api));
+    }
+
+    public NettyRpcServer addSkeleton(String path, Skeleton skeleton) {
+        skeleton.setFactory(_ioFactory);
+        if (path == null || path.isEmpty() || "/".equals(path))
+            _defaultSkeleton = skeleton;
+        else
+            _skeletons.put(path.startsWith("/") ? path : "/" + path, skeleton);
+        return this;
+    }
+
+    public void setSerializerFactory(SerializerFactory factory) {
+        _serializerFactory = factory;
+    }
+
+    public SerializerFactory getSerializerFactory() {
+        if (_serializerFactory == null)
+            _serializerFactory = new SerializerFactory();
+        return _serializerFactory;
+    }
+
+    public IOFactory getIOFactory() {
+        return _ioFactory;
+    }
+
+    /**
+     * IO线程数,0为Netty默认值
+     */
+    public void setWorkerThreads(int workerThreads) {
+        _workerThreads = workerThreads;
+    }
+
+    /**
+     * 执行调用的业务线程数
+     */
+    public void setActionThreads(int actionThreads) {
+        if (actionThreads < 1)
+            throw new IllegalArgumentException("actionThreads " + actionThreads);
+        _actionThreads = actionThreads;
+    }
+
+    /**
+     * 单个请求体上限,上传大文件时需要相应调大
+     */
+    public void setMaxContentLength(int maxContentLength) {
+        _maxContentLength = maxContentLength;
+    }
+
+    public synchronized void start() throws InterruptedException {
+        if (_channel != null)
+            return;
+        if (_defaultSkeleton == null && _skeletons.isEmpty())
+            throw new IllegalStateException("no service registered");
+        _bossGroup = new NioEventLoopGroup(1, new DefaultThreadFactory("rpc-http-boss"));
+        _workerGroup = new NioEventLoopGroup(_workerThreads, new DefaultThreadFactory("rpc-http-worker"));
+        _actionGroup = new DefaultEventExecutorGroup(_actionThreads, new DefaultThreadFactory("rpc-http-action"));
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(_bossGroup, _workerGroup)
+                .channel(NioServerSocketChannel.class)
+                .option(ChannelOption.SO_BACKLOG, 1024)
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childOption(ChannelOption.SO_KEEPALIVE, true)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) throws Exception {
+                        ch.pipeline().addLast("codec", new HttpServerCodec());
+                        ch.pipeline().addLast("aggregator", new HttpObjectAggregator(_maxContentLength));
+                        ch.pipeline().addLast(_actionGroup, "rpc", new RpcHandler());
+                    }
+                });
+        ChannelFuture future = _host != null ? bootstrap.bind(_host, _port) : bootstrap.bind(_port);
+        try {
+            _channel = future.sync().channel();
+        } catch (InterruptedException e) {
+            stop();
+            throw e;
+        } catch (RuntimeException e) {
+            stop();
+            throw e;
+        }
+        log.info("rpc http server started on " + _channel.localAddress());
+    }
+
+    public synchronized void stop() {
+        if (_channel != null) {
+            _channel.close().syncUninterruptibly();
+            _channel = null;
+        }
+        if (_bossGroup != null)
+            _bossGroup.shutdownGracefully();
+        if (_workerGroup != null)
+            _workerGroup.shutdownGracefully();
+        if (_actionGroup != null)
+            _actionGroup.shutdownGracefully();
+        _bossGroup = null;
+        _workerGroup = null;
+        _actionGroup = null;
+    }
+
+    /**
+     * 实际监听地址,port为0时可用于取得分配的端口
+     */
+    public SocketAddress getLocalAddress() {
+        Channel channel = _channel;
+        return channel != null ? channel.localAddress() : null;
+    }
+
+    private Skeleton findSkeleton(String path) {
+        Skeleton skeleton = _skeletons.get(path);
+        return skeleton != null ? skeleton : _defaultSkeleton;
+    }
+
+    private final class RpcHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest req) throws Exception {
+            boolean keepAlive = HttpHeaders.isKeepAlive(req);
+            if (!HttpMethod.POST.equals(req.getMethod())) {
+                sendError(ctx, HttpResponseStatus.METHOD_NOT_ALLOWED, "RPC Requires POST", keepAlive);
+                return;
+            }
+            QueryStringDecoder decoder = new QueryStringDecoder(req.getUri());
+            String serviceId = decoder.path();
+            Skeleton skeleton = findSkeleton(serviceId);
+            if (skeleton == null) {
+                sendError(ctx, HttpResponseStatus.NOT_FOUND, "No RPC Service " + serviceId, keepAlive);
+                return;
+            }
+            String objectId = parameter(decoder, "id");
+            if (objectId == null)
+                objectId = parameter(decoder, "ejbid");
+
+            ByteBuf content = ctx.alloc().buffer();
+            try {
+                SkeletonContext.begin(serviceId, objectId);
+                try {
+                    skeleton.invoke(new ByteBufInputStream(req.content()),
+                            new ByteBufOutputStream(content), getSerializerFactory());
+                } finally {
+                    SkeletonContext.end();
+                }
+            } catch (Throwable e) {
+                content.release();
+                log.error("rpc call " + serviceId + " failed", e);
+                sendError(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR, e.toString(), false);
+                return;
+            }
+
+            FullHttpResponse res = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, content);
+            res.headers().set(HttpHeaders.Names.CONTENT_TYPE, CONTENT_TYPE);
+            write(ctx, res, keepAlive);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+            log.warn("rpc http channel " + ctx.channel().remoteAddress() + " error", cause);
+            ctx.close();
+        }
+
+        private String parameter(QueryStringDecoder decoder, String name) {
+            List<String> values = decoder.parameters().get(name);
+            return values != null && !values.isEmpty() ? values.get(0) : null;
+        }
+
+        private void sendError(ChannelHandlerContext ctx, HttpResponseStatus status, String message,
+                               boolean keepAlive) {
+            FullHttpResponse res = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status,
+                    Unpooled.copiedBuffer(String.valueOf(message), CharsetUtil.UTF_8));
+            res.headers().set(HttpHeaders.Names.CONTENT_TYPE, "text/plain; charset=UTF-8");
+            write(ctx, res, keepAlive);
+        }
+
+        private void write(ChannelHandlerContext ctx, FullHttpResponse res, boolean keepAlive) {
+            HttpHeaders.setContentLength(res, res.content().readableBytes());
+            if (keepAlive) {
+                HttpHeaders.setKeepAlive(res, true);
+                ctx.writeAndFlush(res);
+            } else
+                ctx.writeAndFlush(res).addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+}
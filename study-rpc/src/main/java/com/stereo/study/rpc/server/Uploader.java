@@ -6,32 +6,48 @@ import com.stereo.study.rpc.exc.ProtocolException;
 import com.stereo.study.rpc.exc.RpcRuntimeException;
 import com.stereo.study.rpc.io.AbstractInput;
 import com.stereo.study.rpc.io.AbstractOutput;
-import com.stereo.study.rpc.utils.MD5CheckSum;
+import com.stereo.study.rpc.utils.ChecksumPipeline;
 import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 import static java.lang.String.format;
 
 /**
  * 数据上传
- * 
+ * 数据块读入复用的直接缓冲区,经FileChannel写盘,MD5在独立线程上流水线计算,不逐块flush.
+ * 续传模式下临时文件按上传标识命名,中断后保留,客户端查询偏移后从断点继续.
+ * 分片模式下各分片并发写入同一个预分配文件的各自偏移,每片单独校验,全部完成后提交时校验整个文件
+ *
  * @author liujing
  */
 public class Uploader implements IUpload
 {
 
+	private static final Logger log = LoggerFactory.getLogger(Uploader.class);
+
+	// 流水线上轮转的缓冲区个数
+	private static final int PIPELINE_BUFFERS = 3;
+
+	private static final Pattern UPLOAD_ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
 	AbstractInput in;
 	AbstractOutput out;
 
-	private int lenght;
+	private final String method;
 
-	private volatile int cLenght;
+	private long lenght;
+
+	private volatile long cLenght;
 
 	private String targetPath;
 
@@ -39,6 +55,12 @@ public class Uploader implements IUpload
 
 	private String md5;
 
+	private String uploadId;
+
+	private long offset;
+
+	private long partLength;
+
 	private File tempFile;
 
 	private File repository;
@@ -50,17 +72,63 @@ public class Uploader implements IUpload
 	private static final String UID = UUID.randomUUID().toString()
 			.replace('-', '_');
 
-	private final MD5CheckSum checkSum = new MD5CheckSum();
-
 	public Uploader(AbstractInput in, AbstractOutput out) throws IOException
 	{
 		this.in = in;
 		this.out = out;
-		this.lenght = in.readMethodArgLength();
+		this.method = in.getMethod();
+		int argLength = in.readMethodArgLength();
 		this.fileName = in.readString();
 		this.targetPath = in.readString();
 		if (StringUtils.isBlank(targetPath))
 			this.targetPath = File.separator;
+		if (isResumable())
+		{
+			// 续传的长度可能超过int
+			this.lenght = in.readLong();
+			this.uploadId = in.readString();
+			if (uploadId == null || !UPLOAD_ID_PATTERN.matcher(uploadId).matches())
+				throw new ProtocolException("illegal upload id: " + uploadId);
+			if (isPart())
+			{
+				this.offset = in.readLong();
+				this.partLength = in.readLong();
+			}
+			else if (IUpload.FILE_UPLOAD_RESUME_METHOD.equals(method))
+				this.offset = in.readLong();
+		}
+		else
+			this.lenght = argLength;
+	}
+
+	/**
+	 * 续传或分片模式(查询偏移、续传数据、上传分片、提交),临时文件按上传标识命名
+	 */
+	public boolean isResumable() {
+		return IUpload.FILE_UPLOAD_OFFSET_METHOD.equals(method)
+				|| IUpload.FILE_UPLOAD_RESUME_METHOD.equals(method)
+				|| isPart() || isCommit();
+	}
+
+	/**
+	 * 上传一个分片,写入预分配文件的[offset, offset + partLength)
+	 */
+	public boolean isPart() {
+		return IUpload.FILE_UPLOAD_PART_METHOD.equals(method);
+	}
+
+	/**
+	 * 分片全部上传完毕,校验整个文件后移到目标位置
+	 */
+	public boolean isCommit() {
+		return IUpload.FILE_UPLOAD_COMMIT_METHOD.equals(method);
+	}
+
+	/**
+	 * 只查询已收到的字节数,upload()返回偏移而不接收数据
+	 */
+	public boolean isOffsetQuery() {
+		return IUpload.FILE_UPLOAD_OFFSET_METHOD.equals(method);
 	}
 
 	@Override
@@ -71,50 +139,73 @@ public class Uploader implements IUpload
 
 	@Override
 	public boolean upload(IProgress listener) throws Exception {
+		if (isOffsetQuery())
+		{
+			try
+			{
+				out.writeLong(receivedLength());
+				return true;
+			} finally
+			{
+				in.close();
+			}
+		}
+		if (isPart())
+			return uploadPart(listener);
+		if (isCommit())
+			return commit();
 		File temp = getTempFile();
-		byte[] buf = null;
-		BufferedOutputStream os = null;
+		RandomAccessFile raf = null;
+		ChecksumPipeline pipeline = null;
+		boolean completed = false;
 		try
 		{
-			os = new BufferedOutputStream(new FileOutputStream(temp));
-			int len = 0;
+			raf = new RandomAccessFile(temp, "rw");
+			FileChannel channel = raf.getChannel();
+			if (offset < 0 || offset > channel.size())
+				throw new ProtocolException("uploader offset " + offset + " beyond received length " + channel.size());
+			// 丢弃断点之后可能写了一半的数据
+			channel.truncate(offset);
+			channel.position(offset);
+			pipeline = new ChecksumPipeline(PIPELINE_BUFFERS, IUpload.FILE_SEGMENTED_BUF, temp, offset);
+			cLenght = offset;
+			int len;
 			//读取len
 			while (IUpload.FILE_UPLOAD_EOF_MARKER != (len = in.readInt()))
 			{
-				//读取字节
-				//buf = new byte[len];
-				buf = in.readBytes();
-				if (buf.length != len)
+				if (len < 0 || len > IUpload.FILE_SEGMENTED_BUF)
+					throw new ProtocolException("uploader read illegal packet length " + len);
+				//读取字节到直接缓冲区
+				ByteBuffer buf = pipeline.take();
+				if (in.readBytes(buf) != len)
 					throw new ProtocolException("uploader read packet data actual length error");
 
-				//process checksum
-				checkSum.process(buf , 0 , len);
-
 				//写字节
-				os.write(buf, 0, len);
+				buf.flip();
+				while (buf.hasRemaining())
+					channel.write(buf);
+
+				//process checksum
+				buf.rewind();
+				pipeline.submit(buf);
 
 				counter.incrementAndGet();
-				cLenght += buf.length;
+				cLenght += len;
 
-				os.flush();
 				if (listener != null)
 					listener.update(lenght, cLenght, counter.get());
-
 			}
-			os.close();
+			raf.close();
+			raf = null;
 			if (cLenght != lenght)
 				throw new ProtocolException("uploader read total length != actual length error");
-			if (checkSum())
+			md5 = in.readString();
+			String localMD5 = pipeline.finish();
+			pipeline = null;
+			completed = true;
+			if (localMD5.equals(md5))
 			{
-				File targetDir = new File(repository, targetPath);
-				if (targetDir.isFile() && targetDir.exists())
-					targetDir = repository;
-				if (!targetDir.exists() && !targetDir.isDirectory())
-					targetDir.mkdirs();
-				File targetFile = new File(targetDir , fileName);
-				if(targetFile.exists())
-					targetFile.delete();
-				temp.renameTo(targetFile);
+				moveToTarget(temp);
 				out.writeString(IUpload.FILE_UPLOAD_COMPLETED);
 				return true;
 			}
@@ -126,28 +217,180 @@ public class Uploader implements IUpload
 				return false;
 			}
 		} catch (Exception e) {
-			e.printStackTrace();
+			log.error("upload " + fileName + " failed", e);
+			throw new RpcRuntimeException(e);
+		} finally
+		{
+			if (pipeline != null)
+				pipeline.abort();
 			if (in!=null)
 				in.close();
-			if (os != null)
-				os.close();
-			if (temp.exists())
+			if (raf != null)
+				raf.close();
+			// 续传模式保留已收到的数据
+			if (!completed && !isResumable() && temp.exists())
 				temp.delete();
+		}
+	}
+
+	/**
+	 * 分片写入预分配文件的自身区间,多个分片请求可以同时写同一个文件
+	 */
+	private boolean uploadPart(IProgress listener) throws Exception {
+		File temp = getTempFile();
+		RandomAccessFile raf = null;
+		ChecksumPipeline pipeline = null;
+		long position = offset;
+		boolean succeed = false;
+		try
+		{
+			if (offset < 0 || partLength < 0 || offset + partLength > lenght)
+				throw new ProtocolException("uploader part [" + offset + ", " + (offset + partLength)
+						+ ") beyond total length " + lenght);
+			raf = new RandomAccessFile(temp, "rw");
+			FileChannel channel = raf.getChannel();
+			// 预分配,各分片设置的长度相同,并发设置没有影响
+			if (channel.size() != lenght)
+				raf.setLength(lenght);
+			// 分片只校验自身数据
+			pipeline = new ChecksumPipeline(PIPELINE_BUFFERS, IUpload.FILE_SEGMENTED_BUF, null, 0);
+			long end = offset + partLength;
+			cLenght = 0;
+			int len;
+			while (IUpload.FILE_UPLOAD_EOF_MARKER != (len = in.readInt()))
+			{
+				if (len < 0 || len > IUpload.FILE_SEGMENTED_BUF || position + len > end)
+					throw new ProtocolException("uploader read illegal packet length " + len);
+				ByteBuffer buf = pipeline.take();
+				if (in.readBytes(buf) != len)
+					throw new ProtocolException("uploader read packet data actual length error");
+
+				//按偏移写,不移动共享的文件位置
+				buf.flip();
+				while (buf.hasRemaining())
+					position += channel.write(buf, position);
+
+				buf.rewind();
+				pipeline.submit(buf);
+
+				counter.incrementAndGet();
+				cLenght += len;
+
+				if (listener != null)
+					listener.update(partLength, cLenght, counter.get());
+			}
+			raf.close();
+			raf = null;
+			if (cLenght != partLength)
+				throw new ProtocolException("uploader read part length != actual length error");
+			md5 = in.readString();
+			String localMD5 = pipeline.finish();
+			pipeline = null;
+			// 分片校验失败时客户端只重传这一片
+			succeed = localMD5.equals(md5);
+			out.writeString(succeed ? IUpload.FILE_UPLOAD_COMPLETED : IUpload.FILE_UPLOAD_FAILED);
+			return succeed;
+		} catch (Exception e) {
+			log.error("upload part [" + offset + ", " + (offset + partLength) + ") of " + fileName + " failed", e);
 			throw new RpcRuntimeException(e);
 		} finally
 		{
-			if (in!=null)
+			if (pipeline != null)
+				pipeline.abort();
+			if (in != null)
 				in.close();
-			if (os != null)
-				os.close();
+			if (raf != null)
+				raf.close();
+			// 失败的分片清掉已写入的部分,文件中不留半片数据,重传从分片起点重新写
+			if (!succeed && position > offset)
+				clearPart(temp, offset, position);
 		}
 	}
 
-	protected boolean checkSum() throws Exception
-	{
-		md5 = in.readString();
-		String localMD5 = checkSum.processed();
-		return localMD5.equals(md5);
+	/**
+	 * 把预分配文件中[from, to)区间清零,其它分片的区间不受影响
+	 */
+	private static void clearPart(File temp, long from, long to) {
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(temp, "rw");
+			FileChannel channel = raf.getChannel();
+			ByteBuffer zeros = ByteBuffer.allocate((int) Math.min(to - from, IUpload.FILE_SEGMENTED_BUF));
+			long position = from;
+			while (position < to) {
+				zeros.clear();
+				if (to - position < zeros.capacity())
+					zeros.limit((int) (to - position));
+				position += channel.write(zeros, position);
+			}
+		} catch (IOException e) {
+			log.warn("clear failed part [" + from + ", " + to + ") of " + temp + " failed", e);
+		} finally {
+			if (raf != null) {
+				try {
+					raf.close();
+				} catch (IOException ignored) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * 校验整个文件,一致时移到目标位置,否则丢弃等待重新上传
+	 */
+	private boolean commit() throws Exception {
+		File temp = getTempFile();
+		try
+		{
+			md5 = in.readString();
+			if (!temp.exists() || temp.length() != lenght)
+			{
+				out.writeString(IUpload.FILE_UPLOAD_FAILED);
+				return false;
+			}
+			String localMD5 = ChecksumPipeline.checksum(temp, lenght, IUpload.FILE_SEGMENTED_BUF);
+			cLenght = lenght;
+			if (localMD5.equals(md5))
+			{
+				moveToTarget(temp);
+				out.writeString(IUpload.FILE_UPLOAD_COMPLETED);
+				return true;
+			}
+			temp.delete();
+			out.writeString(IUpload.FILE_UPLOAD_FAILED);
+			return false;
+		} finally
+		{
+			if (in != null)
+				in.close();
+		}
+	}
+
+	private void moveToTarget(File temp) {
+		File targetDir = new File(repository, targetPath);
+		if (targetDir.isFile() && targetDir.exists())
+			targetDir = repository;
+		if (!targetDir.exists() && !targetDir.isDirectory())
+			targetDir.mkdirs();
+		File targetFile = new File(targetDir , fileName);
+		if(targetFile.exists())
+			targetFile.delete();
+		temp.renameTo(targetFile);
+	}
+
+	/**
+	 * 续传临时文件中已收到的字节数
+	 */
+	protected long receivedLength() {
+		File temp = getTempFile();
+		long received = temp.exists() ? temp.length() : 0;
+		if (received > lenght)
+		{
+			// 与本次上传的文件不符
+			temp.delete();
+			return 0;
+		}
+		return received;
 	}
 
 	private static String getUniqueId() {
@@ -162,20 +405,36 @@ public class Uploader implements IUpload
 
 	protected File getTempFile() {
 		if (tempFile == null) {
-			String tempFileName = format(fileName + "_%s_%s.tmp", UID, getUniqueId());
+			String tempFileName;
+			if (isResumable())
+				tempFileName = format(fileName + "_%s.part", uploadId);
+			else
+				tempFileName = format(fileName + "_%s_%s.tmp", UID, getUniqueId());
 			tempFile = new File(repository, tempFileName);
 		}
 		return tempFile;
 	}
 
-	public int getLenght() {
+	public long getLenght() {
 		return lenght;
 	}
 
-	public int currentLenght() {
+	public long currentLenght() {
 		return cLenght;
 	}
 
+	public long getOffset() {
+		return offset;
+	}
+
+	public long getPartLength() {
+		return partLength;
+	}
+
+	public String getUploadId() {
+		return uploadId;
+	}
+
 	public String getFileName() {
 		return fileName;
 	}
@@ -196,8 +455,12 @@ public class Uploader implements IUpload
 	@Override
 	public String toString() {
 		return "Uploader{" +
-				"lenght=" + lenght +
+				"method='" + method + '\'' +
+				", lenght=" + lenght +
 				", cLenght=" + cLenght +
+				", offset=" + offset +
+				", partLength=" + partLength +
+				", uploadId='" + uploadId + '\'' +
 				", targetPath='" + targetPath + '\'' +
 				", fileName='" + fileName + '\'' +
 				", md5='" + md5 + '\'' +
@@ -206,4 +469,4 @@ public class Uploader implements IUpload
 				", counter=" + counter +
 				'}';
 	}
-}
\ No newline at end of file
+}
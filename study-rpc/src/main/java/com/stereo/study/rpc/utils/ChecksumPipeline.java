@@ -0,0 +1,200 @@
+package com.stereo.study.rpc.utils;
+
+import com.stereo.study.rpc.exc.RpcRuntimeException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 与数据接收流水线执行的MD5校验
+ * 几个直接缓冲区轮流使用: 接收线程取空闲缓冲区填充、写盘后提交,校验线程算完归还.
+ * 续传时校验线程先读取文件中已有的前缀,再处理新数据.
+ * 直接缓冲区在上传之间复用
+ *
+ * @author stereo
+ */
+public class ChecksumPipeline {
+
+	private static final int POOLED_BUFFERS = 16;
+
+	private static final FreeList<ByteBuffer> BUFFER_POOL = new FreeList<ByteBuffer>(POOLED_BUFFERS);
+
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+	private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "rpc-checksum-" + THREAD_COUNTER.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	// 结束标记
+	private static final ByteBuffer EOF = ByteBuffer.allocate(0);
+
+	private final int bufferSize;
+	private final ByteBuffer[] buffers;
+	private final BlockingQueue<ByteBuffer> free;
+	private final BlockingQueue<ByteBuffer> pending;
+	private final Future<String> result;
+
+	/**
+	 * @param count        缓冲区个数
+	 * @param bufferSize   缓冲区大小
+	 * @param prefixFile   已有前缀所在的文件,没有前缀时为null
+	 * @param prefixLength 前缀长度
+	 */
+	public ChecksumPipeline(int count, int bufferSize, final File prefixFile, final long prefixLength) {
+		this.bufferSize = bufferSize;
+		this.buffers = new ByteBuffer[count];
+		this.free = new ArrayBlockingQueue<ByteBuffer>(count);
+		this.pending = new ArrayBlockingQueue<ByteBuffer>(count + 1);
+		for (int i = 0; i < count; i++) {
+			buffers[i] = acquire(bufferSize);
+			free.add(buffers[i]);
+		}
+		result = EXECUTOR.submit(new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				MD5CheckSum checkSum = new MD5CheckSum();
+				if (prefixFile != null && prefixLength > 0)
+					processPrefix(checkSum, prefixFile, prefixLength, ChecksumPipeline.this.bufferSize);
+				ByteBuffer buf;
+				while ((buf = pending.take()) != EOF) {
+					checkSum.process(buf);
+					free.put(buf);
+				}
+				return checkSum.processed();
+			}
+		});
+	}
+
+	/**
+	 * 在当前线程计算文件前length字节的MD5
+	 */
+	public static String checksum(File file, long length, int bufferSize) throws IOException {
+		MD5CheckSum checkSum = new MD5CheckSum();
+		processPrefix(checkSum, file, length, bufferSize);
+		return checkSum.processed();
+	}
+
+	private static void processPrefix(MD5CheckSum checkSum, File file, long length, int bufferSize) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		ByteBuffer buf = acquire(bufferSize);
+		try {
+			FileChannel channel = raf.getChannel();
+			long position = 0;
+			while (position < length) {
+				buf.clear();
+				if (length - position < buf.capacity())
+					buf.limit((int) (length - position));
+				int n = channel.read(buf, position);
+				if (n < 0)
+					throw new IOException("file " + file + " is shorter than " + length);
+				position += n;
+				buf.flip();
+				checkSum.process(buf);
+			}
+		} finally {
+			release(buf);
+			raf.close();
+		}
+	}
+
+	/**
+	 * 取一个清空的缓冲区,校验线程出错时抛出异常
+	 */
+	public ByteBuffer take() throws IOException {
+		try {
+			ByteBuffer buf;
+			while ((buf = free.poll(100, TimeUnit.MILLISECONDS)) == null) {
+				if (result.isDone())
+					result.get();
+			}
+			buf.clear();
+			return buf;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * 提交[position, limit)之间的数据
+	 */
+	public void submit(ByteBuffer buf) throws IOException {
+		try {
+			pending.put(buf);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * 等待全部数据处理完,返回MD5
+	 */
+	public String finish() throws IOException {
+		try {
+			pending.put(EOF);
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		} finally {
+			releaseAll();
+		}
+	}
+
+	/**
+	 * 放弃校验,等校验线程放下缓冲区后再回收
+	 */
+	public void abort() {
+		try {
+			pending.offer(EOF);
+			result.get();
+		} catch (Exception ignored) {
+		} finally {
+			releaseAll();
+		}
+	}
+
+	private void releaseAll() {
+		for (int i = 0; i < buffers.length; i++) {
+			if (buffers[i] != null) {
+				release(buffers[i]);
+				buffers[i] = null;
+			}
+		}
+	}
+
+	private static ByteBuffer acquire(int size) {
+		ByteBuffer buf = BUFFER_POOL.allocate();
+		if (buf == null || buf.capacity() < size)
+			return ByteBuffer.allocateDirect(size);
+		buf.clear();
+		return buf;
+	}
+
+	private static void release(ByteBuffer buf) {
+		BUFFER_POOL.free(buf);
+	}
+}
@@ -50,6 +50,14 @@ public class ConversionUtils {
 		}
 	}
 
+	/**
+	 * 基本类型对应的包装类型,非基本类型原样返回
+	 */
+	public static Class<?> getWrapperClass(Class<?> type) {
+		Class<?> wrapper = primitiveMap.get(type);
+		return wrapper != null ? wrapper : type;
+	}
+
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public static Object convert(Object source, Class<?> target)
 			throws ConversionException {
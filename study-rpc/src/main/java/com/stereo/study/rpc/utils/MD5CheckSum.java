@@ -2,6 +2,7 @@ package com.stereo.study.rpc.utils;
 
 import com.stereo.study.rpc.exc.RpcRuntimeException;
 
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -26,6 +27,10 @@ public class MD5CheckSum {
     {
         messageDigest.update(input, offset, len);
     }
+    public void process(ByteBuffer input)
+    {
+        messageDigest.update(input);
+    }
     public String processed()
     {
         return MD5Util.bufferToHex(messageDigest.digest());